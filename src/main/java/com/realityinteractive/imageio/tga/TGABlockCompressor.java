@@ -0,0 +1,447 @@
+package com.realityinteractive.imageio.tga;
+
+/*
+ * TGABlockCompressor.java
+ * Copyright (c) 2003 Reality Interactive, Inc.
+ *   See bottom of file for license and warranty information.
+ */
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * <p>Block compresses the rows of an image as they are decoded.  The rows
+ * are kept until the four rows of a row of blocks have been given and then
+ * the row of blocks is compressed so only four rows and the compressed
+ * blocks are in memory.</p>
+ *
+ * <p>An image without alpha is compressed to BC1.  An image with alpha is
+ * compressed to BC3 and its alpha is scanned while it is compressed.  If
+ * the alpha is entirely opaque then the alpha halves of the BC3 blocks are
+ * dropped by {@link #finish()} leaving BC1 blocks.  The color half of a BC3
+ * block is always a valid (4 color) BC1 block since the colors of a block
+ * are only ever encoded with the first color greater than the second or
+ * with every index zero.</p>
+ *
+ * <p>The colors of a block are the pixels at either end of the principal
+ * axis of its colors (found by a few power iterations of their covariance)
+ * and each pixel takes the nearest of the four interpolated colors.  The
+ * alpha of a block is its minimum and maximum alpha with the six values
+ * between them.</p>
+ */
+final class TGABlockCompressor implements TGAImageReader.RowConsumer
+{
+    /**
+     * <p>The size of the image and the number of samples per pixel.</p>
+     */
+    private final int width, height;
+    private final int numberOfBands;
+
+    /**
+     * <p>If <code>true</code> then the last sample of each pixel is alpha.</p>
+     */
+    private final boolean hasAlpha;
+
+    /**
+     * <p>If <code>true</code> then the rows are given bottom-to-top.</p>
+     */
+    private final boolean isBottomToTop;
+
+    /**
+     * <p>The number of blocks in a row of blocks.</p>
+     */
+    private final int blocksWide;
+
+    /**
+     * <p>The blocks.</p>
+     */
+    private final ByteBuffer output;
+
+    /**
+     * <p>The rows of the row of blocks that is being given indexed by the
+     * row within the blocks.</p>
+     */
+    private final byte[][] rows = new byte[4][];
+
+    /**
+     * <p>The RGBA of the 16 pixels of the block that is being compressed.</p>
+     */
+    private final int[] red = new int[16], green = new int[16], blue = new int[16], alpha = new int[16];
+
+    /**
+     * <p>The number of rows that have been given.</p>
+     */
+    private int rowsAdded;
+
+    /**
+     * <p>If <code>true</code> then every alpha that has been compressed is
+     * opaque.</p>
+     */
+    private boolean isOpaque = true;
+
+    // =========================================================================
+    /**
+     * <p>Constructs a compressor of an image of the specified size.</p>
+     *
+     * @param  width the width of the image
+     * @param  height the height of the image
+     * @param  numberOfBands the number of samples per pixel:  grey, grey and
+     *         alpha, BGR or BGRA
+     * @param  isBottomToTop if <code>true</code> then the rows are given
+     *         bottom-to-top
+     */
+    TGABlockCompressor(final int width, final int height, final int numberOfBands,
+                       final boolean isBottomToTop)
+    {
+        this.width = width;
+        this.height = height;
+        this.numberOfBands = numberOfBands;
+        this.hasAlpha = (numberOfBands == 2) || (numberOfBands == 4);
+        this.isBottomToTop = isBottomToTop;
+
+        for(int i=0; i<rows.length; i++)
+            rows[i] = new byte[width * numberOfBands];
+
+        blocksWide = (width + 3) / 4;
+        output = ByteBuffer.allocateDirect((int)getSize(width, height, numberOfBands));
+        output.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * <p>Retrieves the number of <code>byte</code>s of the blocks before
+     * any are dropped.</p>
+     *
+     * @param  width the width of the image
+     * @param  height the height of the image
+     * @param  numberOfBands the number of samples per pixel
+     * @return the number of <code>byte</code>s of the blocks
+     */
+    static long getSize(final int width, final int height, final int numberOfBands)
+    {
+        final TGACompressedTexture.Format format = ((numberOfBands == 2) || (numberOfBands == 4)) ?
+                                                   TGACompressedTexture.Format.BC3 : TGACompressedTexture.Format.BC1;
+        return (long)((width + 3) / 4) * ((height + 3) / 4) * format.getBlockSize();
+    }
+
+    /**
+     * <p>Adds the next row of the image.  The row of blocks is compressed
+     * once its last row has been given.</p>
+     *
+     * @param  row the decoded row
+     * @return <code>true</code> (every row is wanted)
+     * @see TGAImageReader.RowConsumer#addRow(byte[])
+     */
+    public boolean addRow(final byte[] row)
+    {
+        final int y = rowsAdded++;
+        final int imageY = isBottomToTop ? (height - y - 1) : y;
+        System.arraycopy(row, 0, rows[imageY & 3], 0, row.length);
+
+        final boolean isComplete;
+        if(isBottomToTop)
+            isComplete = ((imageY & 3) == 0);
+        else /* top-to-bottom */
+            isComplete = ((imageY & 3) == 3) || (imageY == (height - 1));
+        if(isComplete)
+            compressRow(imageY >> 2);
+        /* else -- the row of blocks is not complete */
+        return true;
+    }
+
+    /**
+     * <p>Retrieves the compressed image once every row has been given.</p>
+     *
+     * @return the compressed image
+     */
+    TGACompressedTexture finish()
+    {
+        if(!hasAlpha)
+            return new TGACompressedTexture(TGACompressedTexture.Format.BC1, width, height, output);
+        /* else -- the blocks are BC3 */
+
+        if(!isOpaque)
+            return new TGACompressedTexture(TGACompressedTexture.Format.BC3, width, height, output);
+        /* else -- the alpha is not needed */
+
+        // keep only the color half of each block
+        final int blockCount = output.capacity() / 16;
+        for(int block=0; block<blockCount; block++)
+            output.putLong(block * 8, output.getLong((block * 16) + 8));
+        // cast is workaround for https://jira.mongodb.org/browse/JAVA-2559
+        ((Buffer)output).limit(blockCount * 8);
+        return new TGACompressedTexture(TGACompressedTexture.Format.BC1, width, height, output);
+    }
+
+    // =========================================================================
+    /**
+     * <p>Compresses the row of blocks whose rows have all been given.  The
+     * rows and columns past the edges of the image repeat the edge.</p>
+     */
+    private void compressRow(final int blockY)
+    {
+        final int lastRow = Math.min(3, height - 1 - (blockY * 4));
+        int offset = blockY * blocksWide * (hasAlpha ? 16 : 8);
+        for(int blockX=0; blockX<blocksWide; blockX++)
+        {
+            for(int pixelY=0; pixelY<4; pixelY++)
+            {
+                final byte[] row = rows[Math.min(pixelY, lastRow)];
+                for(int pixelX=0; pixelX<4; pixelX++)
+                {
+                    final int pixel = (pixelY * 4) + pixelX;
+                    final int index = Math.min((blockX * 4) + pixelX, width - 1) * numberOfBands;
+                    switch(numberOfBands)
+                    {
+                        case 1: // grey
+                        case 2: // grey, alpha
+                            red[pixel] = green[pixel] = blue[pixel] = row[index] & 0xFF;
+                            break;
+                        default: // BGR(A)
+                            blue[pixel] = row[index] & 0xFF;
+                            green[pixel] = row[index + 1] & 0xFF;
+                            red[pixel] = row[index + 2] & 0xFF;
+                            break;
+                    }
+                    if(hasAlpha)
+                    {
+                        alpha[pixel] = row[index + numberOfBands - 1] & 0xFF;
+                        isOpaque &= (alpha[pixel] == 0xFF);
+                    } /* else -- there is no alpha */
+                }
+            }
+
+            if(hasAlpha)
+            {
+                compressAlpha(offset);
+                offset += 8;
+            } /* else -- BC1 */
+            compressColor(offset);
+            offset += 8;
+        }
+    }
+
+    /**
+     * <p>Compresses the alpha of the block into the 8 <code>byte</code>s at
+     * the specified offset.</p>
+     */
+    private void compressAlpha(final int offset)
+    {
+        int minimum = 0xFF, maximum = 0;
+        for(int i=0; i<16; i++)
+        {
+            minimum = Math.min(minimum, alpha[i]);
+            maximum = Math.max(maximum, alpha[i]);
+        }
+
+        // alpha 0 greater than alpha 1 selects the six interpolated values.
+        // If they are equal then every index selects alpha 0.
+        long indices = 0L;
+        if(maximum > minimum)
+        {
+            final int[] palette = new int[8];
+            palette[0] = maximum;
+            palette[1] = minimum;
+            for(int i=1; i<7; i++)
+                palette[i + 1] = (((7 - i) * maximum) + (i * minimum)) / 7;
+
+            for(int i=0; i<16; i++)
+                indices |= (long)nearest(palette, alpha[i]) << (3 * i);
+        } /* else -- a single alpha */
+
+        output.put(offset, (byte)maximum);
+        output.put(offset + 1, (byte)minimum);
+        for(int i=0; i<6; i++)
+            output.put(offset + 2 + i, (byte)(indices >>> (8 * i)));
+    }
+
+    /**
+     * <p>Compresses the color of the block into the 8 <code>byte</code>s at
+     * the specified offset.</p>
+     */
+    private void compressColor(final int offset)
+    {
+        // the covariance of the colors
+        double meanRed = 0.0, meanGreen = 0.0, meanBlue = 0.0;
+        for(int i=0; i<16; i++)
+        {
+            meanRed += red[i];
+            meanGreen += green[i];
+            meanBlue += blue[i];
+        }
+        meanRed /= 16.0;
+        meanGreen /= 16.0;
+        meanBlue /= 16.0;
+        double rr = 0.0, rg = 0.0, rb = 0.0, gg = 0.0, gb = 0.0, bb = 0.0;
+        for(int i=0; i<16; i++)
+        {
+            final double r = red[i] - meanRed;
+            final double g = green[i] - meanGreen;
+            final double b = blue[i] - meanBlue;
+            rr += r * r;
+            rg += r * g;
+            rb += r * b;
+            gg += g * g;
+            gb += g * b;
+            bb += b * b;
+        }
+
+        // the principal axis by power iteration from the column of the
+        // covariance of the component that is spread the most (which, unlike
+        // the spread of each component, is not orthogonal to the axis when
+        // components are anti-correlated)
+        double axisRed, axisGreen, axisBlue;
+        if((rr >= gg) && (rr >= bb))
+        {
+            axisRed = rr;
+            axisGreen = rg;
+            axisBlue = rb;
+        } else if(gg >= bb)
+        {
+            axisRed = rg;
+            axisGreen = gg;
+            axisBlue = gb;
+        } else /* blue is spread the most */
+        {
+            axisRed = rb;
+            axisGreen = gb;
+            axisBlue = bb;
+        }
+        for(int iteration=0; iteration<4; iteration++)
+        {
+            final double r = (rr * axisRed) + (rg * axisGreen) + (rb * axisBlue);
+            final double g = (rg * axisRed) + (gg * axisGreen) + (gb * axisBlue);
+            final double b = (rb * axisRed) + (gb * axisGreen) + (bb * axisBlue);
+            final double length = Math.max(Math.abs(r), Math.max(Math.abs(g), Math.abs(b)));
+            if(length == 0.0)
+                break;
+            /* else -- the colors are not all the same */
+
+            axisRed = r / length;
+            axisGreen = g / length;
+            axisBlue = b / length;
+        }
+
+        // the pixels at either end of the axis
+        int maximumPixel = 0, minimumPixel = 0;
+        double maximumProjection = Double.NEGATIVE_INFINITY, minimumProjection = Double.POSITIVE_INFINITY;
+        for(int i=0; i<16; i++)
+        {
+            final double projection = (red[i] * axisRed) + (green[i] * axisGreen) + (blue[i] * axisBlue);
+            if(projection > maximumProjection)
+            {
+                maximumProjection = projection;
+                maximumPixel = i;
+            } /* else -- not further */
+            if(projection < minimumProjection)
+            {
+                minimumProjection = projection;
+                minimumPixel = i;
+            } /* else -- not further */
+        }
+        int color0 = toRGB565(red[maximumPixel], green[maximumPixel], blue[maximumPixel]);
+        int color1 = toRGB565(red[minimumPixel], green[minimumPixel], blue[minimumPixel]);
+        if(color0 < color1)
+        {
+            final int color = color0;
+            color0 = color1;
+            color1 = color;
+        } /* else -- in order */
+
+        // color 0 is greater than color 1 so the block has 4 colors.  If they
+        // are equal then every index selects color 0 (so that the block is
+        // not read as 3 colors and transparent).
+        int indices = 0;
+        if(color0 != color1)
+        {
+            final int[] paletteRed = new int[4], paletteGreen = new int[4], paletteBlue = new int[4];
+            paletteRed[0] = expand5((color0 >> 11) & 0x1F);
+            paletteGreen[0] = expand6((color0 >> 5) & 0x3F);
+            paletteBlue[0] = expand5(color0 & 0x1F);
+            paletteRed[1] = expand5((color1 >> 11) & 0x1F);
+            paletteGreen[1] = expand6((color1 >> 5) & 0x3F);
+            paletteBlue[1] = expand5(color1 & 0x1F);
+            paletteRed[2] = ((2 * paletteRed[0]) + paletteRed[1]) / 3;
+            paletteGreen[2] = ((2 * paletteGreen[0]) + paletteGreen[1]) / 3;
+            paletteBlue[2] = ((2 * paletteBlue[0]) + paletteBlue[1]) / 3;
+            paletteRed[3] = (paletteRed[0] + (2 * paletteRed[1])) / 3;
+            paletteGreen[3] = (paletteGreen[0] + (2 * paletteGreen[1])) / 3;
+            paletteBlue[3] = (paletteBlue[0] + (2 * paletteBlue[1])) / 3;
+
+            for(int i=0; i<16; i++)
+            {
+                int best = 0;
+                int bestDistance = Integer.MAX_VALUE;
+                for(int j=0; j<4; j++)
+                {
+                    final int dr = red[i] - paletteRed[j];
+                    final int dg = green[i] - paletteGreen[j];
+                    final int db = blue[i] - paletteBlue[j];
+                    final int distance = (dr * dr) + (dg * dg) + (db * db);
+                    if(distance < bestDistance)
+                    {
+                        best = j;
+                        bestDistance = distance;
+                    } /* else -- not nearer */
+                }
+                indices |= best << (2 * i);
+            }
+        } /* else -- a single color */
+
+        output.putShort(offset, (short)color0);
+        output.putShort(offset + 2, (short)color1);
+        output.putInt(offset + 4, indices);
+    }
+
+    /**
+     * <p>Retrieves the index of the nearest value in the palette.</p>
+     */
+    private static int nearest(final int[] palette, final int value)
+    {
+        int best = 0;
+        for(int i=1; i<palette.length; i++)
+        {
+            if(Math.abs(palette[i] - value) < Math.abs(palette[best] - value))
+                best = i;
+            /* else -- not nearer */
+        }
+        return best;
+    }
+
+    /**
+     * <p>Rounds the 8 bit components to a 5:6:5 color.</p>
+     */
+    private static int toRGB565(final int red, final int green, final int blue)
+    {
+        return (((red * 31 + 127) / 255) << 11) | (((green * 63 + 127) / 255) << 5) | ((blue * 31 + 127) / 255);
+    }
+
+    /**
+     * <p>Expands a 5 (6) bit component to 8 bits.</p>
+     */
+    private static int expand5(final int component)
+    {
+        return (component << 3) | (component >> 2);
+    }
+
+    private static int expand6(final int component)
+    {
+        return (component << 2) | (component >> 4);
+    }
+}
+// =============================================================================
+/*
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
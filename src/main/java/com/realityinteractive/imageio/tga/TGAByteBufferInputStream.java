@@ -0,0 +1,132 @@
+package com.realityinteractive.imageio.tga;
+
+/*
+ * TGAByteBufferInputStream.java
+ * Copyright (c) 2003 Reality Interactive, Inc.
+ *   See bottom of file for license and warranty information.
+ */
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageInputStreamImpl;
+
+/**
+ * <p>An {@link ImageInputStream} over the data of a {@link ByteBuffer} from
+ * its position to its limit.  The data is read directly from the buffer 
+ * (which may be direct or mapped) so nothing is cached or copied other than
+ * into the arrays that are read into.  The position of the buffer is not
+ * changed.</p>
+ */
+class TGAByteBufferInputStream extends ImageInputStreamImpl
+{
+    /**
+     * <p>The data (a duplicate of the buffer whose position is moved by the
+     * reads).</p>
+     */
+    private final ByteBuffer data;
+
+    /**
+     * <p>The index in the buffer of the start of the stream.</p>
+     */
+    private final int start;
+
+    // =========================================================================
+    /**
+     * <p>Constructs a stream over the remaining data of the specified
+     * buffer.</p>
+     *
+     * @param  buffer the <code>ByteBuffer</code> from which the data is read
+     */
+    TGAByteBufferInputStream(final ByteBuffer buffer)
+    {
+        if(buffer == null)
+            throw new IllegalArgumentException("The buffer cannot be null."); // FIXME:  localize
+        /* else -- there is a buffer */
+
+        data = buffer.duplicate();
+        start = buffer.position();
+    }
+
+    /**
+     * @see ImageInputStreamImpl#read()
+     */
+    @Override
+    public int read()
+        throws IOException
+    {
+        checkClosed();
+        bitOffset = 0;
+
+        final long index = start + streamPos;
+        if(index >= data.limit())
+            return -1; // the end of the stream has been reached
+        /* else -- there is data */
+
+        streamPos++;
+        return data.get((int)index) & 0xFF;
+    }
+
+    /**
+     * @see ImageInputStreamImpl#read(byte[], int, int)
+     */
+    @Override
+    public int read(final byte[] buffer, final int offset, final int length)
+        throws IOException
+    {
+        checkClosed();
+        bitOffset = 0;
+
+        final long index = start + streamPos;
+        if(length == 0)
+            return 0;
+        else if(index >= data.limit())
+            return -1; // the end of the stream has been reached
+        /* else -- there is data */
+
+        final int count = (int)Math.min(length, data.limit() - index);
+        ((Buffer)data).position((int)index); // cast is workaround for https://jira.mongodb.org/browse/JAVA-2559
+        data.get(buffer, offset, count);
+        streamPos += count;
+        return count;
+    }
+
+    /**
+     * @see ImageInputStreamImpl#length()
+     */
+    @Override
+    public long length()
+    {
+        return data.limit() - start;
+    }
+
+    /**
+     * <p>The data is in memory (or mapped) rather than cached.</p>
+     *
+     * @see ImageInputStreamImpl#isCached()
+     */
+    @Override
+    public boolean isCached()
+    {
+        // see javadoc
+        return false;
+    }
+}
+// =============================================================================
+/*
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
@@ -0,0 +1,135 @@
+package com.realityinteractive.imageio.tga;
+
+/*
+ * TGACompressedTexture.java
+ * Copyright (c) 2003 Reality Interactive, Inc.
+ *   See bottom of file for license and warranty information.
+ */
+
+import java.nio.ByteBuffer;
+
+/**
+ * <p>A TGA that has been block compressed for a GPU while it was decoded
+ * (see {@link TGAImageReader#readCompressed(int, javax.imageio.ImageReadParam)}).
+ * The blocks are 4 x 4 pixels in rows of blocks from the top left of the
+ * image.  The blocks on the right and bottom edges of an image whose size
+ * is not a multiple of four repeat the edge pixels.</p>
+ */
+public final class TGACompressedTexture
+{
+    /**
+     * <p>The block compression formats.</p>
+     */
+    public enum Format
+    {
+        /**
+         * <p>BC1 (DXT1):  8 <code>byte</code>s per block of opaque color.</p>
+         */
+        BC1(8),
+
+        /**
+         * <p>BC3 (DXT5):  16 <code>byte</code>s per block of interpolated
+         * alpha followed by color.</p>
+         */
+        BC3(16);
+
+        private final int blockSize;
+
+        private Format(final int blockSize)
+        {
+            this.blockSize = blockSize;
+        }
+
+        /**
+         * <p>Retrieves the number of <code>byte</code>s in a block.</p>
+         */
+        public int getBlockSize()
+        {
+            return blockSize;
+        }
+    }
+
+    // =========================================================================
+    /**
+     * <p>The format of the blocks.</p>
+     */
+    private final Format format;
+
+    /**
+     * <p>The size of the image in pixels.</p>
+     */
+    private final int width, height;
+
+    /**
+     * <p>The blocks.</p>
+     */
+    private final ByteBuffer data;
+
+    // =========================================================================
+    /**
+     * <p>Constructs a texture of the specified blocks.</p>
+     *
+     * @param  format the format of the blocks
+     * @param  width the width of the image in pixels
+     * @param  height the height of the image in pixels
+     * @param  data the blocks (from the position to the limit)
+     */
+    TGACompressedTexture(final Format format, final int width, final int height,
+                         final ByteBuffer data)
+    {
+        this.format = format;
+        this.width = width;
+        this.height = height;
+        this.data = data;
+    }
+
+    /**
+     * <p>Retrieves the format of the blocks.  {@link Format#BC3} is only
+     * used for an image that has alpha that is not entirely opaque.</p>
+     */
+    public Format getFormat()
+    {
+        return format;
+    }
+
+    /**
+     * <p>Retrieves the width of the image in pixels.</p>
+     */
+    public int getWidth()
+    {
+        return width;
+    }
+
+    /**
+     * <p>Retrieves the height of the image in pixels.</p>
+     */
+    public int getHeight()
+    {
+        return height;
+    }
+
+    /**
+     * <p>Retrieves the blocks in a direct <code>ByteBuffer</code> from its
+     * position to its limit.</p>
+     */
+    public ByteBuffer getData()
+    {
+        return data;
+    }
+}
+// =============================================================================
+/*
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
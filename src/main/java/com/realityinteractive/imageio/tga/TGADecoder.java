@@ -0,0 +1,242 @@
+package com.realityinteractive.imageio.tga;
+
+/*
+ * TGADecoder.java
+ * Copyright (c) 2003 Reality Interactive, Inc.
+ *   See bottom of file for license and warranty information.
+ */
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageTypeSpecifier;
+
+/**
+ * <p>Decodes TGAs directly with a {@link TGAImageReader} without going
+ * through <code>ImageIO</code>:  no service providers are looked up or
+ * probed, the data is read straight from memory (a small file is read in 
+ * a single read and a large file is mapped) rather than through a caching
+ * stream and no metadata is created.  This suits short-lived tools for
+ * which the <code>ImageIO</code> lookup would dominate the decoding of small
+ * images.</p>
+ *
+ * <p>The images are decoded with the default (lenient) settings.  The raw
+ * decodes ({@link #decodeRaw(Path)}) use no AWT classes so that they also
+ * work where AWT is not available such as in a native image.</p>
+ */
+public final class TGADecoder
+{
+    /**
+     * <p>The size of a file above which it is mapped rather than read.</p>
+     */
+    private static final long MAPPING_THRESHOLD = 1L << 20;
+
+    // =========================================================================
+    /**
+     * <p>There are only static methods.</p>
+     */
+    private TGADecoder() {}
+
+    /**
+     * <p>Decodes the TGA file.</p>
+     *
+     * @param  path the TGA file
+     * @return the decoded image
+     * @throws IOException if the file cannot be read or decoded
+     */
+    public static BufferedImage decode(final Path path)
+        throws IOException
+    {
+        return decode(read(path), null/*new image*/);
+    }
+
+    /**
+     * <p>Decodes the TGA from the position to the limit of the buffer.  The
+     * position of the buffer is not changed.</p>
+     *
+     * @param  data the TGA
+     * @return the decoded image
+     * @throws IOException if the data cannot be decoded
+     */
+    public static BufferedImage decode(final ByteBuffer data)
+        throws IOException
+    {
+        return decode(data, null/*new image*/);
+    }
+
+    /**
+     * <p>Decodes the TGA file into the specified image.</p>
+     *
+     * @param  path the TGA file
+     * @param  destination the image into which the TGA is decoded.  It must
+     *         be of the size and of a type of the TGA (such as an image that
+     *         was decoded from a TGA of the same size and type).
+     * @return <code>destination</code>
+     * @throws IllegalArgumentException if the TGA cannot be decoded into the
+     *         image
+     * @throws IOException if the file cannot be read or decoded
+     */
+    public static BufferedImage decodeInto(final Path path, 
+                                           final BufferedImage destination)
+        throws IOException
+    {
+        return decodeInto(read(path), destination);
+    }
+
+    /**
+     * <p>Decodes the TGA from the position to the limit of the buffer into
+     * the specified image.  The position of the buffer is not changed.</p>
+     *
+     * @param  data the TGA
+     * @param  destination the image into which the TGA is decoded.  It must
+     *         be of the size and of a type of the TGA (such as an image that
+     *         was decoded from a TGA of the same size and type).
+     * @return <code>destination</code>
+     * @throws IllegalArgumentException if the TGA cannot be decoded into the
+     *         image
+     * @throws IOException if the data cannot be decoded
+     */
+    public static BufferedImage decodeInto(final ByteBuffer data,
+                                           final BufferedImage destination)
+        throws IOException
+    {
+        if(destination == null)
+            throw new IllegalArgumentException("The destination cannot be null."); // FIXME:  localize
+        /* else -- there is a destination */
+
+        return decode(data, destination);
+    }
+
+    /**
+     * <p>Decodes the TGA file to raw samples without any AWT classes (see
+     * {@link TGAImageReader#readRaw(int, ImageReadParam)}).</p>
+     *
+     * @param  path the TGA file
+     * @return the samples of the image
+     * @throws IOException if the file cannot be read or decoded
+     */
+    public static TGARawImage decodeRaw(final Path path)
+        throws IOException
+    {
+        return decodeRaw(read(path));
+    }
+
+    /**
+     * <p>Decodes the TGA from the position to the limit of the buffer to raw
+     * samples without any AWT classes (see 
+     * {@link TGAImageReader#readRaw(int, ImageReadParam)}).  The position of
+     * the buffer is not changed.</p>
+     *
+     * @param  data the TGA
+     * @return the samples of the image
+     * @throws IOException if the data cannot be decoded
+     */
+    public static TGARawImage decodeRaw(final ByteBuffer data)
+        throws IOException
+    {
+        final TGAImageReader reader = new TGAImageReader(null/*no provider*/);
+        try
+        {
+            reader.setInput(new TGAByteBufferInputStream(data), true/*seek forward only*/, 
+                            true/*ignore metadata*/);
+            return reader.readRaw(0, null/*defaults*/);
+        } finally
+        {
+            reader.dispose();
+        }
+    }
+
+    // =========================================================================
+    /**
+     * <p>Decodes the TGA into the destination (if there is one).</p>
+     */
+    private static BufferedImage decode(final ByteBuffer data, 
+                                        final BufferedImage destination)
+        throws IOException
+    {
+        final TGAImageReader reader = new TGAImageReader(null/*no provider*/);
+        try
+        {
+            reader.setInput(new TGAByteBufferInputStream(data), true/*seek forward only*/, 
+                            true/*ignore metadata*/);
+
+            ImageReadParam param = null;
+            if(destination != null)
+            {
+                boolean isCompatible = false;
+                final int width = reader.getWidth(0);
+                final int height = reader.getHeight(0);
+                for(final Iterator<ImageTypeSpecifier> imageTypes=reader.getImageTypes(0); imageTypes.hasNext() && !isCompatible; )
+                    isCompatible = TGAImageReader.isCompatibleDestination(destination, imageTypes.next(), width, height);
+                if(!isCompatible)
+                    throw new IllegalArgumentException("The " + width + " x " + height + " TGA cannot be decoded into the " + destination.getWidth() + " x " + destination.getHeight() + " image of a different size or type."); // FIXME:  localize
+                /* else -- the destination fits */
+
+                param = reader.getDefaultReadParam();
+                param.setDestination(destination);
+            } /* else -- a new image is created */
+
+            return reader.read(0, param);
+        } finally
+        {
+            reader.dispose();
+        }
+    }
+
+    /**
+     * <p>Reads (or maps if it is large) the file.</p>
+     */
+    private static ByteBuffer read(final Path path)
+        throws IOException
+    {
+        final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try
+        {
+            final long size = channel.size();
+            if(size > Integer.MAX_VALUE)
+                throw new IOException("The file is too large to be a TGA that can be decoded (" + size + " bytes)."); // FIXME:  localize
+            /* else -- the file fits in a buffer */
+
+            // a mapping remains valid once the channel is closed
+            if(size > MAPPING_THRESHOLD)
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            /* else -- small enough to be read */
+
+            final ByteBuffer data = ByteBuffer.allocate((int)size);
+            while(data.hasRemaining())
+            {
+                if(channel.read(data) < 0)
+                    break; // the file was truncated while it was read
+                /* else -- data was read */
+            }
+            ((Buffer)data).flip(); // cast is workaround for https://jira.mongodb.org/browse/JAVA-2559
+            return data;
+        } finally
+        {
+            channel.close();
+        }
+    }
+}
+// =============================================================================
+/*
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
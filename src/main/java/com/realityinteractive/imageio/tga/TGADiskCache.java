@@ -0,0 +1,421 @@
+package com.realityinteractive.imageio.tga;
+
+/*
+ * TGADiskCache.java
+ * Copyright (c) 2003 Reality Interactive, Inc.
+ *   See bottom of file for license and warranty information.
+ */
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.FileImageInputStream;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * <p>A persistent cache of decoded TGA files on disk.  The decoded samples
+ * of each file are stored in a raw file in the cache directory along with
+ * the TGA header and the size and modification time of the TGA.  A later
+ * request for an unchanged TGA (even from another process) is served by
+ * memory-mapping the raw file rather than decoding the TGA so it costs
+ * little more than the I/O.  A TGA whose size or modification time has
+ * changed is decoded again and its raw file is replaced.</p>
+ *
+ * <p>The raw file is:</p>
+ * <pre>
+ *   0  magic "TGARAW" 0x00 0x01
+ *   8  the size of the TGA (long)
+ *  16  the modification time of the TGA (long)
+ *  24  the 18 byte TGA header (with the ID length cleared)
+ *  42  the number of bytes of samples (long)
+ *  64  the samples in the layout of {@link TGAImageReader}
+ * </pre>
+ *
+ * <p>Raw files are written to a temporary file and then moved into place
+ * so a reader never sees a partial file.  A raw file that cannot be read
+ * or written is treated as a miss:  the TGA is simply decoded.</p>
+ *
+ * <p>The cache is thread-safe.</p>
+ */
+public class TGADiskCache
+{
+    /**
+     * <p>The magic number that identifies a raw file (and its version).</p>
+     */
+    private static final byte[] MAGIC = new byte[] { 'T', 'G', 'A', 'R', 'A', 'W', 0, 1 };
+
+    /**
+     * <p>The size of the TGA header in <code>byte</code>s.</p>
+     */
+    private static final int HEADER_SIZE = 18;
+
+    /**
+     * <p>The offsets of the fields of a raw file.</p>
+     */
+    private static final int SOURCE_SIZE_OFFSET = 8;
+    private static final int SOURCE_MODIFIED_OFFSET = 16;
+    private static final int HEADER_OFFSET = 24;
+    private static final int DATA_SIZE_OFFSET = 42;
+    private static final int DATA_OFFSET = 64;
+
+    /**
+     * <p>The suffix of the raw files.</p>
+     */
+    private static final String SUFFIX = ".tgaraw";
+
+    // =========================================================================
+    /**
+     * <p>The decoded samples of a cached TGA mapped from its raw file.</p>
+     */
+    public static final class Mapping
+    {
+        private final TGAHeader header;
+        private final ImageTypeSpecifier imageTypeSpecifier;
+        private final ByteBuffer samples;
+
+        Mapping(final TGAHeader header, final ImageTypeSpecifier imageTypeSpecifier,
+                final ByteBuffer samples)
+        {
+            this.header = header;
+            this.imageTypeSpecifier = imageTypeSpecifier;
+            this.samples = samples;
+        }
+
+        /**
+         * <p>Retrieves the width of the image.</p>
+         */
+        public int getWidth()
+        {
+            return header.getWidth();
+        }
+
+        /**
+         * <p>Retrieves the height of the image.</p>
+         */
+        public int getHeight()
+        {
+            return header.getHeight();
+        }
+
+        /**
+         * <p>Retrieves the type of the image.  The samples are in the layout
+         * of an image created from it.</p>
+         */
+        public ImageTypeSpecifier getImageTypeSpecifier()
+        {
+            return imageTypeSpecifier;
+        }
+
+        /**
+         * <p>Retrieves the read-only memory-mapped samples.  The samples are
+         * top-to-bottom rows of interleaved BGR(A) or grey (alpha)
+         * <code>byte</code>s.</p>
+         */
+        public ByteBuffer getSamples()
+        {
+            return samples.duplicate();
+        }
+
+        /**
+         * <p>Copies the samples into a new image.</p>
+         */
+        public BufferedImage createImage()
+        {
+            final BufferedImage image = imageTypeSpecifier.createBufferedImage(getWidth(), getHeight());
+            samples.duplicate().get(((DataBufferByte)image.getRaster().getDataBuffer()).getData());
+            return image;
+        }
+    }
+
+    // =========================================================================
+    /**
+     * <p>The directory in which the raw files are stored.</p>
+     */
+    private final File directory;
+
+    // =========================================================================
+    /**
+     * <p>Constructs a cache in the specified directory.  The directory is
+     * created if it does not exist.</p>
+     *
+     * @param  directory the directory in which the raw files are stored
+     * @throws IOException if the directory cannot be created
+     */
+    public TGADiskCache(final File directory)
+        throws IOException
+    {
+        if(!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("The cache directory cannot be created (" + directory + ")."); // FIXME:  localize
+        /* else -- the directory exists */
+
+        this.directory = directory;
+    }
+
+    /**
+     * <p>Retrieves the decoded TGA file.  If an unchanged TGA is cached then
+     * its samples are copied from the mapped raw file otherwise the TGA is
+     * decoded and cached.</p>
+     *
+     * @param  file the TGA file
+     * @return the decoded image
+     * @throws IOException if the TGA cannot be read or decoded
+     */
+    public BufferedImage get(final File file)
+        throws IOException
+    {
+        final Mapping mapping = map(file);
+        if(mapping != null)
+            return mapping.createImage();
+        /* else -- the TGA is not cached */
+
+        return decode(file);
+    }
+
+    /**
+     * <p>Maps the cached samples of the TGA file without copying them.  If
+     * the TGA is not cached or has changed then it is decoded and cached
+     * first.</p>
+     *
+     * @param  file the TGA file
+     * @return the mapped samples or <code>null</code> if the TGA could not
+     *         be cached (the directory is not writable)
+     * @throws IOException if the TGA cannot be read or decoded
+     */
+    public Mapping getMapping(final File file)
+        throws IOException
+    {
+        Mapping mapping = map(file);
+        if(mapping != null)
+            return mapping;
+        /* else -- the TGA is not cached */
+
+        decode(file);
+        return map(file);
+    }
+
+    /**
+     * <p>Deletes the cached samples of the TGA file (if any).</p>
+     *
+     * @param  file the TGA file
+     * @throws IOException if the canonical path of the file cannot be
+     *         determined
+     */
+    public void invalidate(final File file)
+        throws IOException
+    {
+        getRawFile(file).delete();
+    }
+
+    // =========================================================================
+    /**
+     * <p>Maps the raw file of the TGA if it is valid for the TGA as it is
+     * now.</p>
+     *
+     * @return the mapped samples or <code>null</code> if there is no valid
+     *         raw file
+     */
+    private Mapping map(final File file)
+        throws IOException
+    {
+        final File rawFile = getRawFile(file);
+        if(!rawFile.isFile())
+            return null;
+        /* else -- the TGA may be cached */
+
+        final long sourceSize = file.length();
+        final long sourceModified = file.lastModified();
+        try
+        {
+            final RandomAccessFile raw = new RandomAccessFile(rawFile, "r");
+            try
+            {
+                final FileChannel channel = raw.getChannel();
+                if(channel.size() < DATA_OFFSET)
+                    return null;
+                /* else -- there is a complete prefix */
+
+                final ByteBuffer prefix = channel.map(FileChannel.MapMode.READ_ONLY, 0, DATA_OFFSET);
+                final byte[] magic = new byte[MAGIC.length];
+                prefix.get(magic);
+                if(!Arrays.equals(magic, MAGIC) ||
+                   (prefix.getLong(SOURCE_SIZE_OFFSET) != sourceSize) ||
+                   (prefix.getLong(SOURCE_MODIFIED_OFFSET) != sourceModified))
+                {
+                    return null;
+                } /* else -- the raw file is of the TGA as it is now */
+
+                final byte[] headerData = new byte[HEADER_SIZE];
+                // cast is workaround for https://jira.mongodb.org/browse/JAVA-2559
+                ((Buffer)prefix).position(HEADER_OFFSET);
+                prefix.get(headerData);
+                final TGAHeader header = readHeader(headerData);
+                final ImageTypeSpecifier imageTypeSpecifier = TGAImageReader.getImageTypeSpecifier(header);
+
+                final long dataSize = prefix.getLong(DATA_SIZE_OFFSET);
+                final long expectedSize = (long)header.getWidth() * header.getHeight() *
+                                          imageTypeSpecifier.getSampleModel(1, 1).getNumBands();
+                if((dataSize != expectedSize) || (channel.size() < DATA_OFFSET + dataSize))
+                    return null;
+                /* else -- the samples are complete */
+
+                // NOTE:  the mapping remains valid after the channel is closed
+                final ByteBuffer samples = channel.map(FileChannel.MapMode.READ_ONLY, DATA_OFFSET, dataSize);
+                return new Mapping(header, imageTypeSpecifier, samples);
+            } finally
+            {
+                raw.close();
+            }
+        } catch(final IOException ioe)
+        {
+            // an unreadable raw file is a miss
+            return null;
+        } catch(final IllegalArgumentException iae)
+        {
+            // an unsupported header is a miss
+            return null;
+        }
+    }
+
+    /**
+     * <p>Decodes the TGA and writes its raw file.  Failing to write the raw
+     * file does not fail the decoding.</p>
+     */
+    private BufferedImage decode(final File file)
+        throws IOException
+    {
+        // the size and modification time are taken before the TGA is read so
+        // that a change while it is read invalidates the raw file
+        final long sourceSize = file.length();
+        final long sourceModified = file.lastModified();
+
+        final byte[] headerData = new byte[HEADER_SIZE];
+        final BufferedImage image;
+        final ImageInputStream input = new FileImageInputStream(file);
+        try
+        {
+            input.readFully(headerData);
+            input.seek(0);
+
+            final TGAImageReader reader = new TGAImageReader(new TGAImageReaderSpi());
+            try
+            {
+                reader.setInput(input, true/*seek forward only*/, true/*ignore metadata*/);
+                image = reader.read(0);
+            } finally
+            {
+                reader.dispose();
+            }
+        } finally
+        {
+            input.close();
+        }
+
+        // the ID is not stored
+        headerData[0] = 0;
+
+        final File rawFile = getRawFile(file);
+        File temporaryFile = null;
+        try
+        {
+            temporaryFile = File.createTempFile("tga", ".tmp", directory);
+            write(temporaryFile, sourceSize, sourceModified, headerData,
+                  ((DataBufferByte)image.getRaster().getDataBuffer()).getData());
+            Files.move(temporaryFile.toPath(), rawFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                                                                 StandardCopyOption.ATOMIC_MOVE);
+        } catch(final IOException ioe)
+        {
+            // the cache is best effort
+            if(temporaryFile != null)
+                temporaryFile.delete();
+            /* else -- nothing was created */
+        }
+
+        return image;
+    }
+
+    /**
+     * <p>Writes a raw file.</p>
+     */
+    private static void write(final File rawFile, final long sourceSize,
+                              final long sourceModified, final byte[] headerData,
+                              final byte[] samples)
+        throws IOException
+    {
+        final ByteBuffer prefix = ByteBuffer.allocate(DATA_OFFSET);
+        prefix.order(ByteOrder.BIG_ENDIAN);
+        prefix.put(MAGIC);
+        prefix.putLong(SOURCE_SIZE_OFFSET, sourceSize);
+        prefix.putLong(SOURCE_MODIFIED_OFFSET, sourceModified);
+        // cast is workaround for https://jira.mongodb.org/browse/JAVA-2559
+        ((Buffer)prefix).position(HEADER_OFFSET);
+        prefix.put(headerData);
+        prefix.putLong(DATA_SIZE_OFFSET, samples.length);
+        ((Buffer)prefix).clear();
+
+        final FileChannel channel = FileChannel.open(rawFile.toPath(), StandardOpenOption.WRITE,
+                                                     StandardOpenOption.TRUNCATE_EXISTING);
+        try
+        {
+            final ByteBuffer data = ByteBuffer.wrap(samples);
+            while(prefix.hasRemaining())
+                channel.write(prefix);
+            while(data.hasRemaining())
+                channel.write(data);
+        } finally
+        {
+            channel.close();
+        }
+    }
+
+    /**
+     * <p>Parses the TGA header.</p>
+     */
+    private static TGAHeader readHeader(final byte[] headerData)
+        throws IOException
+    {
+        final ImageInputStream input = new TGAForwardOnlyInputStream(new ByteArrayInputStream(headerData));
+        input.setByteOrder(ByteOrder.LITTLE_ENDIAN);
+        return new TGAHeader(input);
+    }
+
+    /**
+     * <p>Retrieves the raw file of the TGA.  It is named by a hash of the
+     * canonical path of the TGA.</p>
+     */
+    private File getRawFile(final File file)
+        throws IOException
+    {
+        final String hash = TGAImageCache.hash(file.getCanonicalPath().getBytes(Charset.forName("UTF-8")));
+        return new File(directory, hash + SUFFIX);
+    }
+}
+// =============================================================================
+/*
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
@@ -0,0 +1,58 @@
+package com.realityinteractive.imageio.tga;
+
+/*
+ * TGAExecutors.java
+ * Copyright (c) 2003 Reality Interactive, Inc.
+ *   See bottom of file for license and warranty information.
+ */
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * <p>The executors of the background reads of {@link TGAReadAheadInputBuffer}.
+ * The reads are made on daemon threads that are released when they have 
+ * been idle for a while.  A multi-release jar replaces this class on newer
+ * JVMs with one that reads on virtual threads (see 
+ * <code>src/main/java21</code>).  Both must have the same methods.</p>
+ */
+final class TGAExecutors
+{
+    /**
+     * <p>There are only static methods.</p>
+     */
+    private TGAExecutors() {}
+
+    /**
+     * <p>Creates the executor on which the reads ahead are made.</p>
+     */
+    static ExecutorService newReadAheadExecutor()
+    {
+        return Executors.newCachedThreadPool(new ThreadFactory()
+        {
+            public Thread newThread(final Runnable runnable)
+            {
+                final Thread thread = new Thread(runnable, "TGA read-ahead");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+}
+// =============================================================================
+/*
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
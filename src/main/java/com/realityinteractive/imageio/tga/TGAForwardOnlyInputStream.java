@@ -0,0 +1,148 @@
+package com.realityinteractive.imageio.tga;
+
+/*
+ * TGAForwardOnlyInputStream.java
+ * Copyright (c) 2003 Reality Interactive, Inc.
+ *   See bottom of file for license and warranty information.
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageInputStreamImpl;
+
+/**
+ * <p>An {@link ImageInputStream} over an {@link InputStream} that only moves
+ * forward.  Unlike {@link javax.imageio.stream.FileCacheImageInputStream}
+ * and {@link javax.imageio.stream.MemoryCacheImageInputStream} nothing is
+ * cached:  seeking forward skips the data and seeking backward fails.  This
+ * is sufficient for {@link TGAImageReader} which reads the header, color map
+ * and pixel data in a single forward pass.</p>
+ *
+ * <p>The underlying <code>InputStream</code> is not closed when this stream
+ * is closed.</p>
+ */
+class TGAForwardOnlyInputStream extends ImageInputStreamImpl
+{
+    /**
+     * <p>The <code>InputStream</code> from which the data is read.</p>
+     */
+    private final InputStream input;
+
+    // =========================================================================
+    /**
+     * <p>Constructs a forward-only stream over the specified
+     * <code>InputStream</code>.</p>
+     *
+     * @param  input the <code>InputStream</code> from which the data is read
+     */
+    TGAForwardOnlyInputStream(final InputStream input)
+    {
+        if(input == null)
+            throw new IllegalArgumentException("The input stream cannot be null."); // FIXME:  localize
+        /* else -- there is an input stream */
+
+        this.input = input;
+    }
+
+    /**
+     * @see ImageInputStreamImpl#read()
+     */
+    @Override
+    public int read()
+        throws IOException
+    {
+        checkClosed();
+        bitOffset = 0;
+
+        final int data = input.read();
+        if(data != -1)
+            streamPos++;
+        /* else -- the end of the stream has been reached */
+
+        return data;
+    }
+
+    /**
+     * @see ImageInputStreamImpl#read(byte[], int, int)
+     */
+    @Override
+    public int read(final byte[] buffer, final int offset, final int length)
+        throws IOException
+    {
+        checkClosed();
+        bitOffset = 0;
+
+        final int count = input.read(buffer, offset, length);
+        if(count > 0)
+            streamPos += count;
+        /* else -- nothing was read */
+
+        return count;
+    }
+
+    /**
+     * <p>Seeking forward skips the data in the <code>InputStream</code>.
+     * Seeking backward is not possible.</p>
+     *
+     * @throws IndexOutOfBoundsException if <code>position</code> is before
+     *         the current position
+     * @see ImageInputStreamImpl#seek(long)
+     */
+    @Override
+    public void seek(final long position)
+        throws IOException
+    {
+        checkClosed();
+        if(position < streamPos)
+            throw new IndexOutOfBoundsException("A forward-only stream cannot seek backward (" + position + " < " + streamPos + ")."); // FIXME:  localize
+        /* else -- the seek is forward */
+
+        // skip to the position.  InputStream.skip() may skip less than asked
+        // (or nothing at all) so a read is used to detect the end of stream.
+        while(streamPos < position)
+        {
+            final long skipped = input.skip(position - streamPos);
+            if(skipped > 0)
+            {
+                streamPos += skipped;
+            } else /* nothing was skipped */
+            {
+                if(input.read() == -1)
+                    break;
+                /* else -- a byte was skipped by reading it */
+                streamPos++;
+            }
+        }
+        bitOffset = 0;
+    }
+
+    /**
+     * <p>Nothing is cached.</p>
+     *
+     * @see ImageInputStreamImpl#isCached()
+     */
+    @Override
+    public boolean isCached()
+    {
+        // see javadoc
+        return false;
+    }
+}
+// =============================================================================
+/*
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
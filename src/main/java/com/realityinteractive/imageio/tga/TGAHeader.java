@@ -218,9 +218,11 @@ public class TGAHeader
                 colorMapEntrySize = 2;
                 break;
             case 24:
-            case 32:
                 colorMapEntrySize = 3;
                 break;
+            case 32:
+                colorMapEntrySize = 4;
+                break;
         }
         colorMapSize = colorMapEntrySize * numberColorMapEntries; // in bytes 
 
@@ -236,7 +238,7 @@ public class TGAHeader
             id = new byte[idLength];
 
             // read the id
-            inputStream.read(id, 0, idLength);
+            inputStream.readFully(id, 0, idLength);
         } /* else -- the idLength was not positive */
 
         // compute the color map and pixel data offsets.  The color map data 
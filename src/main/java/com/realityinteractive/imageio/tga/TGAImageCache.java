@@ -0,0 +1,662 @@
+package com.realityinteractive.imageio.tga;
+
+/*
+ * TGAImageCache.java
+ * Copyright (c) 2003 Reality Interactive, Inc.
+ *   See bottom of file for license and warranty information.
+ */
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import javax.imageio.stream.FileImageInputStream;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * <p>A cache of decoded TGAs in front of {@link TGAImageReader}.  A file is
+ * keyed by its path, size and modification time (so a changed file is
+ * decoded again) and in-memory data is keyed by a hash of its content.</p>
+ *
+ * <p>The cache is bounded by the number of <code>byte</code>s of decoded
+ * samples.  When it is full the least recently used images are evicted
+ * until the new image fits.  An image larger than the whole budget is
+ * returned without being cached.  The entries may be stored:</p>
+ * <ul>
+ *   <li>{@link Storage#STRONG}:  the images are shared.  They must not be
+ *   modified.</li>
+ *   <li>{@link Storage#SOFT}:  as <code>STRONG</code> but the garbage
+ *   collector may clear the images when the heap is low.  A cleared entry
+ *   is simply a miss.</li>
+ *   <li>{@link Storage#OFF_HEAP}:  the samples are kept in direct buffers
+ *   outside of the heap and each hit is copied into a new image (which the
+ *   caller may modify).  A hit costs a copy rather than a decode.</li>
+ * </ul>
+ *
+ * <p>Concurrent requests for an image that is not cached are coalesced:  the
+ * image is decoded once and all of the requests receive it.  The hit, miss
+ * (decode) and eviction counts are available to tune the budget.</p>
+ *
+ * <p>The cache is thread-safe.</p>
+ */
+public class TGAImageCache
+{
+    /**
+     * <p>How the cached images are stored.</p>
+     */
+    public enum Storage
+    {
+        /**
+         * <p>The images are strongly referenced and are shared.</p>
+         */
+        STRONG,
+
+        /**
+         * <p>The images are softly referenced and are shared.</p>
+         */
+        SOFT,
+
+        /**
+         * <p>The samples are stored in direct buffers and are copied into a
+         * new image for each hit.</p>
+         */
+        OFF_HEAP
+    }
+
+    // =========================================================================
+    /**
+     * <p>The maximum number of <code>byte</code>s of cached samples.</p>
+     */
+    private final long maximumSize;
+
+    /**
+     * <p>How the images are stored.</p>
+     */
+    private final Storage storage;
+
+    /**
+     * <p>The param with which the images are read.  This may be
+     * <code>null</code>.</p>
+     */
+    private final TGAImageReadParam param;
+
+    /**
+     * <p>The entries in least recently used order.  This and the fields that
+     * follow are guarded by <code>entries</code>.</p>
+     */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true/*access order*/);
+
+    /**
+     * <p>The loads that are in progress.</p>
+     */
+    private final Map<String, FutureTask<BufferedImage>> loads = new HashMap<String, FutureTask<BufferedImage>>();
+
+    /**
+     * <p>The number of <code>byte</code>s of cached samples.</p>
+     */
+    private long size;
+
+    /**
+     * <p>The counters.</p>
+     */
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    // =========================================================================
+    /**
+     * <p>Constructs a cache with the specified budget whose images are
+     * strongly referenced and read with the default param.</p>
+     *
+     * @param  maximumSize the maximum number of <code>byte</code>s of cached
+     *         samples
+     */
+    public TGAImageCache(final long maximumSize)
+    {
+        this(maximumSize, Storage.STRONG, null);
+    }
+
+    /**
+     * <p>Constructs a cache.</p>
+     *
+     * @param  maximumSize the maximum number of <code>byte</code>s of cached
+     *         samples
+     * @param  storage how the images are stored
+     * @param  param the param with which the images are read (for example to
+     *         decode strictly) or <code>null</code> for the defaults
+     */
+    public TGAImageCache(final long maximumSize, final Storage storage,
+                         final TGAImageReadParam param)
+    {
+        if(maximumSize < 0)
+            throw new IllegalArgumentException("The maximum size must be non-negative (" + maximumSize + ")."); // FIXME:  localize
+        /* else -- the size is valid */
+        if(storage == null)
+            throw new IllegalArgumentException("The storage cannot be null."); // FIXME:  localize
+        /* else -- there is a storage */
+
+        this.maximumSize = maximumSize;
+        this.storage = storage;
+        this.param = param;
+    }
+
+    /**
+     * <p>Retrieves the decoded TGA file.  It is decoded if it is not cached
+     * or if it has changed (its size or modification time differ) since it
+     * was cached.</p>
+     *
+     * @param  file the TGA file
+     * @return the decoded image
+     * @throws IOException if the file cannot be read or decoded
+     */
+    public BufferedImage get(final File file)
+        throws IOException
+    {
+        // a NUL cannot be in a path so the prefix only matches the keys of
+        // this file
+        final String prefix = "file:" + file.getCanonicalPath() + '\0';
+        final String key = prefix + file.length() + ':' + file.lastModified();
+        return get(key, prefix, new Callable<BufferedImage>()
+        {
+            public BufferedImage call()
+                throws IOException
+            {
+                final ImageInputStream input = new FileImageInputStream(file);
+                try
+                {
+                    return read(input);
+                } finally
+                {
+                    input.close();
+                }
+            }
+        });
+    }
+
+    /**
+     * <p>Retrieves the decoded TGA that is in memory.  It is keyed by a
+     * (SHA-256) hash of the data.</p>
+     *
+     * @param  data the TGA
+     * @return the decoded image
+     * @throws IOException if the data cannot be decoded
+     */
+    public BufferedImage get(final byte[] data)
+        throws IOException
+    {
+        final String key = "sha-256:" + hash(data);
+        return get(key, null/*no earlier versions*/, new Callable<BufferedImage>()
+        {
+            public BufferedImage call()
+                throws IOException
+            {
+                // the data is in memory so it is read forward only without
+                // any caching
+                return read(new TGAForwardOnlyInputStream(new ByteArrayInputStream(data)));
+            }
+        });
+    }
+
+    /**
+     * <p>Removes all of the entries.  The counters are not reset.</p>
+     */
+    public void clear()
+    {
+        synchronized(entries)
+        {
+            entries.clear();
+            size = 0;
+        }
+    }
+
+    /**
+     * <p>Retrieves the number of <code>byte</code>s of cached samples.</p>
+     */
+    public long getSize()
+    {
+        synchronized(entries)
+        {
+            return size;
+        }
+    }
+
+    /**
+     * <p>Retrieves the maximum number of <code>byte</code>s of cached
+     * samples.</p>
+     */
+    public long getMaximumSize()
+    {
+        return maximumSize;
+    }
+
+    /**
+     * <p>Retrieves the number of requests that were served from the cache
+     * (including those that were coalesced with a load that was in
+     * progress).</p>
+     */
+    public long getHitCount()
+    {
+        synchronized(entries)
+        {
+            return hitCount;
+        }
+    }
+
+    /**
+     * <p>Retrieves the number of requests that decoded an image.</p>
+     */
+    public long getMissCount()
+    {
+        synchronized(entries)
+        {
+            return missCount;
+        }
+    }
+
+    /**
+     * <p>Retrieves the number of images that were evicted to stay within the
+     * budget.</p>
+     */
+    public long getEvictionCount()
+    {
+        synchronized(entries)
+        {
+            return evictionCount;
+        }
+    }
+
+    // =========================================================================
+    /**
+     * <p>Retrieves the image with the specified key.  If it is not cached
+     * then it is loaded (or the load that is in progress is waited for).
+     * The entry is only looked up under the lock.  Its image is retrieved
+     * (which copies the samples of an off-heap entry) once the lock is 
+     * released so that other users of the cache do not wait on the copy.</p>
+     *
+     * @param  key the key of the image
+     * @param  stalePrefix the prefix of the keys of earlier versions of the
+     *         image that are removed when the image is cached or 
+     *         <code>null</code> if there are none
+     * @param  loader loads the image
+     */
+    private BufferedImage get(final String key, final String stalePrefix,
+                              final Callable<BufferedImage> loader)
+        throws IOException
+    {
+        final FutureTask<BufferedImage> load;
+        final boolean isLoader;
+        while(true)
+        {
+            final Entry entry;
+            synchronized(entries)
+            {
+                entry = entries.get(key);
+                if(entry == null)
+                {
+                    final FutureTask<BufferedImage> pending = loads.get(key);
+                    if(pending != null)
+                    {
+                        hitCount++;
+                        load = pending;
+                        isLoader = false;
+                    } else /* this request loads the image */
+                    {
+                        missCount++;
+                        load = new FutureTask<BufferedImage>(loader);
+                        loads.put(key, load);
+                        isLoader = true;
+                    }
+                    break;
+                } /* else -- the image is cached */
+            }
+
+            final BufferedImage image = entry.get();
+            synchronized(entries)
+            {
+                if(image != null)
+                {
+                    hitCount++;
+                    return image;
+                } /* else -- the soft reference was cleared */
+
+                // the entry may have been replaced or evicted in the meantime
+                if(entries.get(key) == entry)
+                {
+                    entries.remove(key);
+                    size -= entry.size;
+                } /* else -- the entry is no longer cached */
+            }
+        }
+
+        if(isLoader)
+        {
+            try
+            {
+                load.run();
+                put(key, stalePrefix, getResult(load));
+            } finally
+            {
+                synchronized(entries)
+                {
+                    loads.remove(key);
+                }
+            }
+        } /* else -- coalesced with the load in progress */
+
+        final BufferedImage image = getResult(load);
+
+        // each off-heap request receives its own copy (the loader receives
+        // the decoded image as the entry holds a copy of it)
+        if((storage == Storage.OFF_HEAP) && !isLoader)
+        {
+            final Entry entry;
+            synchronized(entries)
+            {
+                entry = entries.get(key);
+            }
+            if(entry != null)
+                return entry.get();
+            /* else -- the image was not cached */
+        } /* else -- the image is shared */
+        return image;
+    }
+
+    /**
+     * <p>Caches the image and evicts the least recently used images until
+     * the cache is within its budget.  An image that is larger than the
+     * budget is not cached.  The earlier versions of the image (those whose
+     * keys start with the stale prefix) are removed as they can no longer
+     * be hit.</p>
+     */
+    private void put(final String key, final String stalePrefix,
+                     final BufferedImage image)
+    {
+        final long imageSize = getSize(image);
+        if(imageSize > maximumSize)
+            return;
+        /* else -- the image fits */
+
+        final Entry entry = createEntry(image, imageSize);
+        synchronized(entries)
+        {
+            if(stalePrefix != null)
+            {
+                final Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+                while(iterator.hasNext())
+                {
+                    final Map.Entry<String, Entry> cached = iterator.next();
+                    if(cached.getKey().startsWith(stalePrefix) && !cached.getKey().equals(key))
+                    {
+                        iterator.remove();
+                        size -= cached.getValue().size;
+                    } /* else -- not an earlier version */
+                }
+            } /* else -- there are no earlier versions */
+
+            final Entry previous = entries.put(key, entry);
+            if(previous != null)
+                size -= previous.size;
+            /* else -- the key is new */
+            size += imageSize;
+
+            final Iterator<Entry> iterator = entries.values().iterator();
+            while((size > maximumSize) && iterator.hasNext())
+            {
+                final Entry eldest = iterator.next();
+                if(eldest == entry)
+                    continue;
+                /* else -- evict the eldest */
+
+                iterator.remove();
+                size -= eldest.size;
+                evictionCount++;
+            }
+        }
+    }
+
+    /**
+     * <p>Creates the entry for the image based on the storage.</p>
+     */
+    private Entry createEntry(final BufferedImage image, final long imageSize)
+    {
+        final DataBuffer dataBuffer = image.getRaster().getDataBuffer();
+        switch(storage)
+        {
+            case SOFT:
+                return new SoftEntry(image, imageSize);
+
+            case OFF_HEAP:
+                if((dataBuffer instanceof DataBufferByte) && (dataBuffer.getNumBanks() == 1) &&
+                   (image.getRaster().getParent() == null))
+                {
+                    return new OffHeapEntry(image, imageSize);
+                } /* else -- only single bank byte rasters are stored off-heap */
+                return new StrongEntry(image, imageSize);
+
+            case STRONG:
+            default:
+                return new StrongEntry(image, imageSize);
+        }
+    }
+
+    /**
+     * <p>Reads the TGA from the input.</p>
+     */
+    private BufferedImage read(final ImageInputStream input)
+        throws IOException
+    {
+        final TGAImageReader reader = new TGAImageReader(new TGAImageReaderSpi());
+        try
+        {
+            reader.setInput(input, true/*seek forward only*/, true/*ignore metadata*/);
+            return reader.read(0, param);
+        } finally
+        {
+            reader.dispose();
+        }
+    }
+
+    /**
+     * <p>Retrieves the number of <code>byte</code>s of samples of the
+     * image.</p>
+     */
+    private static long getSize(final BufferedImage image)
+    {
+        final DataBuffer dataBuffer = image.getRaster().getDataBuffer();
+        return (long)dataBuffer.getSize() * dataBuffer.getNumBanks() *
+               (DataBuffer.getDataTypeSize(dataBuffer.getDataType()) / 8);
+    }
+
+    /**
+     * <p>Retrieves the result of the load unwrapping its exception.</p>
+     */
+    private static BufferedImage getResult(final FutureTask<BufferedImage> load)
+        throws IOException
+    {
+        boolean interrupted = false;
+        try
+        {
+            while(true)
+            {
+                try
+                {
+                    return load.get();
+                } catch(final InterruptedException ie)
+                {
+                    // the load is shared so the wait continues
+                    interrupted = true;
+                }
+            }
+        } catch(final ExecutionException ee)
+        {
+            final Throwable cause = ee.getCause();
+            if(cause instanceof IOException)
+                throw (IOException)cause;
+            else if(cause instanceof RuntimeException)
+                throw (RuntimeException)cause;
+            else if(cause instanceof Error)
+                throw (Error)cause;
+            else /* unexpected */
+                throw new IOException(cause);
+        } finally
+        {
+            if(interrupted)
+                Thread.currentThread().interrupt();
+            /* else -- not interrupted */
+        }
+    }
+
+    /**
+     * <p>Retrieves the hexadecimal SHA-256 hash of the data.  This also names
+     * the raw files of {@link TGADiskCache}.</p>
+     */
+    static String hash(final byte[] data)
+    {
+        final MessageDigest digest;
+        try
+        {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch(final NoSuchAlgorithmException nsae)
+        {
+            // every Java platform is required to support SHA-256
+            throw new IllegalStateException(nsae);
+        }
+
+        final byte[] hash = digest.digest(data);
+        final StringBuilder builder = new StringBuilder(hash.length * 2);
+        for(final byte b : hash)
+        {
+            builder.append(Character.forDigit((b >>> 4) & 0xF, 16));
+            builder.append(Character.forDigit(b & 0xF, 16));
+        }
+        return builder.toString();
+    }
+
+    // =========================================================================
+    /**
+     * <p>A cached image.</p>
+     */
+    private static abstract class Entry
+    {
+        /**
+         * <p>The number of <code>byte</code>s of samples of the image.</p>
+         */
+        final long size;
+
+        Entry(final long size)
+        {
+            this.size = size;
+        }
+
+        /**
+         * <p>Retrieves the image or <code>null</code> if it has been
+         * cleared.</p>
+         */
+        abstract BufferedImage get();
+    }
+
+    /**
+     * <p>A strongly referenced image.</p>
+     */
+    private static final class StrongEntry extends Entry
+    {
+        private final BufferedImage image;
+
+        StrongEntry(final BufferedImage image, final long size)
+        {
+            super(size);
+            this.image = image;
+        }
+
+        BufferedImage get()
+        {
+            return image;
+        }
+    }
+
+    /**
+     * <p>A softly referenced image.</p>
+     */
+    private static final class SoftEntry extends Entry
+    {
+        private final SoftReference<BufferedImage> image;
+
+        SoftEntry(final BufferedImage image, final long size)
+        {
+            super(size);
+            this.image = new SoftReference<BufferedImage>(image);
+        }
+
+        BufferedImage get()
+        {
+            return image.get();
+        }
+    }
+
+    /**
+     * <p>An image whose samples are stored in a direct buffer.</p>
+     */
+    private static final class OffHeapEntry extends Entry
+    {
+        private final ColorModel colorModel;
+        private final SampleModel sampleModel;
+        private final ByteBuffer samples;
+
+        OffHeapEntry(final BufferedImage image, final long size)
+        {
+            super(size);
+            colorModel = image.getColorModel();
+            sampleModel = image.getSampleModel();
+
+            final byte[] data = ((DataBufferByte)image.getRaster().getDataBuffer()).getData();
+            samples = ByteBuffer.allocateDirect(data.length);
+            samples.put(data);
+            // cast is workaround for https://jira.mongodb.org/browse/JAVA-2559
+            ((Buffer)samples).flip();
+        }
+
+        BufferedImage get()
+        {
+            // each copy is made through its own view of the samples
+            final byte[] data = new byte[samples.capacity()];
+            samples.duplicate().get(data);
+            return new BufferedImage(colorModel,
+                                     Raster.createWritableRaster(sampleModel, new DataBufferByte(data, data.length), null),
+                                     colorModel.isAlphaPremultiplied(), null);
+        }
+    }
+}
+// =============================================================================
+/*
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
@@ -0,0 +1,421 @@
+package com.realityinteractive.imageio.tga;
+
+/*
+ * TGAImageReadParam.java
+ * Copyright (c) 2003 Reality Interactive, Inc.
+ *   See bottom of file for license and warranty information.
+ */
+
+import javax.imageio.ImageReadParam;
+
+/**
+ * <p>The {@link ImageReadParam} for {@link TGAImageReader}.  In addition to
+ * the standard settings it allows the decoding to be tuned.  An instance is
+ * returned from {@link TGAImageReader#getDefaultReadParam()}.</p>
+ *
+ * <p>The size of the buffer through which the pixel data is read can be set
+ * with {@link #setInputBufferSize(int)}.  By default ({@link #ADAPTIVE_BUFFER_SIZE})
+ * the buffer is sized from the amount of pixel data that the header
+ * describes:  small images are read with a single read and large images
+ * with large sequential reads (up to {@link #MAXIMUM_ADAPTIVE_BUFFER_SIZE}).
+ * The reads may be overlapped with the decoding with
+ * {@link #setReadAhead(boolean)}.</p>
+ *
+ * <p>Malformed input is handled according to the decoding mode.  In strict
+ * mode (see {@link #setStrict(boolean)}) decoding fails with an 
+ * {@link java.io.IOException} if a color map index is out of range, if the 
+ * pixel data is truncated or if an RLE packet runs past the end of the image.
+ * In lenient mode (the default) out of range color map indices and missing
+ * pixels are zero-filled and excess RLE data is ignored.  In either mode the
+ * number of pixels ({@link #setMaximumPixelCount(long)}) and the number of
+ * <code>byte</code>s read ({@link #setMaximumBytesRead(long)}) are limited.
+ * The pixel count is checked against the header before the destination is
+ * allocated.  If the length of the stream is known then, even in lenient 
+ * mode, the pixel data must be long enough to describe the image in the 
+ * best case RLE encoding (128 pixels per packet) so that a header claiming a
+ * huge image in a few <code>byte</code>s fails before it is allocated.</p>
+ *
+ * @see TGAImageReader
+ */
+public class TGAImageReadParam extends ImageReadParam
+{
+    /**
+     * <p>The input buffer size indicating that the size should be determined
+     * from the size of the pixel data.</p>
+     */
+    public static final int ADAPTIVE_BUFFER_SIZE = 0;
+
+    /**
+     * <p>The largest buffer that will be allocated when the input buffer size
+     * is adaptive (3 MB).  Explicitly set sizes are not limited by this.</p>
+     */
+    public static final int MAXIMUM_ADAPTIVE_BUFFER_SIZE = 1024 * 1024 * 3;
+
+    /**
+     * <p>The default maximum number of pixels in an image (16384 x 16384).</p>
+     */
+    public static final long DEFAULT_MAXIMUM_PIXEL_COUNT = 16384L * 16384L;
+
+    /**
+     * <p>The default maximum number of <code>byte</code>s that are read for
+     * an image (2 GB).</p>
+     */
+    public static final long DEFAULT_MAXIMUM_BYTES_READ = 1L << 31;
+
+    /**
+     * <p>The default maximum number of decoded tiles that are cached by an
+     * image from {@link TGAImageReader#readAsRenderedImage(int, ImageReadParam)}.</p>
+     */
+    public static final int DEFAULT_TILE_CACHE_SIZE = 64;
+
+    /**
+     * <p>The size in <code>byte</code>s of the buffer through which the pixel
+     * data is read or {@link #ADAPTIVE_BUFFER_SIZE}.</p>
+     */
+    private int inputBufferSize = ADAPTIVE_BUFFER_SIZE;
+
+    /**
+     * <p>If <code>true</code> then 1 bit monochrome images are read into a
+     * packed {@link java.awt.image.BufferedImage#TYPE_BYTE_BINARY} image
+     * rather than one with a <code>byte</code> per pixel.</p>
+     */
+    private boolean packedMonochrome = false;
+
+    /**
+     * <p>If <code>true</code> then an alpha that is entirely opaque is
+     * dropped from the image.</p>
+     */
+    private boolean dropOpaqueAlpha = false;
+
+    /**
+     * <p>If <code>true</code> then the samples of an image with alpha are
+     * premultiplied by the alpha.</p>
+     */
+    private boolean premultipliedAlpha = false;
+
+    /**
+     * <p>If <code>true</code> then each pixel is read into a single packed
+     * <code>int</code>.</p>
+     */
+    private boolean intPacked = false;
+
+    /**
+     * <p>If <code>true</code> then malformed input fails the decoding 
+     * otherwise it is zero-filled or ignored.</p>
+     */
+    private boolean strict = false;
+
+    /**
+     * <p>The maximum number of pixels (<code>width * height</code>) that an
+     * image may have.</p>
+     */
+    private long maximumPixelCount = DEFAULT_MAXIMUM_PIXEL_COUNT;
+
+    /**
+     * <p>The maximum number of <code>byte</code>s that may be read for an
+     * image.</p>
+     */
+    private long maximumBytesRead = DEFAULT_MAXIMUM_BYTES_READ;
+
+    /**
+     * <p>If <code>true</code> then the pixel data is read ahead on a 
+     * background thread while it is decoded.</p>
+     */
+    private boolean readAhead = false;
+
+    /**
+     * <p>The maximum number of decoded tiles that are cached by a lazily
+     * decoded image.</p>
+     */
+    private int tileCacheSize = DEFAULT_TILE_CACHE_SIZE;
+
+    // =========================================================================
+    /**
+     * <p>Constructs a read param with the default values.</p>
+     */
+    public TGAImageReadParam()
+    {
+        super();
+    }
+
+    /**
+     * <p>Sets the size in <code>byte</code>s of the buffer through which the
+     * pixel data is read.  {@link #ADAPTIVE_BUFFER_SIZE} sizes the buffer
+     * from the pixel data size described by the header.</p>
+     *
+     * @param  inputBufferSize the size of the input buffer in <code>byte</code>s
+     *         or <code>ADAPTIVE_BUFFER_SIZE</code>
+     * @throws IllegalArgumentException if <code>inputBufferSize</code> is
+     *         negative
+     */
+    public void setInputBufferSize(final int inputBufferSize)
+    {
+        if(inputBufferSize < 0)
+            throw new IllegalArgumentException("The input buffer size must be non-negative (" + inputBufferSize + ")."); // FIXME:  localize
+        /* else -- the size is valid */
+
+        this.inputBufferSize = inputBufferSize;
+    }
+
+    /**
+     * <p>Retrieves the size in <code>byte</code>s of the buffer through which
+     * the pixel data is read or {@link #ADAPTIVE_BUFFER_SIZE} if the size is
+     * determined from the pixel data size.</p>
+     */
+    public int getInputBufferSize()
+    {
+        return inputBufferSize;
+    }
+
+    /**
+     * <p>Sets if 1 bit monochrome images are read into a packed 
+     * {@link java.awt.image.BufferedImage#TYPE_BYTE_BINARY} image (one bit
+     * per pixel) rather than an 8 bit grey image.  The packed image is an 
+     * eighth of the size and the rows are copied without any expansion.
+     * This has no effect on other image types.</p>
+     *
+     * @param  packedMonochrome <code>true</code> if 1 bit monochrome images
+     *         are to be read packed
+     */
+    public void setPackedMonochrome(final boolean packedMonochrome)
+    {
+        this.packedMonochrome = packedMonochrome;
+    }
+
+    /**
+     * <p>Retrieves if 1 bit monochrome images are read into a packed
+     * {@link java.awt.image.BufferedImage#TYPE_BYTE_BINARY} image.</p>
+     */
+    public boolean isPackedMonochrome()
+    {
+        return packedMonochrome;
+    }
+
+    /**
+     * <p>Sets if the alpha of an image whose alpha is entirely opaque (as
+     * many 32 bit TGAs are) is dropped so that a 32 bit image is read into a
+     * BGR image (and a 16 bit monochrome image into a grey image) which is
+     * three quarters (half) of the size.  The alpha of a seekable input is
+     * checked before the image is allocated.  The alpha of an input that
+     * only seeks forward can only be checked once the image has been read so
+     * it is then copied without its alpha.  This has no effect on images
+     * without alpha or if a destination image is set.</p>
+     *
+     * @param  dropOpaqueAlpha <code>true</code> if an entirely opaque alpha
+     *         is dropped
+     */
+    public void setDropOpaqueAlpha(final boolean dropOpaqueAlpha)
+    {
+        this.dropOpaqueAlpha = dropOpaqueAlpha;
+    }
+
+    /**
+     * <p>Retrieves if an entirely opaque alpha is dropped.</p>
+     */
+    public boolean isDropOpaqueAlpha()
+    {
+        return dropOpaqueAlpha;
+    }
+
+    /**
+     * <p>Sets if the samples of an image with alpha are premultiplied by the
+     * alpha as they are decoded.  The image then has a premultiplied color
+     * model so that (for example) rendering does not need to coerce its data
+     * in a second pass.  Reading into a premultiplied destination type or
+     * destination image has the same effect.  This has no effect on images
+     * without alpha (or whose opaque alpha is dropped).</p>
+     *
+     * @param  premultipliedAlpha <code>true</code> if the samples are 
+     *         premultiplied
+     */
+    public void setPremultipliedAlpha(final boolean premultipliedAlpha)
+    {
+        this.premultipliedAlpha = premultipliedAlpha;
+    }
+
+    /**
+     * <p>Retrieves if the samples of an image with alpha are premultiplied by
+     * the alpha.</p>
+     */
+    public boolean isPremultipliedAlpha()
+    {
+        return premultipliedAlpha;
+    }
+
+    /**
+     * <p>Sets if each pixel is read into a single packed <code>int</code>:
+     * an image with alpha is read into a {@link java.awt.image.BufferedImage#TYPE_INT_ARGB}
+     * image (or a {@link java.awt.image.BufferedImage#TYPE_INT_ARGB_PRE} 
+     * image if the alpha is premultiplied) and an image without alpha into
+     * a {@link java.awt.image.BufferedImage#TYPE_INT_RGB} image.  Monochrome
+     * is replicated to R, G and B.  Such images are the fastest to draw with
+     * Java2D.  Packed monochrome and dropping an opaque alpha do not apply
+     * to packed pixels.</p>
+     *
+     * <p>Note that packed monochrome pixels are the grey samples as they
+     * are in the file.  They are <em>not</em> the values that
+     * {@link java.awt.image.BufferedImage#getRGB(int, int)} returns for the
+     * (unpacked) monochrome image that {@link javax.imageio.ImageReader#read(int)}
+     * reads, as its linear grey color space is converted to sRGB.</p>
+     *
+     * @param  intPacked <code>true</code> if each pixel is a packed
+     *         <code>int</code>
+     */
+    public void setIntPacked(final boolean intPacked)
+    {
+        this.intPacked = intPacked;
+    }
+
+    /**
+     * <p>Retrieves if each pixel is read into a single packed 
+     * <code>int</code>.</p>
+     */
+    public boolean isIntPacked()
+    {
+        return intPacked;
+    }
+
+    /**
+     * <p>Sets if decoding is strict.  In strict mode malformed input (out of
+     * range color map indices, truncated pixel data and RLE packets that run
+     * past the end of the image) fails the decoding with an 
+     * {@link java.io.IOException}.  Otherwise (lenient mode) out of range
+     * indices and missing pixels are zero-filled and excess RLE data is
+     * ignored.</p>
+     *
+     * @param  strict <code>true</code> if decoding is strict
+     */
+    public void setStrict(final boolean strict)
+    {
+        this.strict = strict;
+    }
+
+    /**
+     * <p>Retrieves if decoding is strict.</p>
+     */
+    public boolean isStrict()
+    {
+        return strict;
+    }
+
+    /**
+     * <p>Sets the maximum number of pixels (<code>width * height</code>) that
+     * an image may have.  Larger images fail with an {@link java.io.IOException}
+     * before any pixel data is allocated or read.</p>
+     *
+     * @param  maximumPixelCount the maximum number of pixels
+     * @throws IllegalArgumentException if <code>maximumPixelCount</code> is 
+     *         not positive
+     */
+    public void setMaximumPixelCount(final long maximumPixelCount)
+    {
+        if(maximumPixelCount <= 0)
+            throw new IllegalArgumentException("The maximum pixel count must be positive (" + maximumPixelCount + ")."); // FIXME:  localize
+        /* else -- the count is valid */
+
+        this.maximumPixelCount = maximumPixelCount;
+    }
+
+    /**
+     * <p>Retrieves the maximum number of pixels that an image may have.</p>
+     */
+    public long getMaximumPixelCount()
+    {
+        return maximumPixelCount;
+    }
+
+    /**
+     * <p>Sets the maximum number of <code>byte</code>s (including the header
+     * and color map) that may be read for an image.  If more are needed the
+     * decoding fails with an {@link java.io.IOException}.</p>
+     *
+     * @param  maximumBytesRead the maximum number of <code>byte</code>s
+     * @throws IllegalArgumentException if <code>maximumBytesRead</code> is 
+     *         not positive
+     */
+    public void setMaximumBytesRead(final long maximumBytesRead)
+    {
+        if(maximumBytesRead <= 0)
+            throw new IllegalArgumentException("The maximum number of bytes read must be positive (" + maximumBytesRead + ")."); // FIXME:  localize
+        /* else -- the count is valid */
+
+        this.maximumBytesRead = maximumBytesRead;
+    }
+
+    /**
+     * <p>Retrieves the maximum number of <code>byte</code>s that may be read
+     * for an image.</p>
+     */
+    public long getMaximumBytesRead()
+    {
+        return maximumBytesRead;
+    }
+
+    /**
+     * <p>Sets if the pixel data is read ahead.  If so then the next input
+     * buffer is filled on a background thread while the current one is 
+     * decoded so that slow storage (disks and network file systems) is 
+     * read while the pixels are decoded rather than before.  This is only of
+     * benefit when the pixel data is larger than the input buffer (see
+     * {@link #setInputBufferSize(int)}) and uses a second buffer of the same
+     * size.</p>
+     *
+     * @param  readAhead <code>true</code> if the pixel data is read ahead
+     */
+    public void setReadAhead(final boolean readAhead)
+    {
+        this.readAhead = readAhead;
+    }
+
+    /**
+     * <p>Retrieves if the pixel data is read ahead.</p>
+     */
+    public boolean isReadAhead()
+    {
+        return readAhead;
+    }
+
+    /**
+     * <p>Sets the maximum number of decoded tiles that are cached by an image
+     * from {@link TGAImageReader#readAsRenderedImage(int, ImageReadParam)}.
+     * When the cache is full the least recently used tile is dropped (and is
+     * decoded again if it is needed).</p>
+     *
+     * @param  tileCacheSize the maximum number of cached tiles
+     * @throws IllegalArgumentException if <code>tileCacheSize</code> is not
+     *         positive
+     */
+    public void setTileCacheSize(final int tileCacheSize)
+    {
+        if(tileCacheSize <= 0)
+            throw new IllegalArgumentException("The tile cache size must be positive (" + tileCacheSize + ")."); // FIXME:  localize
+        /* else -- the size is valid */
+
+        this.tileCacheSize = tileCacheSize;
+    }
+
+    /**
+     * <p>Retrieves the maximum number of decoded tiles that are cached by a
+     * lazily decoded image.</p>
+     */
+    public int getTileCacheSize()
+    {
+        return tileCacheSize;
+    }
+}
+// =============================================================================
+/*
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
@@ -12,12 +12,18 @@ import java.awt.color.ColorSpace;
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBuffer;
 import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.RenderedImage;
 import java.awt.image.WritableRaster;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 
@@ -33,17 +39,33 @@ import javax.imageio.stream.ImageInputStream;
  * 8, 15, 16, 24 and 32 bit true color or color mapped (RLE compressed or 
  * uncompressed) are supported.
  * 8 and 16 bit monochromatic images (RLE compressed or uncompressed) are supported.
- * 1 bit uncompressed monochromatic image is supported.
+ * 1 bit uncompressed monochromatic image is supported (it may be read packed,
+ * see {@link TGAImageReadParam#setPackedMonochrome(boolean)}).
  * </p>
  * 
  * <p>Great care should be employed with {@link ImageReadParam}s.
  * Little to no effort has been made to correctly handle sub-sampling or 
  * specified bands.</p> 
  * 
- * <p>{@link javax.imageio.ImageIO#setUseCache(boolean)} should be set to <code>false</code>
- * when using this reader.  Also, {@link javax.imageio.ImageIO#read(java.io.InputStream)}
- * is the preferred read method if used against a buffered array (for performance
- * reasons).</p>
+ * <p>The header, image id, color map and pixel data are read in a single 
+ * forward pass so the input never needs to seek backward.  In addition to an
+ * {@link ImageInputStream} a plain {@link InputStream} (such as a socket or
+ * HTTP body) may be set as the input directly, in which case it is read 
+ * without any temporary file or in-memory caching of the data.  If the
+ * input is set to seek forward only then the data that has been read is
+ * flushed from <code>ImageInputStream</code>s that cache it.</p>
+ * 
+ * <p>From a seekable input the image may also be read a tile at a time
+ * ({@link #readTile(int, int, int)}) or as a {@link RenderedImage} whose 
+ * tiles are decoded on demand ({@link #readAsRenderedImage(int, ImageReadParam)}).
+ * The TGA is not stored in tiles but the rows of uncompressed data are at
+ * computed offsets and the rows of RLE compressed data are found through an
+ * index of the RLE packets so only the rows of a tile are decoded.  Since
+ * nothing is allocated for the whole image the maximum pixel count of 
+ * {@link TGAImageReadParam} does not apply to tiles.  This is the only way
+ * to read images whose samples do not fit in a single array (2 GB) such as
+ * the largest images that a TGA can describe (65535 x 65535).  Offsets in 
+ * the input are <code>long</code>s so images larger than 4 GB are read.</p>
  * 
  * @author Rob Grzywinski <a href="mailto:rgrzywinski@realityinteractive.com">rgrzywinski@realityinteractive.com</a>
  * @version $Id: TGAImageReader.java,v 1.1 2005/04/12 11:23:53 ornedan Exp $
@@ -52,6 +74,17 @@ import javax.imageio.stream.ImageInputStream;
 // TODO:  incorporate the x and y origins
 public class TGAImageReader extends ImageReader
 {
+    /**
+     * <p>The width and height of the tiles (see {@link #readTile(int, int, int)}).</p>
+     */
+    private static final int TILE_SIZE = 512;
+
+    /**
+     * <p>The largest array that can be allocated (some VMs reserve header
+     * words in an array).</p>
+     */
+    private static final int MAXIMUM_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
     /**
      * <p>The {@link ImageInputStream} from which the TGA
      * is read.  This may be <code>null</code> if {@link ImageReader#setInput(Object)}
@@ -67,6 +100,74 @@ public class TGAImageReader extends ImageReader
      */
     private TGAHeader header;
 
+    /**
+     * <p>The decoder of regions of the image (see {@link #readTile(int, int, int)}).
+     * If <code>null</code> then it has not been created since 
+     * <code>inputStream</code> was last set.  This is created lazily.</p>
+     */
+    private TGATileDecoder tileDecoder;
+
+    // =========================================================================
+    /**
+     * <p>A consumer of the rows of an image as they are decoded (see
+     * {@link TGAImageReader#decodeRows(int, ImageReadParam, RowConsumer)}).</p>
+     */
+    interface RowConsumer
+    {
+        /**
+         * <p>Consumes the next row in the order of the pixel data.</p>
+         *
+         * @param  row the interleaved samples of the row or <code>null</code>
+         *         if the row was skipped (see {@link TGAImageReader#decodeRows(int, boolean, boolean[], ImageReadParam, RowConsumer)}).
+         *         The array is reused for the next row.
+         * @return <code>false</code> if no more rows are wanted (the
+         *         decoding stops)
+         */
+        boolean addRow(byte[] row);
+    }
+
+    /**
+     * <p>The decoding mode and the limits on work of a read.  These are those
+     * of a {@link TGAImageReadParam} or the defaults for any other (or no)
+     * <code>ImageReadParam</code>.</p>
+     */
+    private static final class DecodePolicy
+    {
+        /**
+         * <p>If <code>true</code> then malformed pixel data fails.</p>
+         */
+        final boolean strict;
+
+        /**
+         * <p>The maximum number of pixels that may be allocated.</p>
+         */
+        final long maximumPixelCount;
+
+        /**
+         * <p>The maximum number of <code>byte</code>s that may be read.</p>
+         */
+        final long maximumBytesRead;
+
+        /**
+         * @param  param the <code>ImageReadParam</code> (may be <code>null</code>)
+         */
+        DecodePolicy(final ImageReadParam param)
+        {
+            if(param instanceof TGAImageReadParam)
+            {
+                final TGAImageReadParam tgaParam = (TGAImageReadParam)param;
+                strict = tgaParam.isStrict();
+                maximumPixelCount = tgaParam.getMaximumPixelCount();
+                maximumBytesRead = tgaParam.getMaximumBytesRead();
+            } else /* the defaults are used */
+            {
+                strict = false;
+                maximumPixelCount = TGAImageReadParam.DEFAULT_MAXIMUM_PIXEL_COUNT;
+                maximumBytesRead = TGAImageReadParam.DEFAULT_MAXIMUM_BYTES_READ;
+            }
+        }
+    }
+
     // =========================================================================
     /**
      * @see ImageReader#ImageReader(ImageReaderSpi)
@@ -77,9 +178,10 @@ public class TGAImageReader extends ImageReader
     }
 
     /**
-     * <p>Store the input if it is an {@link ImageInputStream}.
-     * Otherwise {@link IllegalArgumentException} is thrown.  The
-     * stream is set to little-endian byte ordering.</p>  
+     * <p>Store the input if it is an {@link ImageInputStream} or an
+     * {@link InputStream}.  Otherwise {@link IllegalArgumentException} is 
+     * thrown.  An <code>InputStream</code> is read forward only without 
+     * caching.  The stream is set to little-endian byte ordering.</p>  
      * 
      * @see ImageReader#setInput(Object, boolean, boolean)
      */
@@ -92,27 +194,35 @@ public class TGAImageReader extends ImageReader
         // delegate to the parent
         super.setInput(input, seekForwardOnly, ignoreMetadata);
 
-        // if the input is null clear the inputStream and header
+        // the header and tiles of any previous input no longer apply
+        header = null;
+        tileDecoder = null;
+
+        // if the input is null clear the inputStream
         if(input == null)
         {
             inputStream = null;
-            header = null;
+            return;
         } /* else -- the input is non-null */
 
-        // only ImageInputStream are allowed.  If other throw IllegalArgumentException
+        // only ImageInputStream and InputStream are allowed.  If other throw
+        // IllegalArgumentException
         if(input instanceof ImageInputStream)
         {
             // set the inputStream
             inputStream = (ImageInputStream)input;
-
-            // put the ImageInputStream into little-endian ("Intel byte ordering")
-            // byte ordering
-            inputStream.setByteOrder(ByteOrder.LITTLE_ENDIAN);
-
-        } else /* input is not an instance of ImageInputStream */
+        } else if(input instanceof InputStream)
         {
-            throw new IllegalArgumentException("Only ImageInputStreams are accepted.");  // FIXME:  localize
+            // read the InputStream forward only without caching
+            inputStream = new TGAForwardOnlyInputStream((InputStream)input);
+        } else /* input is not an instance of ImageInputStream or InputStream */
+        {
+            throw new IllegalArgumentException("Only ImageInputStreams and InputStreams are accepted.");  // FIXME:  localize
         }
+
+        // put the ImageInputStream into little-endian ("Intel byte ordering")
+        // byte ordering
+        inputStream.setByteOrder(ByteOrder.LITTLE_ENDIAN);
     }
 
     /**
@@ -174,11 +284,55 @@ public class TGAImageReader extends ImageReader
         // read / get the header
         final TGAHeader header = getHeader();
 
-        if (header.getImageType() == TGAConstants.RLE_MONO && header.getBitsPerPixel() == 1) {
-            throw new IllegalArgumentException("Black and white (1 bit) image with RLE compression is unsupported.");
-        }
-        
         // get the ImageTypeSpecifier for the image type
+        final ImageTypeSpecifier imageTypeSpecifier = getImageTypeSpecifier(header);
+
+        // create a list and add the ImageTypeSpecifier to it.  An image with
+        // alpha may also be read premultiplied.
+        final List<ImageTypeSpecifier> imageSpecifiers = new ArrayList<ImageTypeSpecifier>();
+        imageSpecifiers.add(imageTypeSpecifier);
+        if(imageTypeSpecifier.getColorModel().hasAlpha())
+            imageSpecifiers.add(getImageTypeSpecifier(header, false/*keep alpha*/, true/*premultiplied*/));
+        /* else -- there is no alpha to premultiply */
+
+        return imageSpecifiers.iterator();
+    }
+
+    /**
+     * <p>Retrieves the {@link ImageTypeSpecifier} of the image described by
+     * the header.  The pixels are interleaved BGR(A) or grey (alpha) 
+     * <code>byte</code>s.</p>
+     * 
+     * @param  header the <code>TGAHeader</code> of the image
+     * @return the <code>ImageTypeSpecifier</code> of the image
+     * @throws IllegalArgumentException if the image type is not known or is
+     *         not supported
+     */
+    static ImageTypeSpecifier getImageTypeSpecifier(final TGAHeader header)
+    {
+        return getImageTypeSpecifier(header, false/*keep alpha*/, false/*not premultiplied*/);
+    }
+
+    /**
+     * <p>Determines the {@link ImageTypeSpecifier} of the image described by
+     * the header optionally without its alpha (see {@link TGAImageReadParam#setDropOpaqueAlpha(boolean)})
+     * or with premultiplied alpha (see {@link TGAImageReadParam#setPremultipliedAlpha(boolean)}).</p>
+     *
+     * @param  header the <code>TGAHeader</code> of the image
+     * @param  dropAlpha if <code>true</code> then the image has no alpha even
+     *         if the pixel data has alpha
+     * @param  premultiplied if <code>true</code> then the samples of an image
+     *         with alpha are premultiplied by the alpha
+     * @return the <code>ImageTypeSpecifier</code> of the image
+     * @throws IllegalArgumentException if the image type is not known or is
+     *         not supported
+     */
+    static ImageTypeSpecifier getImageTypeSpecifier(final TGAHeader header,
+                                                    final boolean dropAlpha,
+                                                    final boolean premultiplied)
+    {
+        checkImageType(header);
+        
         // FIXME:  finish
         final ImageTypeSpecifier imageTypeSpecifier;
         switch(header.getImageType())
@@ -190,7 +344,7 @@ public class TGAImageReader extends ImageReader
             {
                 // determine if there is an alpha mask based on the number of
                 // samples per pixel
-                final boolean hasAlpha = header.getSamplesPerPixel() == 4;
+                final boolean hasAlpha = (header.getSamplesPerPixel() == 4) && !dropAlpha;
                 
                 // define order of R, G, B, A bands
                 // BGR(A) is the only order can be read directly by OpenCV library, so use it
@@ -208,7 +362,7 @@ public class TGAImageReader extends ImageReader
                         bandOffset,
                         DataBuffer.TYPE_BYTE,
                         hasAlpha,
-                        false /*not pre-multiplied by an alpha*/);
+                        hasAlpha && premultiplied);
             
                 break;
             }
@@ -217,9 +371,9 @@ public class TGAImageReader extends ImageReader
             case TGAConstants.RLE_MONO:
             {
                 final int bitsPerPixel = header.getBitsPerPixel();
-                final boolean hasAlpha = bitsPerPixel == 16;
+                final boolean hasAlpha = (bitsPerPixel == 16) && !dropAlpha;
                 if(hasAlpha) {
-                    imageTypeSpecifier = ImageTypeSpecifier.createGrayscale(8, DataBuffer.TYPE_BYTE, false, false /*not pre-multiplied by an alpha*/);
+                    imageTypeSpecifier = ImageTypeSpecifier.createGrayscale(8, DataBuffer.TYPE_BYTE, false, premultiplied);
                 } else {                    
                     imageTypeSpecifier = ImageTypeSpecifier.createGrayscale(8, DataBuffer.TYPE_BYTE, false);
                 }
@@ -230,11 +384,36 @@ public class TGAImageReader extends ImageReader
                 throw new IllegalArgumentException("The image type is not known."); // FIXME:  localize
         }
 
-        // create a list and add the ImageTypeSpecifier to it
-        final List<ImageTypeSpecifier> imageSpecifiers = new ArrayList<ImageTypeSpecifier>();
-        imageSpecifiers.add(imageTypeSpecifier);
+        return imageTypeSpecifier;
+    }
 
-        return imageSpecifiers.iterator();
+    /**
+     * <p>Ensures that the image type of the header is known and supported.</p>
+     *
+     * @param  header the <code>TGAHeader</code> of the image
+     * @throws IllegalArgumentException if the image type is not known or is
+     *         not supported
+     */
+    private static void checkImageType(final TGAHeader header)
+    {
+        if (header.getImageType() == TGAConstants.RLE_MONO && header.getBitsPerPixel() == 1) {
+            throw new IllegalArgumentException("Black and white (1 bit) image with RLE compression is unsupported.");
+        }
+
+        switch(header.getImageType())
+        {
+            case TGAConstants.COLOR_MAP:
+            case TGAConstants.RLE_COLOR_MAP:
+            case TGAConstants.TRUE_COLOR:
+            case TGAConstants.RLE_TRUE_COLOR:
+            case TGAConstants.MONO:
+            case TGAConstants.RLE_MONO:
+                break;
+
+            case TGAConstants.NO_IMAGE:
+            default:
+                throw new IllegalArgumentException("The image type is not known."); // FIXME:  localize
+        }
     }
 
     /**
@@ -305,6 +484,19 @@ public class TGAImageReader extends ImageReader
         return getHeader().getWidth();
     }
 
+    /**
+     * <p>Returns a {@link TGAImageReadParam} so that the decoding can be 
+     * tuned.</p>
+     * 
+     * @see ImageReader#getDefaultReadParam()
+     */
+    @Override
+    public ImageReadParam getDefaultReadParam()
+    {
+        // see javadoc
+        return new TGAImageReadParam();
+    }
+
     /**
      * @see ImageReader#read(int, ImageReadParam)
      */
@@ -312,6 +504,9 @@ public class TGAImageReader extends ImageReader
     public BufferedImage read(final int imageIndex, final ImageReadParam param)
         throws IOException
     {
+        // a new read is not aborted by an earlier request
+        clearAbortRequest();
+
         // ensure that the image is of a supported type
         // NOTE:  this will implicitly ensure that the imageIndex is valid
         final Iterator<ImageTypeSpecifier> imageTypes = getImageTypes(imageIndex);
@@ -327,27 +522,85 @@ public class TGAImageReader extends ImageReader
         // defaults (this will throw if not acceptable)
         checkImageReadParam(param, header);
 
+        // get the decoding mode and limits
+        final DecodePolicy policy = new DecodePolicy(param);
+
         // get the height and width from the header for convenience
         final int width = header.getWidth();
         final int height = header.getHeight();
 
+        // validate the size of the image against the limits before anything
+        // is allocated (this will throw if not acceptable)
+        checkImageSize(header, policy, policy.maximumPixelCount);
+
+        // each pixel may be read into a packed int
+        if((param instanceof TGAImageReadParam) && ((TGAImageReadParam)param).isIntPacked())
+            return readIntPacked(header, (TGAImageReadParam)param);
+        /* else -- a byte per sample */
+
+        // a forward only input can only be read once
+        checkPixelDataAvailable(header);
+
         // read the color map data.  If the image does not contain a color map
         // then null will be returned.
-        final int[] colorMap = readColorMap(header);
+        final int[] colorMap = readColorMap(header, policy.strict);
 
-        // seek to the pixel data offset
-        // TODO:  read the color map
+        // move to the pixel data offset.  This is never backward unless the
+        // image is read again.
         inputStream.seek(header.getPixelDataOffset());
 
+        // if the input only seeks forward then nothing before the pixel data
+        // is needed again
+        if(isSeekForwardOnly())
+            inputStream.flushBefore(header.getPixelDataOffset());
+        /* else -- the input may seek backward */
+
+        // 1 bit monochrome may be read packed (if requested)
+        final boolean packedMonochrome = header.isMono() && 
+                                         (header.getBitsPerPixel() == 1) &&
+                                         (param instanceof TGAImageReadParam) &&
+                                         ((TGAImageReadParam)param).isPackedMonochrome();
+        // an entirely opaque alpha may be dropped (if requested).  The alpha
+        // of a seekable input is checked before anything is allocated while
+        // that of a forward only input is checked once it has been read.
+        final boolean dropOpaqueAlpha = (param instanceof TGAImageReadParam) &&
+                                        ((TGAImageReadParam)param).isDropOpaqueAlpha() &&
+                                        (param.getDestination() == null) &&
+                                        getImageTypeSpecifier(header).getColorModel().hasAlpha();
+        final boolean isSeekable = !isSeekForwardOnly() && !(inputStream instanceof TGAForwardOnlyInputStream);
+        final boolean dropAlpha = dropOpaqueAlpha && isSeekable && isAlphaOpaque(param);
+
+        final Iterator<ImageTypeSpecifier> destinationTypes;
+        if(packedMonochrome)
+            destinationTypes = Collections.singletonList(ImageTypeSpecifier.createFromBufferedImageType(BufferedImage.TYPE_BYTE_BINARY)).iterator();
+        else if(dropAlpha)
+            destinationTypes = Collections.singletonList(getImageTypeSpecifier(header, true/*drop alpha*/, false/*not premultiplied*/)).iterator();
+        else if((param instanceof TGAImageReadParam) && ((TGAImageReadParam)param).isPremultipliedAlpha())
+            destinationTypes = Collections.singletonList(getImageTypeSpecifier(header, false/*keep alpha*/, true/*premultiplied*/)).iterator();
+        else /* the image type is used */
+            destinationTypes = imageTypes;
+
+        // the destination is a single array so it must be able to hold the
+        // image.  Larger images (up to the 65535 x 65535 that the header
+        // allows) can only be read as tiles.
+        final long destinationSize;
+        if(packedMonochrome)
+            destinationSize = (long)((width + 7) / 8) * height;
+        else /* a byte per sample */
+            destinationSize = (long)width * height * getImageTypeSpecifier(header, dropAlpha, false).getSampleModel(1, 1).getNumBands();
+        if(destinationSize > MAXIMUM_ARRAY_SIZE)
+            throw new IOException("The image is too large to be read into a single raster (" + width + " x " + height + " is " + destinationSize + " bytes).  Use readTile() or readAsRenderedImage()."); // FIXME:  localize
+        /* else -- the image fits in an array */
+
         // get the destination image and WritableRaster for the image type and 
         // size
-        final BufferedImage image = getDestination(param, imageTypes, 
+        final BufferedImage image = getDestination(param, destinationTypes, 
                                                    width, height);
         final WritableRaster imageRaster = image.getRaster();         
 
         // get and validate the number of image bands
         final int numberOfImageBands = image.getSampleModel().getNumBands();
-        checkReadParamBandSettings(param, header.getSamplesPerPixel(), 
+        checkReadParamBandSettings(param, dropAlpha ? numberOfImageBands : header.getSamplesPerPixel(), 
                                           numberOfImageBands);
 
         // get the destination bands
@@ -372,379 +625,1415 @@ public class TGAImageReader extends ImageReader
                                                                       0, 0,
                                                                       destinationBands);
 
-        // divide to ceiling
         if (!header.isMono() && header.getBitsPerPixel() == 16 && hasAlpha) {
             throw new UnsupportedOperationException("This decoder does not support 1 bit alpha for 16 bit color images.");
         }
-        final int bitsPerPixel = header.getBitsPerPixel();
-        final int bytesPerPixel = (header.getBitsPerPixel() + 7) / 8;
 
         // set up to read the data
         final byte[] resultData = ((DataBufferByte)raster.getDataBuffer()).getData(); // CHECK:  is this valid / acceptible?
         int index = 0; // the index in the resultData array
-        int runLength = 0; // the number of pixels in a run length
-        boolean readPixel = true; // if true then a raw pixel is read.  Used by the RLE.
-        boolean isRaw = false; // if true then the next pixels should be read.  Used by the RLE.
-
-        int eightBits = 0;
-        byte grey = 0;
-        byte red = 0;
-        byte green = 0;
-        byte blue = 0;
-        byte alpha = (byte) 0xFF; // max value by default
-        
-        // How much of the image we want to buffer at a time. Don't go below 8K buffer.
-        // Buffer size should be a multiple of 3 and 4 (for buffer refills with remaining pixels).
-        final int minBufferSize = 8192 * 3;
-        final ByteBuffer inputBuffer = ByteBuffer.allocate(minBufferSize);
-        inputBuffer.order(ByteOrder.LITTLE_ENDIAN);
-        // Code that reads from buffer will check remaining limit and load more data if empty.
-        // Cast is workaround for https://jira.mongodb.org/browse/JAVA-2559
-        ((Buffer)inputBuffer).limit(0);
-
-        final byte[] packedPixelbuffer = new byte[4];
-
-        // TODO:  break out the case of 32 bit non-RLE as it can be read 
-        //        directly and 24 bit non-RLE as it can be read simply.  If
-        //        subsampling and ROI's are implemented then selection must be
-        //        done per pixel for RLE otherwise it's possible to miss the
-        //        repetition count field.
-
-        // TODO:  account for TGAHeader.firstColorMapEntryIndex
-
-        // loop over the rows
-        // TODO:  this should be destinationROI.height (right?)
-        for(int y=0; y<height; y++)
+
+        // How much of the image we want to buffer at a time (see 
+        // getInputBufferSize()).  No more than the maximum number of bytes 
+        // (less what has been read) may be read.
+        final long pixelBytesAllowed = policy.maximumBytesRead - header.getPixelDataOffset();
+        final int bufferSize = getInputBufferSize(param, header, pixelBytesAllowed);
+        final boolean readAhead = (param instanceof TGAImageReadParam) &&
+                                  ((TGAImageReadParam)param).isReadAhead();
+        final TGAInputBuffer input;
+        if(readAhead)
+            input = new TGAReadAheadInputBuffer(inputStream, bufferSize, pixelBytesAllowed,
+                                                isSeekForwardOnly());
+        else /* the pixel data is read as it is needed */
+            input = new TGAInputBuffer(inputStream, bufferSize, pixelBytesAllowed,
+                                       isSeekForwardOnly());
+        final ByteBuffer inputBuffer = input.getBuffer();
+
+        // packed monochrome rows are copied a byte (8 pixels) at a time
+        final int rowLength = packedMonochrome ? ((width + 7) / 8) : width;
+        final int destinationBytesPerPixel = packedMonochrome ? 1 : numberOfComponents;
+        final int rowSize = rowLength * destinationBytesPerPixel;
+
+        // NOTE:  the decoder keeps the RLE packet state between rows as 
+        //        packets may span rows.  If subsampling and ROI's are
+        //        implemented then the rows that are not selected must still
+        //        be decoded otherwise the repetition count fields are missed.
+        // the samples are premultiplied as they are written if the destination
+        // is premultiplied (whether requested or set as the destination)
+        final boolean premultiplied = hasAlpha && image.getColorModel().isAlphaPremultiplied();
+        final TGAPixelDecoder decoder = new TGAPixelDecoder(header, colorMap, destinationBytesPerPixel, 
+                                                            packedMonochrome, premultiplied, policy.strict);
+
+        try
         {
-            // if the image is flipped top-to-bottom then set the index in 
-            // resultData appropriately
-            if (header.isBottomToTop())
-                // index = y;
-                index = (height - y) - 1;
-            else /* is top-to-bottom */
-                index = y;
-                // index = (height - y) - 1;
-
-            // account for the width
-            // TODO:  this doesn't take into account the destination size or bands
-            index *= width * numberOfComponents;
-            
-            // loop over the columns
-            // TODO:  this should be destinationROI.width (right?)
-            // NOTE:  *if* destinations are used the RLE will break as this will
-            //        cause the repetition count field to be missed.
-            for(int x=0; x<width; x++)
+            // loop over the rows
+            // TODO:  this should be destinationROI.height (right?)
+            for(int y=0; y<height; y++)
             {
-                // if the image is compressed (run length encoded) then determine
-                // if a pixel should be read or if the current one should be
-                // used (using the current one is part of the RLE'ing).
-                if(header.isCompressed())
+                // the rows that are not yet decoded are left as they are if
+                // the read is aborted
+                if(abortRequested())
+                    return image;
+                /* else -- not aborted */
+
+                // if the image is flipped top-to-bottom then set the index in 
+                // resultData appropriately
+                index = getDestinationRow(header, y) * rowSize;
+
+                // decode the row from as many buffer fills as are needed
+                int remaining = rowLength;
+                while(remaining > 0)
                 {
-                    // if there is a non-zero run length then there are still
-                    // compressed pixels
-                    if(runLength > 0)
-                    {
-                        // decrement the run length and flag that a pixel should
-                        // not be read
-                        // NOTE:  a pixel is only read from the input if the
-                        //        packet was raw.  If it was a run length packet
-                        //        then the previous (current) pixel is used.
-                        runLength--;
-                        readPixel = isRaw;
-                    } else /* non-positive run length */
-                    {
-                        // make sure we have enough input in buffer, return if end of file is reached
-                        if (checkFillBuffer(inputStream, inputBuffer, bytesPerPixel + 1))
-                            return image;
-                        
-                        // read the repetition count field 
-                        runLength = inputBuffer.get() & 0xFF; // unsigned
-
-                        // determine which packet type:  raw or runlength
-                        isRaw = ( (runLength & 0x80) == 0); // bit 7 == 0 -> raw; bit 7 == 1 -> runlength
-
-                        // if a run length packet then set bit 7 to 0 to get length
-                        if(!isRaw)
-                            runLength -= 0x80;
-                        /* else -- is raw so there's no need remove bit 7 */
-
-                        // the next field is always read (it's the pixel data)
-                        readPixel = true;
-                    }
-                }
+                    final boolean endOfFile = input.fill(decoder.getMinimumInput());
 
-                // read the next pixel
-                // NOTE:  only don't read when in a run length packet
-                if(readPixel)
-                {
-                    checkFillBuffer(inputStream, inputBuffer, bytesPerPixel);
-                    
-                    if (header.isMono()) {
-                        // read based on the number of bits/bytes per pixel
-                        switch(bitsPerPixel)
+                    final int decoded = decoder.decode(inputBuffer, resultData, index, remaining);
+                    if((decoded == 0) && endOfFile)
+                    {
+                        // the pixel data is truncated.  Fail if strict otherwise
+                        // zero-fill the remainder of the image.
+                        if(policy.strict)
+                            throw new IOException("The pixel data is truncated (" + y + " of " + height + " rows were read)."); // FIXME:  localize
+                        /* else -- lenient */
+
+                        Arrays.fill(resultData, index, index + (remaining * destinationBytesPerPixel), (byte)0);
+                        for(int remainingY=y+1; remainingY<height; remainingY++)
                         {
-                            // black and white (1)
-                            case 1:
-                            {                                
-                                final int data = inputBuffer.get() & 0xFF; // unsigned
-                                eightBits = data;
-                                break;
-                            }
-                            // grey scale (8)                            
-                            case 8:
-                            {
-                                final int data = inputBuffer.get() & 0xFF; // unsigned
-                                grey = (byte) data;
-                                break;
-                            }
-                            // grey scale + alpha (8-8)
-                            case 16:
-                            {
-                                inputBuffer.get(packedPixelbuffer, 0, 2);
-                                grey = packedPixelbuffer[0];
-                                alpha = packedPixelbuffer[1];
-                                break;
-                            }
+                            final int rowIndex = getDestinationRow(header, remainingY) * rowSize;
+                            Arrays.fill(resultData, rowIndex, rowIndex + rowSize, (byte)0);
                         }
-                    } else {
-
-                        // NOTE:  the alpha must have a default value since it is
-                        //        not guaranteed to be present for each pixel read
+                        return image;
+                    } /* else -- progress was made or more data can be read */
 
-                        // read based on the number of bits/bytes per pixel
-                        switch(bytesPerPixel)
-                        {
-                            // grey scale (R = G = B)
-                            case 1:
-                            default:
-                            {
-                                // read the data -- it is either the color map index
-                                // or the color for each pixel
-                                final int data = inputBuffer.get() & 0xFF; // unsigned
-
-                                // if the image is a color mapped image then the
-                                // resulting pixel is pulled from the color map, 
-                                // otherwise each pixel gets the data 
-                                if(header.hasColorMap())
-                                {
-                                    // the pixel is pulled from the color map
-                                    // CHECK:  do sanity bounds check?
-                                    final int packedPixel = colorMap[data];
-                                    red = (byte) packedPixel;
-                                    green = (byte) (packedPixel >>> 8);
-                                    blue = (byte) (packedPixel >>> 16);
-                                    alpha = (byte) (packedPixel >>> 24);
-                                } else /* no color map */
-                                {
-                                    // each color component is set to the same color
-                                    red = green = blue = (byte) data;
-                                }
-
-                                break;
-                            }
-
-                            // RGB (5-5-5)
-                            case 2:
-                            {
-                                // read the two bytes 
-                                final int data = inputBuffer.getShort() & 0xFFFF; // unsigned
-
-                                // get each color component -- each is 5 bits
-                                red   = (byte) ((data >>> 10) & 0x1F);
-                                green = (byte) ((data >>>  5) & 0x1F);
-                                blue  = (byte) (data          & 0x1F);
-
-                                // shift bits up to fill higher 5 bits and approximate low bits
-                                // so that 5 bit max value (0xF8) maps to 8 bit max value (0xFF)
-                                red   = (byte) ((red   << 3) + (red   >>> 2));
-                                green = (byte) ((green << 3) + (green >>> 2));
-                                blue  = (byte) ((blue  << 3) + (blue  >>> 2));
-                                break;
-                            }
-
-                            // true color RGB (8-8-8)
-                            case 3:
-                            {
-                                inputBuffer.get(packedPixelbuffer, 0, 3);
-
-                                red = packedPixelbuffer[2];
-                                green = packedPixelbuffer[1];
-                                blue = packedPixelbuffer[0];
-                                break;
-                            }
-
-                            // true color RGBA (8-8-8-8)
-                            case 4:
-                            {
-                                inputBuffer.get(packedPixelbuffer, 0, 4);
-
-                                red = packedPixelbuffer[2];
-                                green = packedPixelbuffer[1];
-                                blue = packedPixelbuffer[0];
-                                alpha = packedPixelbuffer[3];
-                                break;
-                            }
-                        }
-                    }
+                    index += decoded * destinationBytesPerPixel;
+                    remaining -= decoded;
                 }
-                
-                // put the pixel in the data array                
-                if (header.isMono()) {
-                    if (bitsPerPixel == 1) {                        
-                        for (int i = 7; i >= 0; i--) {
-                            int bit = (eightBits >> i) & 1;
-                            resultData[index] = bit == 1 ? (byte)0xff : 0; 
-                            index++;
-                            x++;                            
-                            if (x == width) { //lines are byte aligned
-                                break;
-                            }                           
-                        }
-                        x--; // there is x++ in main loop, so bypass it
-                    } else {
-                        resultData[index] = grey; 
-                        index++;                        
-                    }                    
-                } else {                                               
-                    // BGR(A) (lower to higher bit)                
-                    resultData[index+0] = blue;
-                    resultData[index+1] = green;
-                    resultData[index+2] = red;
-                    index += 3;                                                                  
-                }                
-                if (hasAlpha) {
-                    resultData[index] = alpha;
-                    index++;
-                } 
-                
+
                 // TODO:  the right-to-left switch
             }
+        } finally
+        {
+            // nothing is read once the decoding has ended
+            input.close();
         }
 
+        // the last RLE packet should end with the image
+        if(policy.strict && decoder.hasPendingPacket())
+            throw new IOException("An RLE packet runs past the end of the image."); // FIXME:  localize
+        /* else -- the packets ended with the image or the excess is ignored */
+
+        // the alpha of a forward only input is checked now that it is read
+        if(dropOpaqueAlpha && !isSeekable)
+            return dropOpaqueAlpha(image, header);
+        /* else -- the alpha was dropped already or is kept */
+
         return image;
     }
-        
+
     /**
-     * @param input        image data to be put into the buffer
-     * @param buffer       buffer whose entire backing array is to be filled with image data
-     * @param minRemaining the refill only occurs if there are less than this remaining bytes
-     *                     in the buffer.
-     * @return             true if input signaled EOF and therefore no bytes could be read
-     * @throws IOException if there is an I/O error while reading the input
+     * <p>Reads the image with each pixel packed into a single <code>int</code>
+     * (see {@link TGAImageReadParam#setIntPacked(boolean)}).  The rows are
+     * decoded to interleaved samples which are then packed a whole pixel at
+     * a time by {@link TGARowKernels#packRow(byte[], int, int[], int, int)}.</p>
+     *
+     * @param  header the <code>TGAHeader</code> of the image
+     * @param  param the <code>TGAImageReadParam</code>
+     * @return the image
+     * @throws IllegalArgumentException if the destination of the 
+     *         <code>ImageReadParam</code> is not of the packed type and size 
+     *         of the image
+     * @throws IOException if there is an I/O error while reading or if
+     *         decoding is strict and the pixel data is malformed
      */
-    private boolean checkFillBuffer(ImageInputStream input, ByteBuffer buffer, int minRemaining)
+    private BufferedImage readIntPacked(final TGAHeader header, 
+                                        final TGAImageReadParam param)
         throws IOException
     {
-        final int remaining = buffer.remaining();
-        if (remaining < minRemaining)
+        checkImageType(header);
+        final int width = header.getWidth();
+        final int height = header.getHeight();
+        final int numberOfBands = header.getSamplesPerPixel();
+
+        final long pixelCount = (long)width * height;
+        if(pixelCount > MAXIMUM_ARRAY_SIZE)
+            throw new IOException("The image is too large to be read into a single raster (" + width + " x " + height + " is " + pixelCount + " pixels).  Use readTile() or readAsRenderedImage()."); // FIXME:  localize
+        /* else -- the image fits in an array */
+
+        final boolean hasAlpha = (numberOfBands == 2) || (numberOfBands == 4);
+        final boolean premultiplied = hasAlpha && param.isPremultipliedAlpha();
+        final int type;
+        if(premultiplied)
+            type = BufferedImage.TYPE_INT_ARGB_PRE;
+        else if(hasAlpha)
+            type = BufferedImage.TYPE_INT_ARGB;
+        else /* opaque */
+            type = BufferedImage.TYPE_INT_RGB;
+        final ImageTypeSpecifier imageType = ImageTypeSpecifier.createFromBufferedImageType(type);
+        final BufferedImage image = getDestination(param, Collections.singletonList(imageType).iterator(),
+                                                   width, height);
+        if(!isCompatibleDestination(image, imageType, width, height))
+            throw new IllegalArgumentException("The destination must be a " + width + " x " + height + " image of type " + type + "."); // FIXME:  localize
+        /* else -- the destination is packed */
+
+        final int[] pixels = ((DataBufferInt)image.getRaster().getDataBuffer()).getData();
+        decodeRows(numberOfBands, premultiplied, null/*all rows*/, param, new RowConsumer()
         {
-            final int bytesLoaded;
-            if (remaining != 0) {
-                // copy remaining bytes from end to start of buffer, then fill new data after remaining
-                buffer.get(buffer.array(), 0, remaining);
-                bytesLoaded = input.read(buffer.array(), remaining, buffer.capacity()-remaining);
-            } else {
-                // just fill entire buffer with new data
-                bytesLoaded = input.read(buffer.array());
+            private int y;
+
+            public boolean addRow(final byte[] row)
+            {
+                TGARowKernels.packRow(row, numberOfBands, pixels, getDestinationRow(header, y++) * width, width);
+                return true;
             }
-            if (bytesLoaded == -1)
+        });
+        return image;
+    }
+
+    /**
+     * <p>Determines if the alpha of every pixel is opaque.  The pixel data is
+     * decoded a row at a time (nothing is allocated for the image) until a
+     * pixel that is not opaque is found.  The input must be seekable and is
+     * left at the start of the pixel data.</p>
+     *
+     * @param  param the <code>ImageReadParam</code>
+     * @return <code>true</code> if every alpha is opaque
+     * @throws IOException if there is an I/O error while reading or if
+     *         decoding is strict and the pixel data is malformed
+     */
+    private boolean isAlphaOpaque(final ImageReadParam param)
+        throws IOException
+    {
+        final int numberOfBands = getImageTypeSpecifier(header).getSampleModel(1, 1).getNumBands();
+        final boolean[] isOpaque = new boolean[] { true };
+        decodeRows(numberOfBands, param, new RowConsumer()
+        {
+            public boolean addRow(final byte[] row)
+            {
+                // the alpha is the last sample of each pixel
+                for(int i=numberOfBands-1; i<row.length; i+=numberOfBands)
+                {
+                    if(row[i] != (byte)0xFF)
+                    {
+                        isOpaque[0] = false;
+                        return false;
+                    } /* else -- opaque */
+                }
                 return true;
-            // cast is workaround for https://jira.mongodb.org/browse/JAVA-2559
-            ((Buffer)buffer).position(0);
-            ((Buffer)buffer).limit(remaining+bytesLoaded);
+            }
+        });
+        inputStream.seek(header.getPixelDataOffset());
+        return isOpaque[0];
+    }
+
+    /**
+     * <p>Copies the image without its alpha if its alpha is entirely
+     * opaque.</p>
+     *
+     * @param  image the image with alpha
+     * @param  header the <code>TGAHeader</code> of the image
+     * @return an image without alpha or <code>image</code> if its alpha is
+     *         not entirely opaque
+     */
+    private static BufferedImage dropOpaqueAlpha(final BufferedImage image,
+                                                 final TGAHeader header)
+    {
+        final byte[] samples = ((DataBufferByte)image.getRaster().getDataBuffer()).getData();
+        final int numberOfBands = image.getSampleModel().getNumBands();
+        for(int i=numberOfBands-1; i<samples.length; i+=numberOfBands)
+        {
+            if(samples[i] != (byte)0xFF)
+                return image;
+            /* else -- opaque */
         }
-        return false;
+
+        final BufferedImage opaqueImage = getImageTypeSpecifier(header, true/*drop alpha*/, false/*not premultiplied*/).createBufferedImage(image.getWidth(), image.getHeight());
+        final byte[] opaqueSamples = ((DataBufferByte)opaqueImage.getRaster().getDataBuffer()).getData();
+        final int opaqueBands = numberOfBands - 1;
+        for(int i=0, o=0; i<samples.length; i+=numberOfBands, o+=opaqueBands)
+            System.arraycopy(samples, i, opaqueSamples, o, opaqueBands);
+        return opaqueImage;
     }
-    
+
     /**
-     * <p>Reads and returns an array of color mapped values.  If the image does
-     * not contain a color map <code>null</code> will be returned</p>
+     * <p>The image may be read as (virtual) tiles of up to 512 x 512 pixels.
+     * It is only reported as tiled if it is larger than a single tile since
+     * otherwise there is no benefit to reading it by tile.</p>
      * 
-     * @param  header the <code>TGAHeader</code> for the image
-     * @return the array of <code>int</code> color map values or <code>null</code>
-     *         if the image does not contain a color map
-     * @throws IOException if there is an I/O error while reading the color map
+     * @see ImageReader#isImageTiled(int)
      */
-    private int[] readColorMap(final TGAHeader header)
+    @Override
+    public boolean isImageTiled(final int imageIndex)
         throws IOException
     {
-        // determine if the image contains a color map.  If not, return null
-        if(!header.hasColorMap())
-            return null;
-        /* else -- there is a color map */
+        // validate the imageIndex (this will throw if invalid)
+        checkImageIndex(imageIndex);
 
-        // seek to the start of the color map in the input stream
-        inputStream.seek(header.getColorMapDataOffset());
+        // see javadoc
+        final TGAHeader header = getHeader();
+        return (header.getWidth() > TILE_SIZE) || (header.getHeight() > TILE_SIZE);
+    }
 
-        // get the number of colros in the color map and the number of bits
-        // per color map entry
-        final int numberOfColors = header.getColorMapLength();
-        final int bitsPerEntry = header.getBitsPerColorMapEntry();
+    /**
+     * @see ImageReader#getTileWidth(int)
+     */
+    @Override
+    public int getTileWidth(final int imageIndex)
+        throws IOException
+    {
+        // validate the imageIndex (this will throw if invalid)
+        checkImageIndex(imageIndex);
 
-        // create the array that will contain the color map data
-        // CHECK:  why is tge explicit +1 needed here ?!? 
-        final int[] colorMap = new int[numberOfColors + 1];
+        return Math.max(1, Math.min(TILE_SIZE, getHeader().getWidth()));
+    }
 
-        final byte[] buffer = new byte[4];
+    /**
+     * @see ImageReader#getTileHeight(int)
+     */
+    @Override
+    public int getTileHeight(final int imageIndex)
+        throws IOException
+    {
+        // validate the imageIndex (this will throw if invalid)
+        checkImageIndex(imageIndex);
+
+        return Math.max(1, Math.min(TILE_SIZE, getHeader().getHeight()));
+    }
+
+    /**
+     * <p>Decodes only the rows and columns of the specified tile.  The tiles
+     * on the right and bottom edges are smaller if the image size is not a
+     * multiple of the tile size.  The input must be seekable.</p>
+     *
+     * <p>Since there is no <code>ImageReadParam</code> the tile is always 
+     * decoded leniently (see {@link TGAImageReadParam#setStrict(boolean)}):
+     * missing pixels and out of range color map indices are zero-filled.  
+     * Use {@link #readAsRenderedImage(int, ImageReadParam)} to read tiles
+     * strictly.</p>
+     * 
+     * @see ImageReader#readTile(int, int, int)
+     */
+    @Override
+    public BufferedImage readTile(final int imageIndex, final int tileX,
+                                  final int tileY)
+        throws IOException
+    {
+        final TGATileDecoder tileDecoder = getTileDecoder(imageIndex);
+        final int tileWidth = getTileWidth(imageIndex);
+        final int tileHeight = getTileHeight(imageIndex);
+        final int width = header.getWidth();
+        final int height = header.getHeight();
+        if( (tileX < 0) || ((long)tileX * tileWidth >= width) || 
+            (tileY < 0) || ((long)tileY * tileHeight >= height) )
+        {
+            throw new IllegalArgumentException("The tile indices are out of bounds (" + tileX + ", " + tileY + ")."); // FIXME:  localize
+        } /* else -- the tile is in the image */
+
+        final Rectangle region = new Rectangle(tileX * tileWidth, tileY * tileHeight,
+                                               Math.min(tileWidth, width - (tileX * tileWidth)),
+                                               Math.min(tileHeight, height - (tileY * tileHeight)));
+        final BufferedImage image = getImageTypeSpecifier(header).createBufferedImage(region.width, region.height);
+        final int numberOfBands = image.getSampleModel().getNumBands();
+        tileDecoder.decode(region, ((DataBufferByte)image.getRaster().getDataBuffer()).getData(), 0,
+                           region.width * numberOfBands, false/*lenient*/);
+        return image;
+    }
+
+    /**
+     * <p>Returns a {@link RenderedImage} whose tiles are decoded when they
+     * are requested.  The most recently used tiles are cached (see 
+     * {@link TGAImageReadParam#setTileCacheSize(int)}).  The input must be
+     * seekable and must remain open while the image is used.</p>
+     * 
+     * @see ImageReader#readAsRenderedImage(int, ImageReadParam)
+     */
+    @Override
+    public RenderedImage readAsRenderedImage(final int imageIndex,
+                                             final ImageReadParam param)
+        throws IOException
+    {
+        final TGATileDecoder tileDecoder = getTileDecoder(imageIndex);
+
+        // ensure that the ImageReadParam hasn't been set to other than the
+        // defaults (this will throw if not acceptable)
+        checkImageReadParam(param, header);
+
+        final DecodePolicy policy = new DecodePolicy(param);
+        final int tileCacheSize;
+        if(param instanceof TGAImageReadParam)
+            tileCacheSize = ((TGAImageReadParam)param).getTileCacheSize();
+        else /* the default is used */
+            tileCacheSize = TGAImageReadParam.DEFAULT_TILE_CACHE_SIZE;
+
+        return new TGARenderedImage(tileDecoder, getImageTypeSpecifier(header),
+                                    getTileWidth(imageIndex), getTileHeight(imageIndex),
+                                    tileCacheSize, policy.strict);
+    }
+
+    /**
+     * <p>Reads each of the specified regions of the image into its own
+     * image in a single pass over the pixel data.  Each row of the pixel data
+     * is decoded once and copied into every region that contains it so a
+     * sprite atlas is decoded once no matter how many sprites are extracted
+     * (rather than once per region with a source region).  The rows after
+     * the last row of any region are not read and the rows that are in no
+     * region are skipped without being converted:  the RLE packets of 
+     * compressed rows are followed and uncompressed rows are sought past.
+     * The input may seek forward only.</p>
+     *
+     * <p>The strict flag and the limits of a {@link TGAImageReadParam} are
+     * honored.  The maximum pixel count applies to the total area of the
+     * regions since the image itself is not allocated.  Any other settings
+     * of the <code>ImageReadParam</code> are ignored.</p>
+     *
+     * @param  imageIndex the index of the image (must be zero)
+     * @param  regions the regions to read.  Each must be non-empty and
+     *         within the image.  Regions may overlap.
+     * @param  param the <code>ImageReadParam</code> (may be <code>null</code>)
+     * @return the images of the regions in the order of the regions
+     * @throws IllegalArgumentException if a region is empty or not within
+     *         the image
+     * @throws IOException if there is an I/O error while reading or if
+     *         decoding is strict and the pixel data is malformed
+     */
+    public List<BufferedImage> readRegions(final int imageIndex,
+                                           final List<Rectangle> regions,
+                                           final ImageReadParam param)
+        throws IOException
+    {
+        // a new read is not aborted by an earlier request
+        clearAbortRequest();
+
+        // ensure that the image is of a supported type
+        // NOTE:  this will implicitly ensure that the imageIndex is valid
+        final ImageTypeSpecifier imageType = getImageTypes(imageIndex).next();
+        final TGAHeader header = getHeader();
+        final int width = header.getWidth();
+        final int height = header.getHeight();
+
+        // get the decoding mode and limits
+        final DecodePolicy policy = new DecodePolicy(param);
+
+        // validate the regions and find the last row of the pixel data that
+        // is in any region
+        final Rectangle bounds = new Rectangle(0, 0, width, height);
+        long pixelCount = 0;
+        int lastRow = -1;
+        for(final Rectangle region : regions)
+        {
+            if(region.isEmpty() || !bounds.contains(region))
+                throw new IllegalArgumentException("The region is empty or is not within the image (" + region + ")."); // FIXME:  localize
+            /* else -- the region is valid */
 
-        // read each color map entry
-        for(int i=0; i<numberOfColors; i++)
+            pixelCount += (long)region.width * region.height;
+            lastRow = Math.max(lastRow, Math.max(getDestinationRow(header, region.y),
+                                                 getDestinationRow(header, region.y + region.height - 1)));
+        }
+        if(pixelCount > policy.maximumPixelCount)
+            throw new IOException("The regions have more than the maximum number of pixels (" + pixelCount + " > " + policy.maximumPixelCount + ")."); // FIXME:  localize
+        /* else -- the pixel count is acceptable */
+        checkImageSize(header, policy, Long.MAX_VALUE/*see javadoc*/);
+
+        // create the images of the regions
+        final int numberOfBands = imageType.getSampleModel(1, 1).getNumBands();
+        final List<BufferedImage> images = new ArrayList<BufferedImage>(regions.size());
+        final byte[][] regionData = new byte[regions.size()][];
+        for(int i=0; i<regions.size(); i++)
+        {
+            final Rectangle region = regions.get(i);
+            final BufferedImage image = imageType.createBufferedImage(region.width, region.height);
+            regionData[i] = ((DataBufferByte)image.getRaster().getDataBuffer()).getData();
+            images.add(image);
+        }
+        if(lastRow < 0)
+            return images;
+        /* else -- there is at least one region */
+
+        // only the rows that are in a region are converted (the others are
+        // skipped) and the rows after the last row of any region are not read
+        final boolean[] isRowWanted = new boolean[height];
+        for(final Rectangle region : regions)
         {
-            int red = 0, green = 0, blue = 0;
+            for(int y=region.y; y<region.y + region.height; y++)
+                isRowWanted[getDestinationRow(header, y)] = true;
+        }
+        final int lastWantedRow = lastRow;
+        decodeRows(numberOfBands, false/*not premultiplied*/, isRowWanted, param, new RowConsumer()
+        {
+            private int y;
 
-            // read based on the number of bits per color map entry
-            switch(bitsPerEntry)
+            public boolean addRow(final byte[] row)
             {
-                // grey scale (R = G = B)
-                case 8:
-                default:
+                if(row != null)
+                    copyRow(row, getDestinationRow(header, y), regions, regionData, numberOfBands);
+                /* else -- the row is not in any region */
+                y++;
+                return (y <= lastWantedRow);
+            }
+        });
+
+        return images;
+    }
+
+    /**
+     * <p>Reads the image scaled to the specified size by area averaging (a
+     * box filter).  Each destination pixel is the average of the source
+     * pixels that it covers weighted by the fraction of each that it covers
+     * so any size (not only integer factors) is exact and smooth.  The rows
+     * are decoded one at a time and accumulated into the destination as they
+     * are decoded so only the destination and a few rows are allocated:  a
+     * very large TGA becomes a thumbnail without the full image ever being
+     * in memory.  Both uncompressed and RLE compressed data are supported
+     * and the input may seek forward only.</p>
+     *
+     * <p>The strict flag and the limits of a {@link TGAImageReadParam} are
+     * honored.  The maximum pixel count applies to the destination.  Any
+     * other settings of the <code>ImageReadParam</code> are ignored.</p>
+     *
+     * @param  imageIndex the index of the image (must be zero)
+     * @param  destinationWidth the width of the scaled image
+     * @param  destinationHeight the height of the scaled image
+     * @param  param the <code>ImageReadParam</code> (may be <code>null</code>)
+     * @return the scaled image
+     * @throws IllegalArgumentException if the size is not positive
+     * @throws IOException if there is an I/O error while reading or if
+     *         decoding is strict and the pixel data is malformed
+     */
+    public BufferedImage readScaled(final int imageIndex,
+                                    final int destinationWidth,
+                                    final int destinationHeight,
+                                    final ImageReadParam param)
+        throws IOException
+    {
+        // a new read is not aborted by an earlier request
+        clearAbortRequest();
+
+        if((destinationWidth < 1) || (destinationHeight < 1))
+            throw new IllegalArgumentException("The scaled size must be positive (" + destinationWidth + " x " + destinationHeight + ")."); // FIXME:  localize
+        /* else -- the size is valid */
+
+        // ensure that the image is of a supported type
+        // NOTE:  this will implicitly ensure that the imageIndex is valid
+        final ImageTypeSpecifier imageType = getImageTypes(imageIndex).next();
+        final TGAHeader header = getHeader();
+        final int width = header.getWidth();
+        final int height = header.getHeight();
+
+        // get the decoding mode and limits
+        final DecodePolicy policy = new DecodePolicy(param);
+
+        final long pixelCount = (long)destinationWidth * destinationHeight;
+        if(pixelCount > policy.maximumPixelCount)
+            throw new IOException("The scaled image has more than the maximum number of pixels (" + destinationWidth + " x " + destinationHeight + " > " + policy.maximumPixelCount + ")."); // FIXME:  localize
+        /* else -- the pixel count is acceptable */
+        checkImageSize(header, policy, Long.MAX_VALUE/*see javadoc*/);
+
+        final BufferedImage image = imageType.createBufferedImage(destinationWidth, destinationHeight);
+        final byte[] destination = ((DataBufferByte)image.getRaster().getDataBuffer()).getData();
+        final int numberOfBands = image.getSampleModel().getNumBands();
+
+        // the source and destination are measured in units of which a source
+        // pixel is destinationWidth (destinationHeight) wide (high) and a
+        // destination pixel is width (height) wide (high).  The weight of a
+        // source pixel in a destination pixel is the number of units that
+        // they share so the weights of each destination pixel sum to
+        // width * height.
+        final long[] scaledRow = new long[destinationWidth * numberOfBands];
+        final long[] accumulator = new long[destinationWidth * numberOfBands];
+        final long totalWeight = (long)width * height;
+        decodeRows(numberOfBands, param, new RowConsumer()
+        {
+            // the row of the pixel data and the destination row (in the
+            // order of the pixel data)
+            private int y;
+            private int destinationY;
+
+            public boolean addRow(final byte[] row)
+            {
+                // scale the row horizontally
+                Arrays.fill(scaledRow, 0L);
+                int destinationX = 0;
+                for(int x=0; x<width; x++)
                 {
-                    final int data = inputStream.readByte() & 0xFF; // unsigned
-                    red = green = blue = data;
-                    
-                    break;
+                    long start = (long)x * destinationWidth;
+                    final long end = start + destinationWidth;
+                    final int sourceIndex = x * numberOfBands;
+                    while(start < end)
+                    {
+                        final long destinationEnd = (long)(destinationX + 1) * width;
+                        final long weight = Math.min(end, destinationEnd) - start;
+                        final int destinationIndex = destinationX * numberOfBands;
+                        for(int band=0; band<numberOfBands; band++)
+                            scaledRow[destinationIndex + band] += weight * (row[sourceIndex + band] & 0xFF);
+                        start += weight;
+                        if(start == destinationEnd)
+                            destinationX++;
+                        /* else -- the destination pixel continues */
+                    }
                 }
 
-                // 5-5-5 (RGB)
-                case 15:
-                case 16:
+                // accumulate the row vertically.  A destination row is
+                // written once all of the source rows that it covers have
+                // been accumulated.
+                long start = (long)y * destinationHeight;
+                final long end = start + destinationHeight;
+                while(start < end)
                 {
-                    // read the two bytes
-                    final int data = inputStream.readShort() & 0xFFFF; // unsigned
-
-                    // get each color component -- each is 5 bits
-                    red   = (byte) ((data >>> 10) & 0x1F);
-                    green = (byte) ((data >>>  5) & 0x1F);
-                    blue  = (byte) (data          & 0x1F);
-                    
-                    // shift bits up to fill higher 5 bits and approximate low bits
-                    // so that 5 bit max value (0xF8) maps to 8 bit max value (0xFF)
-                    red   = (byte) ((red   << 3) + (red   >>> 2));
-                    green = (byte) ((green << 3) + (green >>> 2));
-                    blue  = (byte) ((blue  << 3) + (blue  >>> 2));
-
-                    break;
+                    final long destinationEnd = (long)(destinationY + 1) * height;
+                    final long weight = Math.min(end, destinationEnd) - start;
+                    for(int i=0; i<accumulator.length; i++)
+                        accumulator[i] += weight * scaledRow[i];
+                    start += weight;
+                    if(start == destinationEnd)
+                    {
+                        final int index = getScaledRow(header, destinationY, destinationHeight) * accumulator.length;
+                        for(int i=0; i<accumulator.length; i++)
+                            destination[index + i] = (byte)((accumulator[i] + (totalWeight / 2)) / totalWeight);
+                        Arrays.fill(accumulator, 0L);
+                        destinationY++;
+                    } /* else -- the destination row continues */
                 }
+                y++;
+                return true;
+            }
+        });
+
+        return image;
+    }
+
+    /**
+     * <p>Reads the image and the levels of its mipmap chain.  The levels are
+     * built while the rows are decoded (each pair of rows is averaged into
+     * the next level as soon as it is complete) so the image is not read
+     * again to build them.  Each level is half the width and height of the
+     * level above it (rounded down but at least one pixel).  The input may
+     * seek forward only.</p>
+     *
+     * <p>The strict flag and the limits of a {@link TGAImageReadParam} are
+     * honored.  The maximum pixel count applies to the total of the levels.
+     * Any other settings of the <code>ImageReadParam</code> are ignored.</p>
+     *
+     * @param  imageIndex the index of the image (must be zero)
+     * @param  maximumLevelCount the maximum number of levels including the
+     *         image itself.  {@link Integer#MAX_VALUE} reads the full chain
+     *         (down to 1 x 1).
+     * @param  param the <code>ImageReadParam</code> (may be <code>null</code>)
+     * @return the image followed by each level
+     * @throws IllegalArgumentException if the maximum number of levels is not
+     *         positive
+     * @throws IOException if there is an I/O error while reading or if
+     *         decoding is strict and the pixel data is malformed
+     */
+    public List<BufferedImage> readMipmaps(final int imageIndex,
+                                           final int maximumLevelCount,
+                                           final ImageReadParam param)
+        throws IOException
+    {
+        // a new read is not aborted by an earlier request
+        clearAbortRequest();
+
+        // validate and get the number of levels (this will throw if not
+        // acceptable)
+        final int levelCount = getMipmapLevelCount(imageIndex, maximumLevelCount, param);
+        final ImageTypeSpecifier imageType = getImageTypeSpecifier(header);
+
+        final List<BufferedImage> images = new ArrayList<BufferedImage>(levelCount);
+        final ByteBuffer[] levels = new ByteBuffer[levelCount];
+        for(int level=0; level<levelCount; level++)
+        {
+            final BufferedImage image = imageType.createBufferedImage(TGAMipmapBuilder.getLevelSize(header.getWidth(), level),
+                                                                      TGAMipmapBuilder.getLevelSize(header.getHeight(), level));
+            levels[level] = ByteBuffer.wrap(((DataBufferByte)image.getRaster().getDataBuffer()).getData());
+            images.add(image);
+        }
+
+        final int numberOfBands = imageType.getSampleModel(1, 1).getNumBands();
+        decodeRows(numberOfBands, param, new TGAMipmapBuilder(header.getWidth(), header.getHeight(), numberOfBands,
+                                                              header.isBottomToTop(), levels));
+        return images;
+    }
+
+    /**
+     * <p>Reads the image and the levels of its mipmap chain (see
+     * {@link #readMipmaps(int, int, ImageReadParam)}) into a single direct
+     * <code>ByteBuffer</code> that is ready to be uploaded to a GPU.  The
+     * levels follow one another (the image first) without padding and each
+     * level is top-to-bottom rows of interleaved BGR(A) or grey (alpha)
+     * <code>byte</code>s as in the image that {@link #read(int, ImageReadParam)}
+     * returns.  Level <code>n</code> is <code>max(1, width &gt;&gt; n)</code>
+     * by <code>max(1, height &gt;&gt; n)</code> pixels.</p>
+     *
+     * @param  imageIndex the index of the image (must be zero)
+     * @param  maximumLevelCount the maximum number of levels including the
+     *         image itself.  {@link Integer#MAX_VALUE} reads the full chain
+     *         (down to 1 x 1).
+     * @param  param the <code>ImageReadParam</code> (may be <code>null</code>)
+     * @return the levels (positioned at zero with the limit at the end of
+     *         the last level)
+     * @throws IllegalArgumentException if the maximum number of levels is not
+     *         positive
+     * @throws IOException if there is an I/O error while reading or if
+     *         decoding is strict and the pixel data is malformed
+     */
+    public ByteBuffer readMipmapsPacked(final int imageIndex,
+                                        final int maximumLevelCount,
+                                        final ImageReadParam param)
+        throws IOException
+    {
+        // a new read is not aborted by an earlier request
+        clearAbortRequest();
+
+        // validate and get the number of levels (this will throw if not
+        // acceptable)
+        final int levelCount = getMipmapLevelCount(imageIndex, maximumLevelCount, param);
+        final int numberOfBands = getImageTypeSpecifier(header).getSampleModel(1, 1).getNumBands();
+
+        long size = 0;
+        for(int level=0; level<levelCount; level++)
+            size += (long)TGAMipmapBuilder.getLevelSize(header.getWidth(), level) *
+                    TGAMipmapBuilder.getLevelSize(header.getHeight(), level) * numberOfBands;
+        if(size > MAXIMUM_ARRAY_SIZE)
+            throw new IOException("The mipmaps are too large to be read into a single buffer (" + size + " bytes)."); // FIXME:  localize
+        /* else -- the levels fit in a buffer */
+
+        // each level is a slice of the buffer
+        final ByteBuffer packed = ByteBuffer.allocateDirect((int)size);
+        final ByteBuffer[] levels = new ByteBuffer[levelCount];
+        for(int level=0; level<levelCount; level++)
+        {
+            final int levelSize = TGAMipmapBuilder.getLevelSize(header.getWidth(), level) *
+                                  TGAMipmapBuilder.getLevelSize(header.getHeight(), level) * numberOfBands;
+            // cast is workaround for https://jira.mongodb.org/browse/JAVA-2559
+            ((Buffer)packed).limit(packed.position() + levelSize);
+            levels[level] = packed.slice();
+            ((Buffer)packed).position(packed.limit());
+        }
+        ((Buffer)packed).clear();
+
+        decodeRows(numberOfBands, param, new TGAMipmapBuilder(header.getWidth(), header.getHeight(), numberOfBands,
+                                                              header.isBottomToTop(), levels));
+        return packed;
+    }
+
+    /**
+     * <p>Validates the reading of the mipmap chain and retrieves its number
+     * of levels.</p>
+     *
+     * @param  imageIndex the index of the image (must be zero)
+     * @param  maximumLevelCount the maximum number of levels
+     * @param  param the <code>ImageReadParam</code> (may be <code>null</code>)
+     * @return the number of levels
+     * @throws IOException if the levels exceed the limits or if there is an
+     *         I/O error while reading the header
+     */
+    private int getMipmapLevelCount(final int imageIndex,
+                                    final int maximumLevelCount,
+                                    final ImageReadParam param)
+        throws IOException
+    {
+        if(maximumLevelCount < 1)
+            throw new IllegalArgumentException("The maximum number of levels must be positive (" + maximumLevelCount + ")."); // FIXME:  localize
+        /* else -- the maximum number of levels is valid */
+
+        // ensure that the image is of a supported type
+        // NOTE:  this will implicitly ensure that the imageIndex is valid
+        getImageTypes(imageIndex).next();
+        final TGAHeader header = getHeader();
+        final int width = header.getWidth();
+        final int height = header.getHeight();
+
+        // get the decoding mode and limits
+        final DecodePolicy policy = new DecodePolicy(param);
+
+        final int levelCount = TGAMipmapBuilder.getLevelCount(width, height, maximumLevelCount);
+        long pixelCount = 0;
+        for(int level=0; level<levelCount; level++)
+            pixelCount += (long)TGAMipmapBuilder.getLevelSize(width, level) * TGAMipmapBuilder.getLevelSize(height, level);
+        if(pixelCount > policy.maximumPixelCount)
+            throw new IOException("The mipmaps have more than the maximum number of pixels (" + pixelCount + " > " + policy.maximumPixelCount + ")."); // FIXME:  localize
+        /* else -- the pixel count is acceptable */
+        checkImageSize(header, policy, Long.MAX_VALUE/*checked above*/);
+
+        final long imageSize = (long)width * height * getImageTypeSpecifier(header).getSampleModel(1, 1).getNumBands();
+        if(imageSize > MAXIMUM_ARRAY_SIZE)
+            throw new IOException("The image is too large to be read into a single raster (" + width + " x " + height + " is " + imageSize + " bytes)."); // FIXME:  localize
+        /* else -- the image fits in an array */
+
+        return levelCount;
+    }
+
+    /**
+     * <p>Decodes the rows of the image in the order of the pixel data and
+     * gives each to the consumer as it is decoded.  The rows after truncated
+     * pixel data are zero (unless decoding is strict).</p>
+     *
+     * @param  numberOfBands the number of samples per pixel
+     * @param  param the <code>ImageReadParam</code> (may be <code>null</code>)
+     * @param  consumer the consumer of the rows
+     * @throws IOException if there is an I/O error while reading or if
+     *         decoding is strict and the pixel data is malformed
+     */
+    private void decodeRows(final int numberOfBands, final ImageReadParam param,
+                            final RowConsumer consumer)
+        throws IOException
+    {
+        decodeRows(numberOfBands, false/*not premultiplied*/, null/*all rows*/, param, consumer);
+    }
+
+    /**
+     * <p>Decodes the rows of the image (see {@link #decodeRows(int, ImageReadParam, RowConsumer)})
+     * optionally premultiplying the samples by the alpha and skipping the 
+     * rows that are not wanted.  The RLE packets of a skipped row are
+     * followed without its pixels being converted and an uncompressed 
+     * skipped row is sought past (see {@link TGAInputBuffer#skip(long)}).
+     * The consumer is given <code>null</code> for a skipped row.</p>
+     *
+     * @param  numberOfBands the number of samples per pixel
+     * @param  premultiplied if <code>true</code> then the samples of pixels
+     *         with alpha are premultiplied by the alpha
+     * @param  isRowWanted if the row at each index (in the order of the 
+     *         pixel data) is wanted or <code>null</code> if all rows are
+     *         wanted
+     * @param  param the <code>ImageReadParam</code> (may be <code>null</code>)
+     * @param  consumer the consumer of the rows
+     * @throws IOException if there is an I/O error while reading or if
+     *         decoding is strict and the pixel data is malformed
+     */
+    private void decodeRows(final int numberOfBands, final boolean premultiplied,
+                            final boolean[] isRowWanted, final ImageReadParam param, 
+                            final RowConsumer consumer)
+        throws IOException
+    {
+        final int width = header.getWidth();
+        final int height = header.getHeight();
+
+        // get the decoding mode and limits
+        final DecodePolicy policy = new DecodePolicy(param);
+
+        checkPixelDataAvailable(header);
+        final int[] colorMap = readColorMap(header, policy.strict);
+        inputStream.seek(header.getPixelDataOffset());
+        if(isSeekForwardOnly())
+            inputStream.flushBefore(header.getPixelDataOffset());
+        /* else -- the input may seek backward */
+
+        final long pixelBytesAllowed = policy.maximumBytesRead - header.getPixelDataOffset();
+        final TGAInputBuffer input = new TGAInputBuffer(inputStream, getInputBufferSize(param, header, pixelBytesAllowed),
+                                                        pixelBytesAllowed, isSeekForwardOnly());
+        final ByteBuffer inputBuffer = input.getBuffer();
+        final TGAPixelDecoder decoder = new TGAPixelDecoder(header, colorMap, numberOfBands,
+                                                            false/*not packed*/, premultiplied, policy.strict);
+
+        final byte[] row = new byte[width * numberOfBands];
+        final long rowSize = getRowSize(header);
+        boolean isTruncated = false;
+        try
+        {
+            for(int y=0; y<height; y++)
+            {
+                // no more rows are given to the consumer if the read is 
+                // aborted
+                if(abortRequested())
+                    return;
+                /* else -- not aborted */
+
+                final boolean isWanted = (isRowWanted == null) || isRowWanted[y];
+
+                // an uncompressed row that is not wanted is skipped whole
+                if(!isWanted && !header.isCompressed())
+                {
+                    if(!isTruncated && (input.skip(rowSize) < rowSize))
+                    {
+                        if(policy.strict)
+                            throw new IOException("The pixel data is truncated (" + y + " of " + height + " rows were read)."); // FIXME:  localize
+                        /* else -- lenient */
+
+                        isTruncated = true;
+                    } /* else -- the row was skipped or the data already ended */
+
+                    if(!consumer.addRow(null))
+                        return;
+                    /* else -- more rows are wanted */
+                    continue;
+                } /* else -- the row is decoded (or its RLE packets followed) */
+
+                // decode (or skip) the row from as many buffer fills as are
+                // needed.  The rows after truncated pixel data are zero.
+                int remaining = width;
+                while(!isTruncated && (remaining > 0))
+                {
+                    final boolean endOfFile = input.fill(decoder.getMinimumInput());
+
+                    final int decoded;
+                    if(isWanted)
+                        decoded = decoder.decode(inputBuffer, row, (width - remaining) * numberOfBands, remaining);
+                    else /* only the RLE packets need to be followed */
+                        decoded = decoder.skip(inputBuffer, remaining);
+                    if((decoded == 0) && endOfFile)
+                    {
+                        if(policy.strict)
+                            throw new IOException("The pixel data is truncated (" + y + " of " + height + " rows were read)."); // FIXME:  localize
+                        /* else -- lenient */
+
+                        isTruncated = true;
+                    } /* else -- progress was made or more data can be read */
+
+                    remaining -= decoded;
+                }
+                if(!isWanted)
+                {
+                    if(!consumer.addRow(null))
+                        return;
+                    /* else -- more rows are wanted */
+                    continue;
+                } /* else -- the row is wanted */
+
+                if(isTruncated)
+                    Arrays.fill(row, (width - remaining) * numberOfBands, row.length, (byte)0);
+                /* else -- the row was decoded */
+
+                if(!consumer.addRow(row))
+                    return;
+                /* else -- more rows are wanted */
+            }
+        } finally
+        {
+            // nothing is read once the decoding has ended
+            input.close();
+        }
+
+        // the last RLE packet should end with the image
+        if(policy.strict && decoder.hasPendingPacket())
+            throw new IOException("An RLE packet runs past the end of the image."); // FIXME:  localize
+        /* else -- the packets ended with the image or the excess is ignored */
+    }
+
+    /**
+     * <p>Reads the image block compressed to BC1 (opaque) or BC3 (alpha) for
+     * a GPU.  The rows are compressed four at a time as they are decoded so
+     * only a few rows and the compressed blocks are allocated rather than
+     * the whole image.  An image whose alpha turns out to be entirely opaque
+     * is compressed to BC1.  The input may seek forward only.</p>
+     *
+     * <p>The strict flag and the limits of a {@link TGAImageReadParam} are
+     * honored.  Any other settings of the <code>ImageReadParam</code> are
+     * ignored.</p>
+     *
+     * @param  imageIndex the index of the image (must be zero)
+     * @param  param the <code>ImageReadParam</code> (may be <code>null</code>)
+     * @return the compressed image
+     * @throws IOException if there is an I/O error while reading or if
+     *         decoding is strict and the pixel data is malformed
+     */
+    public TGACompressedTexture readCompressed(final int imageIndex,
+                                               final ImageReadParam param)
+        throws IOException
+    {
+        // a new read is not aborted by an earlier request
+        clearAbortRequest();
+
+        // ensure that the image is of a supported type
+        // NOTE:  this will implicitly ensure that the imageIndex is valid
+        final ImageTypeSpecifier imageType = getImageTypes(imageIndex).next();
+        final TGAHeader header = getHeader();
+        final int width = header.getWidth();
+        final int height = header.getHeight();
+
+        // get the decoding mode and limits
+        final DecodePolicy policy = new DecodePolicy(param);
+        checkImageSize(header, policy, policy.maximumPixelCount);
+
+        final int numberOfBands = imageType.getSampleModel(1, 1).getNumBands();
+        final long compressedSize = TGABlockCompressor.getSize(width, height, numberOfBands);
+        if(compressedSize > MAXIMUM_ARRAY_SIZE)
+            throw new IOException("The image is too large to be compressed into a single buffer (" + compressedSize + " bytes)."); // FIXME:  localize
+        /* else -- the blocks fit in a buffer */
+
+        final TGABlockCompressor compressor = new TGABlockCompressor(width, height, numberOfBands,
+                                                                     header.isBottomToTop());
+        decodeRows(numberOfBands, param, compressor);
+        return compressor.finish();
+    }
+
+    /**
+     * <p>Reads the image as normalized <code>float</code> samples into the
+     * specified tensor from its position in the specified layout.  Each
+     * sample is <code>(sample / 255 - mean[c]) / standardDeviation[c]</code>
+     * where <code>c</code> is its channel (see {@link TGATensorLayout}).
+     * The rows are written as they are decoded so no image is allocated.
+     * The position of the tensor is advanced past the samples so that 
+     * successive images fill successive slots of a batch (or the position
+     * may be set to slot <code>i</code> of an NCHW batch).  The input may
+     * seek forward only.</p>
+     *
+     * <p>The strict flag and the limits of a {@link TGAImageReadParam} are
+     * honored.  Any other settings of the <code>ImageReadParam</code> are
+     * ignored.</p>
+     *
+     * @param  imageIndex the index of the image (must be zero)
+     * @param  destination the tensor into which the 
+     *         <code>width * height * channels</code> samples are written
+     * @param  layout the order of the samples
+     * @param  mean the mean of each channel (may be <code>null</code> for 
+     *         zero)
+     * @param  standardDeviation the standard deviation of each channel (may
+     *         be <code>null</code> for one)
+     * @param  param the <code>ImageReadParam</code> (may be <code>null</code>)
+     * @throws IllegalArgumentException if there is not room for the samples
+     *         in the tensor or if there is not a mean or standard deviation
+     *         for each channel
+     * @throws IOException if there is an I/O error while reading or if
+     *         decoding is strict and the pixel data is malformed
+     */
+    public void readTensor(final int imageIndex, final FloatBuffer destination,
+                           final TGATensorLayout layout, final float[] mean,
+                           final float[] standardDeviation,
+                           final ImageReadParam param)
+        throws IOException
+    {
+        // a new read is not aborted by an earlier request
+        clearAbortRequest();
+
+        // ensure that the image is of a supported type
+        // NOTE:  this will implicitly ensure that the imageIndex is valid
+        final ImageTypeSpecifier imageType = getImageTypes(imageIndex).next();
+        final TGAHeader header = getHeader();
+        final int width = header.getWidth();
+        final int height = header.getHeight();
+        final int numberOfBands = imageType.getSampleModel(1, 1).getNumBands();
+
+        if(layout == null)
+            throw new IllegalArgumentException("The tensor layout cannot be null."); // FIXME:  localize
+        /* else -- the layout is valid */
+        if((mean != null) && (mean.length != numberOfBands))
+            throw new IllegalArgumentException("There must be a mean for each of the " + numberOfBands + " channels."); // FIXME:  localize
+        /* else -- the means are valid */
+        if((standardDeviation != null) && (standardDeviation.length != numberOfBands))
+            throw new IllegalArgumentException("There must be a standard deviation for each of the " + numberOfBands + " channels."); // FIXME:  localize
+        /* else -- the standard deviations are valid */
+
+        final long tensorSize = (long)width * height * numberOfBands;
+        if(tensorSize > destination.remaining())
+            throw new IllegalArgumentException("The tensor has room for " + destination.remaining() + " of the " + tensorSize + " samples."); // FIXME:  localize
+        /* else -- the samples fit */
+
+        // get the decoding mode and limits
+        final DecodePolicy policy = new DecodePolicy(param);
+        checkImageSize(header, policy, policy.maximumPixelCount);
+
+        final TGATensorWriter writer = new TGATensorWriter(width, height, numberOfBands,
+                                                           header.isBottomToTop(), layout,
+                                                           mean, standardDeviation, destination);
+        decodeRows(numberOfBands, param, writer);
+        ((Buffer)destination).position(destination.position() + (int)tensorSize); // cast is workaround for https://jira.mongodb.org/browse/JAVA-2559
+    }
 
-                // true color RGB(A) (8 bits per pixel)
-                case 24:
-                case 32:
-                    // read each color component 
-                    // CHECK:  is there an alpha?!?
-                    inputStream.read(buffer, 0, 3);
+    /**
+     * <p>Reads the image as normalized <code>float</code> samples into the
+     * specified array from the specified offset (see 
+     * {@link #readTensor(int, FloatBuffer, TGATensorLayout, float[], float[], ImageReadParam)}).
+     * Slot <code>i</code> of an NCHW batch is at offset 
+     * <code>i * channels * height * width</code>.</p>
+     *
+     * @param  imageIndex the index of the image (must be zero)
+     * @param  destination the array into which the samples are written
+     * @param  offset the index in the array of the first sample
+     * @param  layout the order of the samples
+     * @param  mean the mean of each channel (may be <code>null</code> for 
+     *         zero)
+     * @param  standardDeviation the standard deviation of each channel (may
+     *         be <code>null</code> for one)
+     * @param  param the <code>ImageReadParam</code> (may be <code>null</code>)
+     * @throws IllegalArgumentException if there is not room for the samples
+     *         in the array or if there is not a mean or standard deviation
+     *         for each channel
+     * @throws IOException if there is an I/O error while reading or if
+     *         decoding is strict and the pixel data is malformed
+     */
+    public void readTensor(final int imageIndex, final float[] destination,
+                           final int offset, final TGATensorLayout layout, 
+                           final float[] mean, final float[] standardDeviation,
+                           final ImageReadParam param)
+        throws IOException
+    {
+        if((offset < 0) || (offset > destination.length))
+            throw new IllegalArgumentException("The offset " + offset + " is outside of the array."); // FIXME:  localize
+        /* else -- the offset is valid */
 
-                    blue  = buffer[0] & 0xFF; // unsigned
-                    green = buffer[1] & 0xFF; // unsigned
-                    red   = buffer[2] & 0xFF; // unsigned
+        final FloatBuffer buffer = FloatBuffer.wrap(destination);
+        ((Buffer)buffer).position(offset); // cast is workaround for https://jira.mongodb.org/browse/JAVA-2559
+        readTensor(imageIndex, buffer, layout, mean, standardDeviation, param);
+    }
 
-                    break;
+    /**
+     * <p>Reads the image as raw interleaved <code>byte</code> samples without
+     * any AWT (<code>java.awt.image</code>) classes:  no color space, color
+     * model or image is created.  This suits environments without AWT (such
+     * as a native image).  The input may seek forward only.</p>
+     *
+     * <p>The strict flag and the limits of a {@link TGAImageReadParam} are
+     * honored.  Any other settings of the <code>ImageReadParam</code> are
+     * ignored.</p>
+     *
+     * @param  imageIndex the index of the image (must be zero)
+     * @param  param the <code>ImageReadParam</code> (may be <code>null</code>)
+     * @return the samples of the image
+     * @throws IllegalArgumentException if the image type is not known or is
+     *         not supported
+     * @throws IOException if there is an I/O error while reading or if
+     *         decoding is strict and the pixel data is malformed
+     */
+    public TGARawImage readRaw(final int imageIndex, final ImageReadParam param)
+        throws IOException
+    {
+        // a new read is not aborted by an earlier request
+        clearAbortRequest();
+
+        // NOTE:  getImageTypes() is not used as it creates the color model
+        checkImageIndex(imageIndex);
+        final TGAHeader header = getHeader();
+        checkImageType(header);
+        final int width = header.getWidth();
+        final int height = header.getHeight();
+        final int numberOfBands = header.getSamplesPerPixel();
+
+        // get the decoding mode and limits
+        final DecodePolicy policy = new DecodePolicy(param);
+        checkImageSize(header, policy, policy.maximumPixelCount);
+
+        final long imageSize = (long)width * height * numberOfBands;
+        if(imageSize > MAXIMUM_ARRAY_SIZE)
+            throw new IOException("The image is too large to be read into a single array (" + width + " x " + height + " is " + imageSize + " bytes)."); // FIXME:  localize
+        /* else -- the image fits in an array */
+
+        final byte[] samples = new byte[(int)imageSize];
+        final int rowSize = width * numberOfBands;
+        decodeRows(numberOfBands, param, new RowConsumer()
+        {
+            private int y;
+
+            public boolean addRow(final byte[] row)
+            {
+                System.arraycopy(row, 0, samples, getDestinationRow(header, y++) * rowSize, rowSize);
+                return true;
             }
+        });
+        return new TGARawImage(width, height, numberOfBands, samples);
+    }
+
+    /**
+     * <p>Determines if the image can be the destination of an image of the
+     * specified size and type:  it is of the same size, color model and
+     * sample model and it is not a child of a larger image.</p>
+     *
+     * @param  image the candidate destination
+     * @param  imageType the type of the image that is read
+     * @param  width the width of the image that is read
+     * @param  height the height of the image that is read
+     * @return <code>true</code> if the image can be read into
+     */
+    static boolean isCompatibleDestination(final BufferedImage image, 
+                                           final ImageTypeSpecifier imageType,
+                                           final int width, final int height)
+    {
+        return (image.getWidth() == width) && (image.getHeight() == height) &&
+               (image.getRaster().getParent() == null) &&
+               image.getColorModel().equals(imageType.getColorModel()) &&
+               image.getSampleModel().equals(imageType.getSampleModel(width, height));
+    }
+
+    /**
+     * <p>Retrieves the row in the scaled destination of the specified row
+     * (in the order of the pixel data).  If the image is bottom-to-top then
+     * the rows are flipped.</p>
+     *
+     * @param  header the <code>TGAHeader</code> of the image being read
+     * @param  y the row in the order of the pixel data
+     * @param  scaledHeight the height of the scaled destination
+     * @return the row in the destination
+     */
+    private static int getScaledRow(final TGAHeader header, final int y,
+                                    final int scaledHeight)
+    {
+        if(header.isBottomToTop())
+            return (scaledHeight - y) - 1;
+        else /* is top-to-bottom */
+            return y;
+    }
+
+    /**
+     * <p>Copies a decoded row into each region that contains it.</p>
+     *
+     * @param  row the decoded row
+     * @param  y the row in the image
+     * @param  regions the regions
+     * @param  regionData the samples of the image of each region
+     * @param  numberOfBands the number of samples per pixel
+     */
+    private static void copyRow(final byte[] row, final int y,
+                                final List<Rectangle> regions,
+                                final byte[][] regionData,
+                                final int numberOfBands)
+    {
+        for(int i=0; i<regionData.length; i++)
+        {
+            final Rectangle region = regions.get(i);
+            if((y < region.y) || (y >= region.y + region.height))
+                continue;
+            /* else -- the row is in the region */
+
+            final int rowSize = region.width * numberOfBands;
+            System.arraycopy(row, region.x * numberOfBands,
+                             regionData[i], (y - region.y) * rowSize, rowSize);
+        }
+    }
+
+    /**
+     * <p>Create the {@link TGATileDecoder} only if there is not one 
+     * already.  The color map is read when it is created.</p>
+     * 
+     * @param  imageIndex the index of the image
+     * @return the <code>TGATileDecoder</code> (for convenience)
+     * @throws IOException if the input is not seekable or if there is an 
+     *         I/O error while reading the header or color map
+     */
+    private synchronized TGATileDecoder getTileDecoder(final int imageIndex)
+        throws IOException
+    {
+        // ensure that the image is of a supported type
+        // NOTE:  this will implicitly ensure that the imageIndex is valid
+        final ImageTypeSpecifier imageType = getImageTypes(imageIndex).next();
+
+        if(tileDecoder != null)
+            return tileDecoder;
+        /* else -- there is no tile decoder */
+
+        // tiles are read in any order so the input must seek backward
+        if(isSeekForwardOnly() || (inputStream instanceof TGAForwardOnlyInputStream))
+            throw new IOException("Tiles cannot be read from an input that only seeks forward."); // FIXME:  localize
+        /* else -- the input is seekable */
+
+        final int[] colorMap = readColorMap(header, false/*lenient*/);
+        tileDecoder = new TGATileDecoder(inputStream, header, colorMap,
+                                         imageType.getSampleModel().getNumBands());
+        return tileDecoder;
+    }
 
-            // combine each component into the result
-            colorMap[i] = (red << 0) | (green << 8) | (blue << 16);
+    /**
+     * <p>Retrieves the row in the destination of the specified row of the 
+     * pixel data.  If the image is bottom-to-top then the rows are 
+     * flipped.</p>
+     * 
+     * @param  header the <code>TGAHeader</code> of the image being read
+     * @param  y the row of the pixel data
+     * @return the row in the destination
+     */
+    static int getDestinationRow(final TGAHeader header, final int y)
+    {
+        if(header.isBottomToTop())
+            return (header.getHeight() - y) - 1;
+        else /* is top-to-bottom */
+            return y;
+    }
+
+    /**
+     * <p>Validate the size of the image described by the header against the
+     * maximum number of pixels and <code>byte</code>s.  If the length of the
+     * stream is known then the stream must also be long enough to contain 
+     * the pixel data (when strict) or to plausibly describe the image (when
+     * lenient).  This is done before anything is allocated for the image.</p>
+     * 
+     * @param  header the <code>TGAHeader</code> of the image being read
+     * @param  policy the decoding mode and limits
+     * @param  maximumPixelCount the maximum number of pixels in the image
+     *         (the pixel count of the policy unless the image itself is not
+     *         allocated)
+     * @throws IOException if the image exceeds the limits or is truncated or
+     *         if there is an I/O error while determining the stream length
+     */
+    private void checkImageSize(final TGAHeader header, final DecodePolicy policy,
+                                final long maximumPixelCount)
+        throws IOException
+    {
+        final boolean strict = policy.strict;
+        final long maximumBytesRead = policy.maximumBytesRead;
+        final long pixelCount = (long)header.getWidth() * header.getHeight();
+        if(pixelCount > maximumPixelCount)
+            throw new IOException("The image has more than the maximum number of pixels (" + header.getWidth() + " x " + header.getHeight() + " > " + maximumPixelCount + ")."); // FIXME:  localize
+        /* else -- the pixel count is acceptable */
+
+        if(header.getPixelDataOffset() > maximumBytesRead)
+            throw new IOException("The header and color map exceed the maximum number of bytes (" + maximumBytesRead + ")."); // FIXME:  localize
+        /* else -- the header and color map are acceptable */
+
+        // if the length is known then the stream must contain at least the
+        // minimum amount of pixel data.  When strict this is the pixel data
+        // of the best case encoding.  When lenient missing pixels are
+        // zero-filled but the present pixel data must still be able to
+        // describe the image in the best case RLE encoding so that a header
+        // that claims a huge image in a few bytes is not allocated.
+        final long streamLength = inputStream.length();
+        if(streamLength >= 0)
+        {
+            // in the best case every packet is a run of 128 pixels
+            final int bytesPerPixel = (header.getBitsPerPixel() + 7) / 8;
+            final long bestCaseRLESize = ((pixelCount + 127) / 128) * (bytesPerPixel + 1);
+            final long minimumPixelDataSize;
+            if(header.isCompressed())
+                minimumPixelDataSize = bestCaseRLESize;
+            else if(strict)
+                minimumPixelDataSize = getRowSize(header) * header.getHeight();
+            else /* lenient and uncompressed */
+                minimumPixelDataSize = Math.min(bestCaseRLESize, getRowSize(header) * header.getHeight());
+
+            if((streamLength - header.getPixelDataOffset()) < minimumPixelDataSize)
+                throw new IOException("The pixel data is truncated (" + (streamLength - header.getPixelDataOffset()) + " < " + minimumPixelDataSize + " bytes)."); // FIXME:  localize
+            /* else -- there may be enough pixel data */
+        } /* else -- the length is not known */
+    }
+
+    /**
+     * <p>Ensures that the color map and pixel data can still be reached.  A 
+     * forward only input (an <code>InputStream</code> or an 
+     * <code>ImageInputStream</code> that was set to seek forward only) is 
+     * read in a single pass so once the image has been read it cannot be 
+     * read again without setting the input again.</p>
+     *
+     * @param  header the <code>TGAHeader</code> of the image being read
+     * @throws IllegalStateException if the color map or pixel data has 
+     *         already been passed in a forward only input
+     * @throws IOException if there is an I/O error while determining the 
+     *         stream position
+     */
+    private void checkPixelDataAvailable(final TGAHeader header)
+        throws IOException
+    {
+        final long start = header.hasColorMap() ? header.getColorMapDataOffset() : header.getPixelDataOffset();
+        final boolean passed;
+        if(inputStream instanceof TGAForwardOnlyInputStream)
+            passed = (inputStream.getStreamPosition() > start);
+        else /* only flushed data is lost */
+            passed = (inputStream.getFlushedPosition() > start);
+        if(passed)
+            throw new IllegalStateException("The pixel data of the forward only input has already been read.  Set the input again to read the image again."); // FIXME:  localize
+        /* else -- the data can still be reached */
+    }
+
+    /**
+     * <p>Retrieves the number of <code>byte</code>s in a row of uncompressed
+     * pixel data.  1 bit rows are <code>byte</code> aligned.</p>
+     * 
+     * @param  header the <code>TGAHeader</code> of the image
+     * @return the number of <code>byte</code>s in an uncompressed row
+     */
+    static long getRowSize(final TGAHeader header)
+    {
+        if(header.getBitsPerPixel() == 1)
+            return (header.getWidth() + 7) / 8;
+        else /* whole bytes per pixel */
+            return (long)header.getWidth() * ((header.getBitsPerPixel() + 7) / 8);
+    }
+        
+    /**
+     * <p>Determines the size in <code>byte</code>s of the buffer through which
+     * the pixel data is read.  If the <code>ImageReadParam</code> is a 
+     * {@link TGAImageReadParam} with an explicit size then that size is used.
+     * Otherwise the size is the number of <code>byte</code>s of pixel data
+     * (<code>width * height * bytesPerPixel</code> for uncompressed data, the
+     * worst case for RLE data) bounded by the remaining stream length (if 
+     * known), the number of <code>byte</code>s that may be read and by 
+     * {@link TGAImageReadParam#MAXIMUM_ADAPTIVE_BUFFER_SIZE}.</p>
+     * 
+     * @param  param the <code>ImageReadParam</code> (may be <code>null</code>)
+     * @param  header the <code>TGAHeader</code> of the image being read
+     * @param  bytesAllowed the number of <code>byte</code>s of pixel data that
+     *         may be read
+     * @return the size of the input buffer in <code>byte</code>s
+     * @throws IOException if there is an I/O error while determining the
+     *         stream length
+     */
+    private int getInputBufferSize(final ImageReadParam param, 
+                                   final TGAHeader header,
+                                   final long bytesAllowed)
+        throws IOException
+    {
+        // the buffer must be able to hold at least a RLE repetition count 
+        // field and a full pixel
+        final int bytesPerPixel = (header.getBitsPerPixel() + 7) / 8;
+        final int minimumSize = bytesPerPixel + 1;
+
+        // use an explicitly requested size if there is one
+        if(param instanceof TGAImageReadParam)
+        {
+            final int requestedSize = ((TGAImageReadParam)param).getInputBufferSize();
+            if(requestedSize != TGAImageReadParam.ADAPTIVE_BUFFER_SIZE)
+                return Math.max(requestedSize, minimumSize);
+            /* else -- the size is adaptive */
+        } /* else -- there is no TGAImageReadParam so the size is adaptive */
+
+        long pixelDataSize = getRowSize(header) * header.getHeight();
+
+        // in the worst case every RLE packet is a single raw pixel with its 
+        // own repetition count field
+        if(header.isCompressed())
+            pixelDataSize += (long)header.getWidth() * header.getHeight();
+        /* else -- the data is uncompressed and its size is exact */
+
+        // there is no point in a buffer larger than the remaining data (if
+        // the length of the stream is known) or than what may be read
+        final long streamLength = inputStream.length();
+        if(streamLength >= 0)
+            pixelDataSize = Math.min(pixelDataSize, streamLength - header.getPixelDataOffset());
+        /* else -- the stream length is not known */
+        pixelDataSize = Math.min(pixelDataSize, bytesAllowed);
+
+        return (int)Math.max(minimumSize, 
+                             Math.min(pixelDataSize, TGAImageReadParam.MAXIMUM_ADAPTIVE_BUFFER_SIZE));
+    }
+
+    /**
+     * <p>Reads and returns an array of color mapped values.  If the image does
+     * not contain a color map <code>null</code> will be returned.  The array
+     * is indexed by the (8 bit) pixel value:  color map entry <code>i</code>
+     * is at <code>firstColorMapEntryIndex + i</code> and the entries that are
+     * not in the color map are zero (black).</p>
+     * 
+     * @param  header the <code>TGAHeader</code> for the image
+     * @param  strict if <code>true</code> then a truncated color map fails,
+     *         otherwise the missing entries are zero
+     * @return the array of <code>int</code> color map values or <code>null</code>
+     *         if the image does not contain a color map
+     * @throws IOException if there is an I/O error while reading the color map
+     *         or if the color map is truncated and decoding is strict
+     */
+    private int[] readColorMap(final TGAHeader header, final boolean strict)
+        throws IOException
+    {
+        // determine if the image contains a color map.  If not, return null
+        if(!header.hasColorMap())
+            return null;
+        /* else -- there is a color map */
+
+        // move to the start of the color map in the input stream.  The color
+        // map immediately follows the header so this is never backward unless
+        // the image is read again.
+        inputStream.seek(header.getColorMapDataOffset());
+
+        // read the color map entries in one go
+        final byte[] entries = new byte[header.getPixelDataOffset() - header.getColorMapDataOffset()];
+        int bytesRead = 0;
+        while(bytesRead < entries.length)
+        {
+            final int count = inputStream.read(entries, bytesRead, entries.length - bytesRead);
+            if(count == -1)
+            {
+                if(strict)
+                    throw new IOException("The color map is truncated."); // FIXME:  localize
+                /* else -- lenient so the missing entries are zero */
+                break;
+            } /* else -- more data may be available */
+            bytesRead += count;
         }
 
-        return colorMap;
+        return TGAPixelDecoder.createColorMap(header, entries);
     }
 
     /**
@@ -7,7 +7,9 @@ package com.realityinteractive.imageio.tga;
  * Created on Sep 26, 2003
  */
 
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Locale;
 
 import javax.imageio.ImageReader;
@@ -15,8 +17,8 @@ import javax.imageio.spi.ImageReaderSpi;
 import javax.imageio.stream.ImageInputStream;
 
 /**
- * <p>A service provider for reading TGA images.  Only {@link ImageInputStream}
- * input types are allowed.  See {@link TGAImageReader}
+ * <p>A service provider for reading TGA images.  {@link ImageInputStream} and
+ * {@link InputStream} input types are allowed.  See {@link TGAImageReader}
  * for supported features.</p>
  * 
  * @author Rob Grzywinski <a href="mailto:rgrzywinski@realityinteractive.com">rgrzywinski@realityinteractive.com</a>
@@ -120,10 +122,29 @@ public class TGAImageReaderSpi extends ImageReaderSpi
      */
     static final String[] EXTRA_IMAGE_METADATA_FORMAT_CLASSNAMES = null;
 
+    /**
+     * <p>The number of header <code>byte</code>s that are checked by
+     * {@link #canDecodeInput(Object)}.</p>
+     */
+    private static final int HEADER_CHECK_LENGTH = 18;
+
+    /**
+     * <p>The number of <code>byte</code>s of the TGA 2.0 footer:  the
+     * extension area offset, the developer directory offset and the
+     * signature.</p>
+     */
+    private static final int FOOTER_LENGTH = 26;
+
+    /**
+     * <p>The signature that ends a TGA 2.0 file.</p>
+     */
+    private static final byte[] FOOTER_SIGNATURE = { 'T', 'R', 'U', 'E', 'V', 'I', 'S', 'I', 'O', 'N', 
+                                                     '-', 'X', 'F', 'I', 'L', 'E', '.', 0 };
+
     // =========================================================================
     /**
      * <p>Constructs an {@link ImageReaderSpi} that accepts
-     * {@link ImageInputStream} as its input type.</p>
+     * {@link ImageInputStream} and {@link InputStream} as its input types.</p>
      * 
      * @see ImageReaderSpi#ImageReaderSpi()
      */
@@ -131,7 +152,7 @@ public class TGAImageReaderSpi extends ImageReaderSpi
     {
         super(VENDOR_NAME, VERSION, FORMAT_NAMES, SUFFIXES, MIME_TYPES, 
               READER_CLASSNAME,
-              new Class[]{ImageInputStream.class},
+              new Class[]{ImageInputStream.class, InputStream.class},
               WRITER_SPI_CLASSNAMES,
               SUPPORTS_STANDARD_STREAM_METADATA_FORMAT,
               NATIVE_STREAM_METADATA_FORMAT_NAME,
@@ -146,6 +167,17 @@ public class TGAImageReaderSpi extends ImageReaderSpi
     }
 
     /**
+     * <p>The header fields are checked for consistency with each other.  If
+     * the length of the stream is known then the header, color map and 
+     * (smallest possible) pixel data must fit in the stream and if the 
+     * stream ends with a TGA 2.0 footer then they must fit before the
+     * extension area, developer directory and footer.  (A truncated TGA is 
+     * then not recognized though a {@link TGAImageReader} can still read it
+     * leniently.)  Nothing is allocated by the check.</p>
+     *
+     * <p>An {@link InputStream} can only be checked if it supports 
+     * {@link InputStream#mark(int)}.</p>
+     * 
      * @see ImageReaderSpi#canDecodeInput(Object)
      */
     public boolean canDecodeInput(final Object source) 
@@ -154,6 +186,11 @@ public class TGAImageReaderSpi extends ImageReaderSpi
         // NOTE:  the input source must be left in the same state as it started
         //        at (mark() and reset() should be used on ImageInputStream)
 
+        // an InputStream can only be checked if it can be reset
+        if(source instanceof InputStream)
+            return canDecodeInput((InputStream)source);
+        /* else -- source is not an InputStream */
+
         // ensure that the input type is a ImageInputStream as that is all that
         // is supported
         if(!(source instanceof ImageInputStream))
@@ -167,54 +204,69 @@ public class TGAImageReaderSpi extends ImageReaderSpi
         {
             // set a mark at the current position so that the stream can be reset
             inputStream.mark();
+            final long start = inputStream.getStreamPosition();
     
             // there's no ideidentifiable header on a TGA file so a punt must 
-            // occur.  This will attempt to read the image type and if it is
-            // not known or allowed then false is returned.
-            // NOTE:  1.0.0 only supports un/compressed true color
-            inputStream.readUnsignedByte(); // idLength
-            
-            int colourMapType = inputStream.readUnsignedByte();
-            if (colourMapType != 0 && colourMapType != 1)
-            {
-                return false;
-            }
-            
-            int imageType = inputStream.readUnsignedByte();
-            if( (imageType != TGAConstants.NO_IMAGE) && 
-                (imageType != TGAConstants.COLOR_MAP) && 
-                (imageType != TGAConstants.TRUE_COLOR) &&
-                (imageType != TGAConstants.MONO) &&
-                (imageType != TGAConstants.RLE_TRUE_COLOR) &&
-                (imageType != TGAConstants.RLE_COLOR_MAP) &&
-                (imageType != TGAConstants.RLE_MONO) ) 
-            {
-                return false;
-            } 
-            
-            inputStream.skipBytes(4);
-            int colourMapBits = inputStream.readUnsignedByte(); // Offset 7
-            
-            // Defined as being 15, 16, 24 or 32 but I saw 0 in reality.
-            if (colourMapBits != 0 &&
-                colourMapBits != 15 &&
-                colourMapBits != 16 &&
-                colourMapBits != 24 && 
-                colourMapBits != 32)
+            // occur.  This will attempt to read the header and if it is not
+            // known, allowed or consistent then false is returned.
+            // NOTE:  the (little endian) shorts are read a byte at a time as
+            //        the byte order of the stream is not changed
+            final int idLength = inputStream.readUnsignedByte();
+            final int colourMapType = inputStream.readUnsignedByte();
+            final int imageType = inputStream.readUnsignedByte();
+            inputStream.skipBytes(2); // first colour map entry
+            final int colourMapLength = inputStream.readUnsignedByte() | (inputStream.readUnsignedByte() << 8);
+            final int colourMapBits = inputStream.readUnsignedByte(); // Offset 7
+            inputStream.skipBytes(4); // origin
+            final int width = inputStream.readUnsignedByte() | (inputStream.readUnsignedByte() << 8);
+            final int height = inputStream.readUnsignedByte() | (inputStream.readUnsignedByte() << 8);
+            final int bits = inputStream.readUnsignedByte(); // Offset 16
+            final int descriptor = inputStream.readUnsignedByte();
+
+            if(!canDecodeHeader(colourMapType, imageType, colourMapLength, colourMapBits,
+                                width, height, bits, descriptor))
             {
                 return false;
-            }
-            
-            inputStream.skipBytes(8);
-            int bits = inputStream.readUnsignedByte(); // Offset 16
-            if (bits != 1 && bits != 8 && bits != 16 && bits != 24 && bits != 32)
+            } /* else -- the header is plausible */
+
+            // the rest can only be checked if the length is known (which is
+            // not the case for a cached stream)
+            final long length = inputStream.length();
+            if(length < 0)
+                return true;
+            /* else -- the length is known */
+            final long available = length - start;
+
+            // a TGA 2.0 footer bounds the image data by the extension area, 
+            // the developer directory and the footer
+            long dataLength = available;
+            if(available >= (HEADER_CHECK_LENGTH + FOOTER_LENGTH))
             {
-                return false;
-            }
-            
-            /* else -- it's *possible* (though not known) that this is a TGA */
+                inputStream.seek(length - FOOTER_LENGTH);
+                final long extensionOffset = readUnsignedInt(inputStream);
+                final long developerOffset = readUnsignedInt(inputStream);
+                boolean hasFooter = true;
+                for(int i=0; (i<FOOTER_SIGNATURE.length) && hasFooter; i++)
+                    hasFooter = (inputStream.readByte() == FOOTER_SIGNATURE[i]);
+
+                if(hasFooter)
+                {
+                    dataLength = available - FOOTER_LENGTH;
+                    if(extensionOffset != 0)
+                        dataLength = Math.min(dataLength, extensionOffset);
+                    /* else -- there is no extension area */
+                    if(developerOffset != 0)
+                        dataLength = Math.min(dataLength, developerOffset);
+                    /* else -- there is no developer directory */
+                } /* else -- a TGA 1.0 file (or a 2.0 file without a footer) */
+            } /* else -- too short to have a footer */
 
-            return true;
+            return getMinimumLength(idLength, imageType, colourMapType, colourMapLength, colourMapBits,
+                                    width, height, bits) <= dataLength;
+        } catch(final EOFException eofe)
+        {
+            // too short to be a TGA
+            return false;
         } finally
         {            
             // reset so that the ImageInputStream is put back where it was
@@ -222,6 +274,206 @@ public class TGAImageReaderSpi extends ImageReaderSpi
         }
     }
 
+    /**
+     * <p>Checks the header of an {@link InputStream} if it supports 
+     * {@link InputStream#mark(int)}.  The stream is reset to where it 
+     * started.  The length of the stream is not known so only the header
+     * is checked.</p>
+     * 
+     * @param  inputStream the <code>InputStream</code> to check
+     * @return <code>true</code> if the stream could be a TGA
+     * @throws IOException if there is an I/O error while reading the stream
+     */
+    private boolean canDecodeInput(final InputStream inputStream)
+        throws IOException
+    {
+        // without a mark the stream cannot be put back where it was
+        if(!inputStream.markSupported())
+            return false;
+        /* else -- the stream can be reset */
+
+        inputStream.mark(HEADER_CHECK_LENGTH);
+        try
+        {
+            int colourMapType = 0, imageType = 0, colourMapLength = 0, colourMapBits = 0;
+            int width = 0, height = 0, bits = 0, descriptor = 0;
+            for(int i=0; i<HEADER_CHECK_LENGTH; i++)
+            {
+                final int data = inputStream.read();
+                if(data == -1)
+                    return false; // too short to be a TGA
+                /* else -- there is data */
+
+                switch(i)
+                {
+                    case 1:  colourMapType = data; break;
+                    case 2:  imageType = data; break;
+                    case 5:  colourMapLength = data; break;
+                    case 6:  colourMapLength |= data << 8; break;
+                    case 7:  colourMapBits = data; break;
+                    case 12: width = data; break;
+                    case 13: width |= data << 8; break;
+                    case 14: height = data; break;
+                    case 15: height |= data << 8; break;
+                    case 16: bits = data; break;
+                    case 17: descriptor = data; break;
+                    default: break;
+                }
+            }
+
+            return canDecodeHeader(colourMapType, imageType, colourMapLength, colourMapBits,
+                                   width, height, bits, descriptor);
+        } finally
+        {
+            // reset so that the InputStream is put back where it was
+            inputStream.reset();
+        }
+    }
+
+    /**
+     * <p>Checks the header fields that identify a TGA.</p>
+     * 
+     * @return <code>true</code> if the fields are those of a (supported) TGA
+     */
+    private boolean canDecodeHeader(final int colourMapType, final int imageType,
+                                    final int colourMapLength, final int colourMapBits, 
+                                    final int width, final int height,
+                                    final int bits, final int descriptor)
+    {
+        if (colourMapType != 0 && colourMapType != 1)
+        {
+            return false;
+        }
+            
+        if( (imageType != TGAConstants.NO_IMAGE) && 
+            (imageType != TGAConstants.COLOR_MAP) && 
+            (imageType != TGAConstants.TRUE_COLOR) &&
+            (imageType != TGAConstants.MONO) &&
+            (imageType != TGAConstants.RLE_TRUE_COLOR) &&
+            (imageType != TGAConstants.RLE_COLOR_MAP) &&
+            (imageType != TGAConstants.RLE_MONO) ) 
+        {
+            return false;
+        } 
+            
+        // Defined as being 15, 16, 24 or 32 but I saw 0 in reality.
+        if (colourMapBits != 0 &&
+            colourMapBits != 15 &&
+            colourMapBits != 16 &&
+            colourMapBits != 24 && 
+            colourMapBits != 32)
+        {
+            return false;
+        }
+            
+        if (bits != 1 && bits != 8 && bits != 16 && bits != 24 && bits != 32)
+        {
+            return false;
+        }
+
+        // the pixel depth must be one of the image type's and a color mapped
+        // image must have a color map (with entries of a known size)
+        switch(imageType)
+        {
+            case TGAConstants.COLOR_MAP:
+            case TGAConstants.RLE_COLOR_MAP:
+                if((bits != 8) && (bits != 16))
+                    return false;
+                /* else -- an index size */
+                if((colourMapType != 1) || (colourMapLength == 0) || (colourMapBits == 0))
+                    return false;
+                /* else -- there is a color map */
+                break;
+
+            case TGAConstants.TRUE_COLOR:
+            case TGAConstants.RLE_TRUE_COLOR:
+                if((bits != 16) && (bits != 24) && (bits != 32))
+                    return false;
+                /* else -- a true color size */
+                break;
+
+            case TGAConstants.MONO:
+            case TGAConstants.RLE_MONO:
+                if((bits != 1) && (bits != 8) && (bits != 16))
+                    return false;
+                /* else -- a monochrome size */
+                break;
+
+            default: // no image data
+                break;
+        }
+
+        // an image has pixels
+        if((imageType != TGAConstants.NO_IMAGE) && ((width == 0) || (height == 0)))
+            return false;
+        /* else -- there are pixels (or there is no image) */
+
+        // the alpha bits of the descriptor (bits 0-3) are at most a byte and
+        // fewer than the bits per pixel and the interleaving (bits 6-7) of 
+        // TGA 1.0 is never the reserved value
+        final int alphaBits = descriptor & 0x0F;
+        if((alphaBits > 8) || ((alphaBits > 0) && (alphaBits >= bits)))
+            return false;
+        /* else -- the alpha is plausible */
+        if((descriptor & 0xC0) == 0xC0)
+            return false;
+            
+        /* else -- it's *possible* (though not known) that this is a TGA */
+
+        return true;
+    }
+
+    /**
+     * <p>Retrieves the smallest possible length of a TGA with the specified
+     * header fields:  the header, the ID, the color map and the pixel data
+     * (uncompressed or as the fewest RLE packets of 128 pixels).</p>
+     *
+     * @return the smallest possible length in <code>byte</code>s
+     */
+    private static long getMinimumLength(final int idLength, final int imageType,
+                                         final int colourMapType, final int colourMapLength,
+                                         final int colourMapBits, final int width,
+                                         final int height, final int bits)
+    {
+        long length = HEADER_CHECK_LENGTH + idLength;
+        if(colourMapType == 1)
+            length += (long)colourMapLength * ((colourMapBits + 7) / 8);
+        /* else -- there is no color map */
+
+        final long pixelCount = (long)width * height;
+        final int bytesPerPixel = (bits + 7) / 8;
+        switch(imageType)
+        {
+            case TGAConstants.COLOR_MAP:
+            case TGAConstants.TRUE_COLOR:
+            case TGAConstants.MONO:
+                length += (bits == 1) ? ((pixelCount + 7) / 8) : (pixelCount * bytesPerPixel);
+                break;
+
+            case TGAConstants.RLE_COLOR_MAP:
+            case TGAConstants.RLE_TRUE_COLOR:
+            case TGAConstants.RLE_MONO:
+                // each packet is a count and at least one pixel value
+                length += ((pixelCount + 127) / 128) * (1 + bytesPerPixel);
+                break;
+
+            default: // no image data
+                break;
+        }
+        return length;
+    }
+
+    /**
+     * <p>Reads a little endian unsigned <code>int</code> a <code>byte</code>
+     * at a time (so that the byte order of the stream is not changed).</p>
+     */
+    private static long readUnsignedInt(final ImageInputStream inputStream)
+        throws IOException
+    {
+        return inputStream.readUnsignedByte() | (inputStream.readUnsignedByte() << 8) |
+               (inputStream.readUnsignedByte() << 16) | ((long)inputStream.readUnsignedByte() << 24);
+    }
+
     /**
      * @see ImageReaderSpi#createReaderInstance(Object)
      */
@@ -0,0 +1,602 @@
+package com.realityinteractive.imageio.tga;
+
+/*
+ * TGAIncrementalDecoder.java
+ * Copyright (c) 2003 Reality Interactive, Inc.
+ *   See bottom of file for license and warranty information.
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * <p>A push-based TGA decoder.  Rather than reading from an
+ * {@link ImageInputStream} the data is given to the decoder with
+ * {@link #feed(ByteBuffer)} as it arrives (for example from a non-blocking
+ * network connection) and each row is passed to a {@link Listener} as soon
+ * as it is complete.  The decoding overlaps the transfer and the TGA is
+ * never buffered in full.</p>
+ *
+ * <p>The decoder is a state machine over the header, the image ID, the
+ * color map and the pixel data.  The RLE packet state and the position in
+ * the current row are kept between calls so the data may be split at any
+ * <code>byte</code>.  Only the few <code>byte</code>s of a pixel (or of a
+ * RLE packet header and its pixel) that are split between two calls are
+ * copied.  The pixels are decoded from the array of a heap buffer so the
+ * data of a buffer without an accessible array (a direct or read-only 
+ * buffer such as those of NIO channels) is copied into a heap buffer a
+ * chunk at a time.</p>
+ *
+ * <p>The rows are in the memory layout of an image created from
+ * {@link #getImageTypeSpecifier()} (the same as {@link TGAImageReader}):
+ * interleaved BGR(A) or grey (alpha) <code>byte</code>s.  Row 
+ * <code>y</code> can be copied into the 
+ * {@link java.awt.image.DataBufferByte} of such an image at 
+ * <code>y * row.length</code>.  The rows are passed in the order that they
+ * are stored in the TGA so the row index is bottom-to-top for bottom-to-top
+ * images.</p>
+ *
+ * <p>The strict mode and the limits on the number of pixels and
+ * <code>byte</code>s of a {@link TGAImageReadParam} are honored.  Its other
+ * settings are ignored.</p>
+ *
+ * <p>A decoder decodes a single image and is not thread-safe.</p>
+ */
+public class TGAIncrementalDecoder
+{
+    /**
+     * <p>Receives the decoded image from a {@link TGAIncrementalDecoder}.</p>
+     */
+    public interface Listener
+    {
+        /**
+         * <p>Called once the header (and color map) have been decoded.  The
+         * size and type of the image are available from the decoder.</p>
+         *
+         * @param  decoder the decoder
+         */
+        void headerDecoded(TGAIncrementalDecoder decoder);
+
+        /**
+         * <p>Called when a row has been decoded.  The row is only valid for
+         * the duration of the call.</p>
+         *
+         * @param  decoder the decoder
+         * @param  y the index of the row in the image (<code>0</code> is the
+         *         top row)
+         * @param  row the pixels of the row in the layout of
+         *         {@link TGAIncrementalDecoder#getImageTypeSpecifier()}
+         */
+        void rowDecoded(TGAIncrementalDecoder decoder, int y, byte[] row);
+    }
+
+    // =========================================================================
+    /**
+     * <p>The size of the fixed part of the header in <code>byte</code>s.</p>
+     */
+    private static final int HEADER_SIZE = 18;
+
+    /**
+     * <p>The maximum size of the image ID in <code>byte</code>s.</p>
+     */
+    private static final int MAXIMUM_ID_LENGTH = 255;
+
+    /**
+     * <p>The size of the chunks in which the data of a buffer without an
+     * accessible array is copied.</p>
+     */
+    private static final int COPY_SIZE = 8192;
+
+    /**
+     * <p>The states of the decoder.</p>
+     */
+    private static final int STATE_HEADER = 0;
+    private static final int STATE_COLOR_MAP = 1;
+    private static final int STATE_PIXELS = 2;
+    private static final int STATE_COMPLETE = 3;
+
+    // =========================================================================
+    /**
+     * <p>The listener to which the image is passed.</p>
+     */
+    private final Listener listener;
+
+    /**
+     * <p>If <code>true</code> then malformed input fails the decoding.</p>
+     */
+    private final boolean strict;
+
+    /**
+     * <p>The maximum number of pixels that the image may have.</p>
+     */
+    private final long maximumPixelCount;
+
+    /**
+     * <p>The maximum number of <code>byte</code>s that may be consumed.</p>
+     */
+    private final long maximumBytesRead;
+
+    /**
+     * <p>The current state.</p>
+     */
+    private int state = STATE_HEADER;
+
+    /**
+     * <p>The number of <code>byte</code>s that have been consumed.</p>
+     */
+    private long bytesRead;
+
+    /**
+     * <p>The header and image ID as they are accumulated.  This is released
+     * once the header has been decoded.</p>
+     */
+    private byte[] headerData = new byte[HEADER_SIZE + MAXIMUM_ID_LENGTH];
+
+    /**
+     * <p>The number of <code>byte</code>s in <code>headerData</code> or in
+     * <code>colorMapData</code> depending on the state.</p>
+     */
+    private int dataLength;
+
+    /**
+     * <p>The color map entries as they are accumulated.</p>
+     */
+    private byte[] colorMapData;
+
+    /**
+     * <p>The decoded header.  This is <code>null</code> until the header has
+     * been decoded.</p>
+     */
+    private TGAHeader header;
+
+    /**
+     * <p>The type of the decoded image.</p>
+     */
+    private ImageTypeSpecifier imageTypeSpecifier;
+
+    /**
+     * <p>The decoder of the pixel data.  This keeps the RLE packet state.</p>
+     */
+    private TGAPixelDecoder decoder;
+
+    /**
+     * <p>The <code>byte</code>s of a pixel (or of a RLE packet header and
+     * its pixel) that are split between two calls to {@link #feed(ByteBuffer)}.
+     * This is always in its write mode between calls.</p>
+     */
+    private ByteBuffer carry;
+
+    /**
+     * <p>The heap buffer into which the data of a buffer without an 
+     * accessible array is copied.  This is <code>null</code> until it is
+     * first needed.</p>
+     */
+    private ByteBuffer copy;
+
+    /**
+     * <p>The current row, the number of pixels that have been decoded into
+     * it and the index of the row in the pixel data.</p>
+     */
+    private byte[] row;
+    private int rowPixels;
+    private int rowIndex;
+
+    /**
+     * <p>The number of <code>byte</code>s per destination pixel.</p>
+     */
+    private int bytesPerPixel;
+
+    // =========================================================================
+    /**
+     * <p>Constructs a lenient decoder with the default limits.</p>
+     *
+     * @param  listener the listener to which the image is passed
+     */
+    public TGAIncrementalDecoder(final Listener listener)
+    {
+        this(listener, null);
+    }
+
+    /**
+     * <p>Constructs a decoder with the mode and the limits of the specified
+     * param.</p>
+     *
+     * @param  listener the listener to which the image is passed
+     * @param  param the <code>TGAImageReadParam</code> whose mode and limits
+     *         are used or <code>null</code> for the defaults
+     */
+    public TGAIncrementalDecoder(final Listener listener,
+                                 final TGAImageReadParam param)
+    {
+        if(listener == null)
+            throw new IllegalArgumentException("The listener cannot be null."); // FIXME:  localize
+        /* else -- there is a listener */
+
+        this.listener = listener;
+        if(param != null)
+        {
+            strict = param.isStrict();
+            maximumPixelCount = param.getMaximumPixelCount();
+            maximumBytesRead = param.getMaximumBytesRead();
+        } else /* the defaults are used */
+        {
+            strict = false;
+            maximumPixelCount = TGAImageReadParam.DEFAULT_MAXIMUM_PIXEL_COUNT;
+            maximumBytesRead = TGAImageReadParam.DEFAULT_MAXIMUM_BYTES_READ;
+        }
+    }
+
+    /**
+     * <p>Decodes as much of the data as possible.  All of the remaining
+     * <code>byte</code>s are consumed unless the image is completed in which
+     * case the position is left after the last <code>byte</code> of the
+     * image.</p>
+     *
+     * @param  data the next <code>byte</code>s of the TGA
+     * @throws IOException if the TGA is malformed, is not supported or
+     *         exceeds the limits
+     */
+    public void feed(final ByteBuffer data)
+        throws IOException
+    {
+        if(data.hasArray())
+            feedArray(data);
+        else /* a direct or read-only buffer */
+            feedCopy(data);
+    }
+
+    /**
+     * <p>Decodes as much of the data of a buffer without an accessible array
+     * as possible by copying it into a heap buffer a chunk at a time.  The
+     * position of the data is advanced by the number of <code>byte</code>s
+     * that were consumed from the copy.</p>
+     */
+    private void feedCopy(final ByteBuffer data)
+        throws IOException
+    {
+        if(copy == null)
+            copy = ByteBuffer.allocate(COPY_SIZE);
+        /* else -- the copy was already allocated */
+
+        while(data.hasRemaining() && (state != STATE_COMPLETE))
+        {
+            // casts are workaround for https://jira.mongodb.org/browse/JAVA-2559
+            final ByteBuffer chunk = data.duplicate();
+            ((Buffer)chunk).limit(chunk.position() + Math.min(data.remaining(), copy.capacity()));
+            ((Buffer)copy).clear();
+            copy.put(chunk);
+            ((Buffer)copy).flip();
+
+            feedArray(copy);
+            ((Buffer)data).position(data.position() + copy.position());
+        }
+    }
+
+    /**
+     * <p>Decodes as much of the data of a buffer with an accessible array as
+     * possible (see {@link #feed(ByteBuffer)}).</p>
+     */
+    private void feedArray(final ByteBuffer data)
+        throws IOException
+    {
+        final int start = data.position();
+        try
+        {
+            while(data.hasRemaining() && (state != STATE_COMPLETE))
+            {
+                switch(state)
+                {
+                    case STATE_HEADER:
+                        feedHeader(data);
+                        break;
+                    case STATE_COLOR_MAP:
+                        feedColorMap(data);
+                        break;
+                    case STATE_PIXELS:
+                    default:
+                        feedPixels(data);
+                        break;
+                }
+            }
+        } finally
+        {
+            bytesRead += data.position() - start;
+        }
+
+        if((state != STATE_COMPLETE) && (bytesRead > maximumBytesRead))
+            throw new IOException("The maximum number of bytes that may be read has been exceeded (" + maximumBytesRead + ")."); // FIXME:  localize
+        /* else -- the data is within the limit */
+    }
+
+    /**
+     * <p>Signals that there is no more data.  If the image is not complete
+     * then decoding fails if strict otherwise the missing rows are
+     * zero-filled and passed to the listener.</p>
+     *
+     * @throws IOException if the header is incomplete or if decoding is
+     *         strict and the image is incomplete or an RLE packet runs past
+     *         the end of the image
+     */
+    public void finish()
+        throws IOException
+    {
+        if(state == STATE_COMPLETE)
+            return;
+        /* else -- the image is incomplete */
+
+        if(header == null)
+            throw new IOException("The header is truncated."); // FIXME:  localize
+        /* else -- the header was decoded */
+
+        if(strict)
+            throw new IOException("The TGA is truncated (" + rowIndex + " of " + header.getHeight() + " rows were read)."); // FIXME:  localize
+        /* else -- lenient so zero-fill */
+
+        // a truncated color map leaves the missing entries zero
+        if(state == STATE_COLOR_MAP)
+            startPixels();
+        /* else -- the pixel data was started */
+
+        while(state != STATE_COMPLETE)
+        {
+            Arrays.fill(row, rowPixels * bytesPerPixel, row.length, (byte)0);
+            rowPixels = header.getWidth();
+            completeRow();
+        }
+    }
+
+    /**
+     * <p>Retrieves if the image has been completely decoded.</p>
+     */
+    public boolean isComplete()
+    {
+        return (state == STATE_COMPLETE);
+    }
+
+    /**
+     * <p>Retrieves the decoded header or <code>null</code> if the header has
+     * not been decoded.</p>
+     */
+    public TGAHeader getHeader()
+    {
+        return header;
+    }
+
+    /**
+     * <p>Retrieves the width of the image or <code>-1</code> if the header
+     * has not been decoded.</p>
+     */
+    public int getWidth()
+    {
+        return (header == null) ? -1 : header.getWidth();
+    }
+
+    /**
+     * <p>Retrieves the height of the image or <code>-1</code> if the header
+     * has not been decoded.</p>
+     */
+    public int getHeight()
+    {
+        return (header == null) ? -1 : header.getHeight();
+    }
+
+    /**
+     * <p>Retrieves the type of the image (the layout of the rows) or
+     * <code>null</code> if the header has not been decoded.</p>
+     */
+    public ImageTypeSpecifier getImageTypeSpecifier()
+    {
+        return imageTypeSpecifier;
+    }
+
+    /**
+     * <p>Retrieves the number of <code>byte</code>s that have been
+     * consumed.</p>
+     */
+    public long getBytesRead()
+    {
+        return bytesRead;
+    }
+
+    // =========================================================================
+    /**
+     * <p>Accumulates the header and image ID.  Once they are complete the
+     * header is decoded.</p>
+     */
+    private void feedHeader(final ByteBuffer data)
+        throws IOException
+    {
+        // the ID length is the first byte of the header
+        final int length = (dataLength < HEADER_SIZE) ? HEADER_SIZE : HEADER_SIZE + (headerData[0] & 0xFF);
+        final int count = Math.min(length - dataLength, data.remaining());
+        data.get(headerData, dataLength, count);
+        dataLength += count;
+        if(dataLength < length)
+            return;
+        /* else -- the header (and ID) are complete */
+
+        if(dataLength == HEADER_SIZE && (headerData[0] != 0))
+            return; // the ID follows
+        /* else -- the header and ID are complete */
+
+        // decode the header as TGAImageReader does
+        final ImageInputStream inputStream = new TGAForwardOnlyInputStream(new ByteArrayInputStream(headerData, 0, dataLength));
+        inputStream.setByteOrder(ByteOrder.LITTLE_ENDIAN);
+        header = new TGAHeader(inputStream);
+        headerData = null;
+
+        try
+        {
+            imageTypeSpecifier = TGAImageReader.getImageTypeSpecifier(header);
+        } catch(final IllegalArgumentException iae)
+        {
+            throw new IOException(iae.getMessage());
+        }
+
+        final long pixelCount = (long)header.getWidth() * header.getHeight();
+        if(pixelCount > maximumPixelCount)
+            throw new IOException("The image has more than the maximum number of pixels (" + header.getWidth() + " x " + header.getHeight() + " > " + maximumPixelCount + ")."); // FIXME:  localize
+        /* else -- the pixel count is acceptable */
+
+        // the color map (if any) immediately follows
+        dataLength = 0;
+        if(header.hasColorMap())
+        {
+            colorMapData = new byte[header.getPixelDataOffset() - header.getColorMapDataOffset()];
+            state = STATE_COLOR_MAP;
+            if(colorMapData.length > 0)
+                return;
+            /* else -- the color map is empty */
+        } /* else -- there is no color map */
+
+        startPixels();
+    }
+
+    /**
+     * <p>Accumulates the color map entries.</p>
+     */
+    private void feedColorMap(final ByteBuffer data)
+    {
+        final int count = Math.min(colorMapData.length - dataLength, data.remaining());
+        data.get(colorMapData, dataLength, count);
+        dataLength += count;
+        if(dataLength < colorMapData.length)
+            return;
+        /* else -- the color map is complete */
+
+        startPixels();
+    }
+
+    /**
+     * <p>Creates the pixel decoder (and the color map) and notifies the
+     * listener that the header is decoded.</p>
+     */
+    private void startPixels()
+    {
+        final int[] colorMap = (colorMapData == null) ? null : TGAPixelDecoder.createColorMap(header, colorMapData);
+        colorMapData = null;
+
+        bytesPerPixel = imageTypeSpecifier.getSampleModel().getNumBands();
+        decoder = new TGAPixelDecoder(header, colorMap, bytesPerPixel,
+                                      false/*not packed*/, strict);
+        row = new byte[header.getWidth() * bytesPerPixel];
+
+        // a split pixel is always less than the minimum input so that and
+        // the minimum input for the following pixel fits
+        carry = ByteBuffer.allocate(2 * decoder.getMinimumInput());
+        carry.order(ByteOrder.LITTLE_ENDIAN);
+
+        state = STATE_PIXELS;
+        listener.headerDecoded(this);
+
+        // an empty image is complete
+        if((header.getWidth() == 0) || (header.getHeight() == 0))
+            state = STATE_COMPLETE;
+        /* else -- there are pixels to decode */
+    }
+
+    /**
+     * <p>Decodes the pixel data.  If part of a pixel was left over from the
+     * previous call then it is completed from the data first.</p>
+     */
+    private void feedPixels(final ByteBuffer data)
+        throws IOException
+    {
+        if(carry.position() > 0)
+        {
+            // complete the split pixel (or packet) in the carry
+            final int carried = carry.position();
+            final int count = Math.min(carry.remaining(), data.remaining());
+            // cast is workaround for https://jira.mongodb.org/browse/JAVA-2559
+            final int limit = data.limit();
+            ((Buffer)data).limit(data.position() + count);
+            carry.put(data);
+            ((Buffer)data).limit(limit);
+
+            ((Buffer)carry).flip();
+            decodeRows(carry);
+            final int consumed = carry.position();
+            if(consumed >= carried)
+            {
+                // the split pixel was decoded.  The rest of the carry is
+                // returned to the data.
+                ((Buffer)data).position(data.position() - carry.remaining());
+                ((Buffer)carry).clear();
+            } else /* more data is needed to complete the split pixel */
+            {
+                carry.compact();
+                return;
+            }
+        } /* else -- nothing was left over */
+
+        decodeRows(data);
+
+        // keep the part of a pixel that could not be decoded
+        if(state != STATE_COMPLETE)
+            carry.put(data);
+        /* else -- the rest of the data is not part of the image */
+    }
+
+    /**
+     * <p>Decodes rows from the data until the data is exhausted or the image
+     * is complete.</p>
+     */
+    private void decodeRows(final ByteBuffer data)
+        throws IOException
+    {
+        final int width = header.getWidth();
+        while(state != STATE_COMPLETE)
+        {
+            final int decoded = decoder.decode(data, row, rowPixels * bytesPerPixel, width - rowPixels);
+            rowPixels += decoded;
+            if(rowPixels == width)
+                completeRow();
+            else if(decoded == 0)
+                return; // more data is needed
+            /* else -- continue decoding the row */
+        }
+    }
+
+    /**
+     * <p>Passes the current row to the listener and moves to the next row.
+     * After the last row the image is complete.</p>
+     */
+    private void completeRow()
+        throws IOException
+    {
+        listener.rowDecoded(this, TGAImageReader.getDestinationRow(header, rowIndex), row);
+        rowPixels = 0;
+        rowIndex++;
+        if(rowIndex < header.getHeight())
+            return;
+        /* else -- the image is complete */
+
+        state = STATE_COMPLETE;
+        if(strict && decoder.hasPendingPacket())
+            throw new IOException("An RLE packet runs past the end of the image."); // FIXME:  localize
+        /* else -- the packets ended with the image or the excess is ignored */
+    }
+}
+// =============================================================================
+/*
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
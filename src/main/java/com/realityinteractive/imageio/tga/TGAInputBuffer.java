@@ -0,0 +1,261 @@
+package com.realityinteractive.imageio.tga;
+
+/*
+ * TGAInputBuffer.java
+ * Copyright (c) 2003 Reality Interactive, Inc.
+ *   See bottom of file for license and warranty information.
+ */
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * <p>The buffer through which the pixel data is read from an
+ * {@link ImageInputStream}.  The number of <code>byte</code>s that may be
+ * read is limited so that malformed input cannot cause unbounded work.</p>
+ *
+ * <p>The input is only read through {@link #read(byte[], int, int)} and 
+ * skipped through {@link #skipInput(long)} so a subclass may read ahead 
+ * (see {@link TGAReadAheadInputBuffer}).</p>
+ */
+class TGAInputBuffer
+{
+    /**
+     * <p>The <code>ImageInputStream</code> from which the data is read.</p>
+     */
+    private final ImageInputStream input;
+
+    /**
+     * <p>The buffer.  Its backing array is filled from the input.</p>
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * <p>The number of <code>byte</code>s that may still be read from the
+     * input.</p>
+     */
+    private long bytesAllowed;
+
+    /**
+     * <p>If <code>true</code> then the data that has been read is flushed 
+     * from the input (it will not be read again).</p>
+     */
+    private final boolean flush;
+
+    /**
+     * <p>The total number of <code>byte</code>s that have been loaded into
+     * the buffer.</p>
+     */
+    private long bytesLoadedTotal;
+
+    // =========================================================================
+    /**
+     * <p>Constructs an initially empty buffer of the specified size.</p>
+     *
+     * @param  input the <code>ImageInputStream</code> from which the data is
+     *         read
+     * @param  size the size of the buffer in <code>byte</code>s
+     * @param  bytesAllowed the maximum number of <code>byte</code>s that may
+     *         be read from the input
+     * @param  flush if <code>true</code> then the data that has been read
+     *         is flushed from the input
+     */
+    TGAInputBuffer(final ImageInputStream input, final int size,
+                   final long bytesAllowed, final boolean flush)
+    {
+        this.input = input;
+        this.bytesAllowed = bytesAllowed;
+        this.flush = flush;
+
+        buffer = ByteBuffer.allocate(size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        // Code that reads from buffer will check remaining limit and load more data if empty.
+        // Cast is workaround for https://jira.mongodb.org/browse/JAVA-2559
+        ((Buffer)buffer).limit(0);
+    }
+
+    /**
+     * <p>Retrieves the buffer from which the data is consumed.</p>
+     */
+    ByteBuffer getBuffer()
+    {
+        return buffer;
+    }
+
+    /**
+     * <p>Retrieves the number of <code>byte</code>s that have been consumed
+     * from the buffer.  Added to the position of the input when the buffer
+     * was created this is the position in the input of the next
+     * <code>byte</code> in the buffer.</p>
+     */
+    long getBytesConsumed()
+    {
+        return bytesLoadedTotal - buffer.remaining();
+    }
+
+    /**
+     * <p>Ensures that at least <code>minRemaining</code> <code>byte</code>s
+     * are remaining in the buffer.  If there are fewer then the remaining
+     * <code>byte</code>s are moved to the start of the buffer and the rest of
+     * the buffer is filled from the input.  Reads are repeated until the
+     * buffer is full or the end of the input is reached so that each refill
+     * results in as few large sequential reads as possible.</p>
+     *
+     * @param minRemaining the refill only occurs if there are less than this remaining bytes
+     *                     in the buffer.
+     * @return             true if input signaled EOF and therefore no bytes could be read
+     * @throws IOException if there is an I/O error while reading the input or
+     *                     if more than the allowed number of bytes would be read
+     */
+    boolean fill(final int minRemaining)
+        throws IOException
+    {
+        final int remaining = buffer.remaining();
+        if (remaining < minRemaining)
+        {
+            if (bytesAllowed <= 0)
+                throw new IOException("The maximum number of bytes that may be read has been exceeded."); // FIXME:  localize
+            /* else -- more bytes may be read */
+
+            // copy remaining bytes from end to start of buffer, then fill new data after remaining
+            final byte[] array = buffer.array();
+            if (remaining != 0)
+                buffer.get(array, 0, remaining);
+            /* else -- the entire buffer is filled with new data */
+
+            final int length = (int)Math.min(array.length, remaining + bytesAllowed);
+            final int bytesLoaded = read(array, remaining, length - remaining);
+            bytesAllowed -= bytesLoaded;
+            bytesLoadedTotal += bytesLoaded;
+
+            // cast is workaround for https://jira.mongodb.org/browse/JAVA-2559
+            ((Buffer)buffer).position(0);
+            ((Buffer)buffer).limit(remaining+bytesLoaded);
+            return (bytesLoaded == 0);
+        }
+        return false;
+    }
+
+    /**
+     * <p>Skips up to <code>byteCount</code> <code>byte</code>s.  Those that
+     * are in the buffer are passed over and the rest are skipped in the 
+     * input (see {@link #skipInput(long)}) without being loaded into the
+     * buffer.  No more than the allowed number of <code>byte</code>s are
+     * skipped in the input.</p>
+     *
+     * @return the number of <code>byte</code>s that were skipped.  This is
+     *         less than <code>byteCount</code> if the end of the input or
+     *         the number of <code>byte</code>s that may be read is reached.
+     * @throws IOException if there is an I/O error while skipping the 
+     *         input
+     */
+    long skip(final long byteCount)
+        throws IOException
+    {
+        final int buffered = (int)Math.min(buffer.remaining(), byteCount);
+        // cast is workaround for https://jira.mongodb.org/browse/JAVA-2559
+        ((Buffer)buffer).position(buffer.position() + buffered);
+        if(buffered == byteCount)
+            return byteCount;
+        /* else -- the rest is skipped in the input */
+
+        final long skipped = skipInput(Math.min(byteCount - buffered, bytesAllowed));
+        bytesAllowed -= skipped;
+        bytesLoadedTotal += skipped;
+        return buffered + skipped;
+    }
+
+    /**
+     * <p>Skips up to <code>byteCount</code> <code>byte</code>s of the input
+     * by seeking forward (the data that is skipped is flushed from the input
+     * if requested).  If the length of the input is not known then the
+     * input may be sought past its end in which case the next read finds
+     * the end of the input.</p>
+     *
+     * @return the number of <code>byte</code>s that were skipped
+     * @throws IOException if there is an I/O error while seeking
+     */
+    long skipInput(final long byteCount)
+        throws IOException
+    {
+        final long position = input.getStreamPosition();
+        final long length = input.length();
+        final long count;
+        if(length < 0)
+            count = byteCount;
+        else /* the input ends at its length */
+            count = Math.max(0L, Math.min(byteCount, length - position));
+        input.seek(position + count);
+
+        // allow a caching input to discard what has been skipped
+        if(flush)
+            input.flushBefore(position + count);
+        /* else -- the data may be read again */
+
+        return count;
+    }
+
+    /**
+     * <p>Reads up to <code>length</code> <code>byte</code>s from the input
+     * into the array.  Reads are repeated until <code>length</code>
+     * <code>byte</code>s are read or the end of the input is reached.  The
+     * data that has been read is then flushed from the input (if 
+     * requested).</p>
+     *
+     * @return the number of <code>byte</code>s that were read
+     * @throws IOException if there is an I/O error while reading the input
+     */
+    int read(final byte[] array, final int offset, final int length)
+        throws IOException
+    {
+        int bytesLoaded = 0;
+        while (bytesLoaded < length)
+        {
+            final int count = input.read(array, offset + bytesLoaded, length - bytesLoaded);
+            if (count == -1)
+                break;
+            /* else -- more data may be available */
+            bytesLoaded += count;
+        }
+
+        // allow a caching input to discard what has been read
+        if (flush)
+            input.flushBefore(input.getStreamPosition());
+        /* else -- the data may be read again */
+
+        return bytesLoaded;
+    }
+
+    /**
+     * <p>Releases the buffer once the pixel data has been decoded (or the
+     * decoding has failed).  The input is not used after this returns.</p>
+     *
+     * @throws IOException if there is an I/O error while releasing the 
+     *         buffer
+     */
+    void close()
+        throws IOException
+    {
+        // nothing to release
+    }
+}
+// =============================================================================
+/*
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
@@ -0,0 +1,243 @@
+package com.realityinteractive.imageio.tga;
+
+/*
+ * TGAMipmapBuilder.java
+ * Copyright (c) 2003 Reality Interactive, Inc.
+ *   See bottom of file for license and warranty information.
+ */
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * <p>Builds the levels of a mipmap chain from the rows of the image as they
+ * are decoded.  Each row is written to the first level and accumulated into
+ * the second.  Once the pair of rows that a row of the second level
+ * averages has been accumulated that row is written and is itself
+ * accumulated into the third level and so on so each level is built from
+ * the level above it without it being read again.</p>
+ *
+ * <p>A level is half the width and height of the level above it (rounded
+ * down but at least one pixel).  Each pixel is the average of the 2 x 2
+ * block of pixels above it.  If the size of the level above is odd then its
+ * last column (row) is averaged into the last column (row) so every pixel
+ * contributes.</p>
+ *
+ * <p>The rows are given in the order of the pixel data.  If the image is
+ * bottom-to-top then the rows of each level are written bottom-to-top so
+ * that the levels are top-to-bottom.</p>
+ */
+final class TGAMipmapBuilder implements TGAImageReader.RowConsumer
+{
+    /**
+     * <p>The number of samples per pixel.</p>
+     */
+    private final int numberOfBands;
+
+    /**
+     * <p>If <code>true</code> then the rows are given bottom-to-top.</p>
+     */
+    private final boolean isBottomToTop;
+
+    /**
+     * <p>The width and height of each level.</p>
+     */
+    private final int[] widths, heights;
+
+    /**
+     * <p>The samples of each level.  Position zero is the first sample of
+     * the level.</p>
+     */
+    private final ByteBuffer[] levels;
+
+    /**
+     * <p>The sums of the samples of the row that is being accumulated for
+     * each level (but the first).</p>
+     */
+    private final int[][] accumulators;
+
+    /**
+     * <p>The number of pixels that are averaged horizontally into each pixel
+     * of each level (but the first).</p>
+     */
+    private final int[][] columnCounts;
+
+    /**
+     * <p>The averaged row of each level (but the first).</p>
+     */
+    private final byte[][] rows;
+
+    /**
+     * <p>The number of rows that have been written to each level and the
+     * number of rows that have been accumulated for each level.</p>
+     */
+    private final int[] rowsWritten, rowsAccumulated;
+
+    // =========================================================================
+    /**
+     * <p>Constructs a builder of the specified levels.</p>
+     *
+     * @param  width the width of the image
+     * @param  height the height of the image
+     * @param  numberOfBands the number of samples per pixel
+     * @param  isBottomToTop if <code>true</code> then the rows are given
+     *         bottom-to-top
+     * @param  levels the samples of each level (see {@link #getLevelSize(int, int)}).
+     *         Each level is written from its position zero.
+     */
+    TGAMipmapBuilder(final int width, final int height, final int numberOfBands,
+                     final boolean isBottomToTop, final ByteBuffer[] levels)
+    {
+        this.numberOfBands = numberOfBands;
+        this.isBottomToTop = isBottomToTop;
+        this.levels = levels;
+
+        final int levelCount = levels.length;
+        widths = new int[levelCount];
+        heights = new int[levelCount];
+        accumulators = new int[levelCount][];
+        columnCounts = new int[levelCount][];
+        rows = new byte[levelCount][];
+        rowsWritten = new int[levelCount];
+        rowsAccumulated = new int[levelCount];
+        for(int level=0; level<levelCount; level++)
+        {
+            widths[level] = getLevelSize(width, level);
+            heights[level] = getLevelSize(height, level);
+            if(level == 0)
+                continue;
+            /* else -- the level is averaged */
+
+            accumulators[level] = new int[widths[level] * numberOfBands];
+            rows[level] = new byte[widths[level] * numberOfBands];
+            columnCounts[level] = new int[widths[level]];
+            for(int x=0; x<widths[level - 1]; x++)
+                columnCounts[level][getAveragedIndex(x, widths[level])]++;
+        }
+    }
+
+    /**
+     * <p>Retrieves the number of levels in a chain of at most the specified
+     * number of levels.  A full chain ends with a 1 x 1 level.</p>
+     *
+     * @param  width the width of the image
+     * @param  height the height of the image
+     * @param  maximumLevelCount the maximum number of levels
+     * @return the number of levels
+     */
+    static int getLevelCount(final int width, final int height,
+                             final int maximumLevelCount)
+    {
+        int levelCount = 1;
+        for(int size=Math.max(width, height); size>1; size>>=1)
+            levelCount++;
+        return Math.min(levelCount, maximumLevelCount);
+    }
+
+    /**
+     * <p>Retrieves the width (height) of a level.</p>
+     *
+     * @param  size the width (height) of the image
+     * @param  level the level (zero is the image)
+     * @return the width (height) of the level
+     */
+    static int getLevelSize(final int size, final int level)
+    {
+        return Math.max(1, size >> level);
+    }
+
+    /**
+     * <p>Adds the next row of the image.</p>
+     *
+     * @param  row the decoded row
+     * @return <code>true</code> (every row is wanted)
+     * @see TGAImageReader.RowConsumer#addRow(byte[])
+     */
+    public boolean addRow(final byte[] row)
+    {
+        addRow(0, row);
+        return true;
+    }
+
+    // =========================================================================
+    /**
+     * <p>Writes the next row of the specified level and accumulates it into
+     * the next level.</p>
+     */
+    private void addRow(final int level, final byte[] row)
+    {
+        final int y = rowsWritten[level]++;
+        final int rowSize = widths[level] * numberOfBands;
+        final int destinationY = isBottomToTop ? (heights[level] - y - 1) : y;
+        final ByteBuffer samples = levels[level];
+        // cast is workaround for https://jira.mongodb.org/browse/JAVA-2559
+        ((Buffer)samples).position(destinationY * rowSize);
+        samples.put(row, 0, rowSize);
+
+        final int nextLevel = level + 1;
+        if(nextLevel == levels.length)
+            return;
+        /* else -- there is a level below */
+
+        // accumulate the row
+        final int[] accumulator = accumulators[nextLevel];
+        final int nextWidth = widths[nextLevel];
+        for(int x=0; x<widths[level]; x++)
+        {
+            final int sourceIndex = x * numberOfBands;
+            final int destinationIndex = getAveragedIndex(x, nextWidth) * numberOfBands;
+            for(int band=0; band<numberOfBands; band++)
+                accumulator[destinationIndex + band] += row[sourceIndex + band] & 0xFF;
+        }
+        rowsAccumulated[nextLevel]++;
+
+        // the row of the next level is complete if this is the last row that
+        // is averaged into it
+        final int nextHeight = heights[nextLevel];
+        if((y + 1 < heights[level]) && 
+           (getAveragedIndex(y + 1, nextHeight) == getAveragedIndex(y, nextHeight)))
+        {
+            return;
+        } /* else -- the row is complete */
+
+        final byte[] averagedRow = rows[nextLevel];
+        final int[] counts = columnCounts[nextLevel];
+        for(int x=0; x<nextWidth; x++)
+        {
+            final int count = counts[x] * rowsAccumulated[nextLevel];
+            final int index = x * numberOfBands;
+            for(int band=0; band<numberOfBands; band++)
+                averagedRow[index + band] = (byte)((accumulator[index + band] + (count / 2)) / count);
+        }
+        Arrays.fill(accumulator, 0);
+        rowsAccumulated[nextLevel] = 0;
+
+        addRow(nextLevel, averagedRow);
+    }
+
+    /**
+     * <p>Retrieves the index of the pixel (row) of a level that the specified
+     * pixel (row) of the level above is averaged into.</p>
+     */
+    private static int getAveragedIndex(final int index, final int size)
+    {
+        return Math.min(index >> 1, size - 1);
+    }
+}
+// =============================================================================
+/*
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
@@ -0,0 +1,792 @@
+package com.realityinteractive.imageio.tga;
+
+/*
+ * TGAPixelDecoder.java
+ * Copyright (c) 2003 Reality Interactive, Inc.
+ *   See bottom of file for license and warranty information.
+ */
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * <p>Converts TGA pixel data into the interleaved BGR(A) or grey (alpha)
+ * samples of the destination raster.  Conversion is done a run of pixels
+ * (typically a whole row) at a time rather than per pixel.</p>
+ *
+ * <p>Since the destination layout is the same as the TGA layout for 8 and 16
+ * bit monochrome and 24 and 32 bit true color, those pixels are bulk copied.
+ * The other formats are expanded by simple counted loops over the run.</p>
+ *
+ * <p>For RLE compressed images the packet state is kept between calls to
+ * {@link #decode(ByteBuffer, byte[], int, int)} so that packets may span
+ * rows (and buffer refills).  The pixel of a run length packet is converted
+ * once and then filled into the destination.  The pixels of a raw packet 
+ * are converted in bulk like uncompressed pixels.</p>
+ */
+// NOTE:  the loops are kept free of per-pixel branches on the format so that
+//        they are candidates for the JIT's auto-vectorization
+final class TGAPixelDecoder
+{
+    // =========================================================================
+    // source pixel formats
+    /**
+     * <p>The source pixels are in the destination layout (8 and 16 bit
+     * monochrome and 24 and 32 bit true color).</p>
+     */
+    private static final int FORMAT_COPY = 0;
+
+    /**
+     * <p>1 bit monochrome where each bit is expanded to a grey sample.</p>
+     */
+    private static final int FORMAT_MONO_1 = 1;
+
+    /**
+     * <p>5-5-5 RGB that is expanded to BGR.</p>
+     */
+    private static final int FORMAT_RGB_555 = 2;
+
+    /**
+     * <p>8 bit grey scale true color where each sample is replicated to BGR.</p>
+     */
+    private static final int FORMAT_GREY_TO_BGR = 3;
+
+    /**
+     * <p>8 bit color map indices that are looked up in the color map.</p>
+     */
+    private static final int FORMAT_COLOR_MAP = 4;
+
+    /**
+     * <p>32 bit true color (16 bit monochrome) whose alpha is dropped so that
+     * only the BGR (grey) samples are copied.</p>
+     */
+    private static final int FORMAT_DROP_ALPHA = 5;
+
+    /**
+     * <p>32 bit true color (16 bit monochrome) whose BGR (grey) samples are
+     * premultiplied by the alpha as they are copied.</p>
+     */
+    private static final int FORMAT_PREMULTIPLY = 6;
+
+    // =========================================================================
+    /**
+     * <p>The 5 bit to 8 bit sample lookup.  The 5 bits are shifted up and the
+     * low bits are approximated so that the 5 bit maximum maps to the 8 bit
+     * maximum (0xFF).</p>
+     */
+    static final byte[] FIVE_TO_EIGHT_BITS = new byte[32];
+    static
+    {
+        for(int i=0; i<FIVE_TO_EIGHT_BITS.length; i++)
+            FIVE_TO_EIGHT_BITS[i] = (byte)((i << 3) + (i >>> 2));
+    }
+
+    /**
+     * <p>The premultiplication lookup.  Sample <code>s</code> premultiplied
+     * by alpha <code>a</code> (rounded) is at <code>(a << 8) | s</code>.</p>
+     */
+    private static final byte[] PREMULTIPLY = new byte[256 * 256];
+    static
+    {
+        for(int alpha=0; alpha<256; alpha++)
+        {
+            for(int sample=0; sample<256; sample++)
+                PREMULTIPLY[(alpha << 8) | sample] = (byte)(((sample * alpha) + 127) / 255);
+        }
+    }
+
+    /**
+     * <p>The 1 bit to grey sample lookup.  The 8 grey samples (<code>0x00</code>
+     * or <code>0xFF</code>) of source <code>byte</code> <code>b</code> are
+     * at <code>b * 8</code> (most significant bit first).</p>
+     */
+    private static final byte[] BITS_TO_GREY = new byte[256 * 8];
+    static
+    {
+        for(int b=0; b<256; b++)
+        {
+            for(int bit=0; bit<8; bit++)
+                BITS_TO_GREY[(b * 8) + bit] = (byte)-((b >>> (7 - bit)) & 1); // 1 -> 0xFF
+        }
+    }
+
+    // =========================================================================
+    /**
+     * <p>The source pixel format (one of the <code>FORMAT_</code> constants).</p>
+     */
+    private final int format;
+
+    /**
+     * <p>The number of <code>byte</code>s per source pixel.  For 1 bit
+     * monochrome this is <code>1</code> (for 8 pixels).</p>
+     */
+    private final int sourceBytesPerPixel;
+
+    /**
+     * <p>The number of <code>byte</code>s (samples) per destination pixel.</p>
+     */
+    private final int destinationBytesPerPixel;
+
+    /**
+     * <p>The color map or <code>null</code> if there is no color map.  It is
+     * indexed by the (8 bit) pixel value and each entry is packed as
+     * <code>red | green << 8 | blue << 16</code>.  Entries that are not in
+     * the color map are zero.</p>
+     */
+    private final int[] colorMap;
+
+    /**
+     * <p>The first and one past the last valid color map index.</p>
+     */
+    private final int colorMapStart, colorMapEnd;
+
+    /**
+     * <p>If <code>true</code> then out of range color map indices fail the
+     * decoding.  Otherwise they are zero (black).</p>
+     */
+    private final boolean strict;
+
+    /**
+     * <p>Is the pixel data RLE compressed?</p>
+     */
+    private final boolean isCompressed;
+
+    /**
+     * <p>The number of pixels remaining in the current RLE packet.  If 
+     * <code>0</code> then the next <code>byte</code> is a repetition count
+     * field.</p>
+     */
+    private int packetRemaining;
+
+    /**
+     * <p>If <code>true</code> then the current RLE packet is a raw packet 
+     * (the pixels are read).  Otherwise it is a run length packet (the 
+     * converted pixel in <code>runPixel</code> is repeated).</p>
+     */
+    private boolean isRawPacket;
+
+    /**
+     * <p>The converted (destination) samples of the pixel that is repeated
+     * by the current run length packet.</p>
+     */
+    private final byte[] runPixel;
+
+    // =========================================================================
+    /**
+     * <p>Constructs a decoder for the pixel data described by the specified
+     * header.</p>
+     *
+     * @param  header the <code>TGAHeader</code> of the image
+     * @param  colorMap the color map of the image indexed by pixel value (see
+     *         {@link TGAImageReader}) or <code>null</code> if there is none
+     * @param  destinationBytesPerPixel the number of <code>byte</code>s
+     *         (samples) per destination pixel
+     * @param  packedMonochrome if <code>true</code> then 1 bit monochrome
+     *         is copied packed (the "pixels" are then the packed 
+     *         <code>byte</code>s of the row)
+     * @param  strict if <code>true</code> then out of range color map indices
+     *         fail the decoding, otherwise they are zero (black)
+     */
+    TGAPixelDecoder(final TGAHeader header, final int[] colorMap,
+                    final int destinationBytesPerPixel, 
+                    final boolean packedMonochrome, final boolean strict)
+    {
+        this(header, colorMap, destinationBytesPerPixel, packedMonochrome, 
+             false/*not premultiplied*/, strict);
+    }
+
+    /**
+     * <p>Constructs a decoder for the pixel data described by the specified
+     * header that optionally premultiplies the samples by the alpha.</p>
+     *
+     * @param  header the <code>TGAHeader</code> of the image
+     * @param  colorMap the color map of the image indexed by pixel value (see
+     *         {@link TGAImageReader}) or <code>null</code> if there is none
+     * @param  destinationBytesPerPixel the number of <code>byte</code>s
+     *         (samples) per destination pixel
+     * @param  packedMonochrome if <code>true</code> then 1 bit monochrome
+     *         is copied packed (the "pixels" are then the packed 
+     *         <code>byte</code>s of the row)
+     * @param  premultiplied if <code>true</code> then the samples of pixels
+     *         with alpha are premultiplied by the alpha
+     * @param  strict if <code>true</code> then out of range color map indices
+     *         fail the decoding, otherwise they are zero (black)
+     */
+    TGAPixelDecoder(final TGAHeader header, final int[] colorMap,
+                    final int destinationBytesPerPixel, 
+                    final boolean packedMonochrome, final boolean premultiplied,
+                    final boolean strict)
+    {
+        this.colorMap = colorMap;
+        this.strict = strict;
+        this.colorMapStart = header.getFirstColorMapEntryIndex();
+        this.colorMapEnd = colorMapStart + header.getColorMapLength();
+        this.destinationBytesPerPixel = destinationBytesPerPixel;
+        this.isCompressed = header.isCompressed();
+        this.runPixel = new byte[destinationBytesPerPixel];
+
+        final int bitsPerPixel = header.getBitsPerPixel();
+        final int bytesPerPixel = (bitsPerPixel + 7) / 8;
+        if(header.isMono())
+        {
+            if((bitsPerPixel == 1) && !packedMonochrome)
+                format = FORMAT_MONO_1;
+            else if(bytesPerPixel > destinationBytesPerPixel)
+                format = FORMAT_DROP_ALPHA;
+            else if(premultiplied && (bytesPerPixel == 2))
+                format = FORMAT_PREMULTIPLY;
+            else /* the destination layout */
+                format = FORMAT_COPY;
+            sourceBytesPerPixel = Math.max(1, bytesPerPixel);
+        } else /* color mapped or true color */
+        {
+            switch(bytesPerPixel)
+            {
+                // RGB (5-5-5)
+                case 2:
+                    format = FORMAT_RGB_555;
+                    sourceBytesPerPixel = 2;
+                    break;
+
+                // true color RGB (8-8-8) or RGBA (8-8-8-8)
+                case 3:
+                case 4:
+                    if(bytesPerPixel > destinationBytesPerPixel)
+                        format = FORMAT_DROP_ALPHA;
+                    else if(premultiplied && (bytesPerPixel == 4))
+                        format = FORMAT_PREMULTIPLY;
+                    else /* the destination layout */
+                        format = FORMAT_COPY;
+                    sourceBytesPerPixel = bytesPerPixel;
+                    break;
+
+                // either the color map index or the grey scale (R = G = B)
+                case 1:
+                default:
+                    format = header.hasColorMap() ? FORMAT_COLOR_MAP : FORMAT_GREY_TO_BGR;
+                    sourceBytesPerPixel = 1;
+                    break;
+            }
+        }
+    }
+
+    /**
+     * <p>Creates the color map (as used by the decoder) from the color map
+     * entries as they appear in the TGA.  The color map is indexed by the 
+     * (8 bit) pixel value:  entry <code>i</code> is at 
+     * <code>firstColorMapEntryIndex + i</code> and values that are not in
+     * the color map are zero (black).  Entries beyond the end of the 
+     * specified data are zero.</p>
+     *
+     * @param  header the <code>TGAHeader</code> of the image
+     * @param  entries the color map entries
+     * @return the color map with each entry packed as 
+     *         <code>red | green << 8 | blue << 16 | alpha << 24</code>
+     */
+    static int[] createColorMap(final TGAHeader header, final byte[] entries)
+    {
+        final int[] colorMap = new int[256];
+
+        // only the entries that an 8 bit index can reach are needed
+        final int firstIndex = header.getFirstColorMapEntryIndex();
+        final int numberOfColors = Math.min(header.getColorMapLength(), colorMap.length - firstIndex);
+        final int bitsPerEntry = header.getBitsPerColorMapEntry();
+        for(int i=0; i<numberOfColors; i++)
+        {
+            int red = 0, green = 0, blue = 0, alpha = 0;
+
+            // read based on the number of bits per color map entry
+            switch(bitsPerEntry)
+            {
+                // grey scale (R = G = B)
+                case 8:
+                default:
+                {
+                    if(i >= entries.length)
+                        break;
+                    /* else -- the entry is present */
+
+                    red = green = blue = entries[i] & 0xFF; // unsigned
+                    break;
+                }
+
+                // 5-5-5 (RGB)
+                case 15:
+                case 16:
+                {
+                    final int offset = i * 2;
+                    if((offset + 2) > entries.length)
+                        break;
+                    /* else -- the entry is present */
+
+                    // get each color component -- each is 5 bits
+                    final int data = (entries[offset] & 0xFF) | ((entries[offset + 1] & 0xFF) << 8); // unsigned
+                    blue  = FIVE_TO_EIGHT_BITS[data          & 0x1F] & 0xFF;
+                    green = FIVE_TO_EIGHT_BITS[(data >>>  5) & 0x1F] & 0xFF;
+                    red   = FIVE_TO_EIGHT_BITS[(data >>> 10) & 0x1F] & 0xFF;
+                    break;
+                }
+
+                // true color RGB (8-8-8)
+                case 24:
+                {
+                    final int offset = i * 3;
+                    if((offset + 3) > entries.length)
+                        break;
+                    /* else -- the entry is present */
+
+                    blue  = entries[offset + 0] & 0xFF; // unsigned
+                    green = entries[offset + 1] & 0xFF; // unsigned
+                    red   = entries[offset + 2] & 0xFF; // unsigned
+                    break;
+                }
+
+                // true color RGBA (8-8-8-8)
+                case 32:
+                {
+                    final int offset = i * 4;
+                    if((offset + 4) > entries.length)
+                        break;
+                    /* else -- the entry is present */
+
+                    blue  = entries[offset + 0] & 0xFF; // unsigned
+                    green = entries[offset + 1] & 0xFF; // unsigned
+                    red   = entries[offset + 2] & 0xFF; // unsigned
+                    alpha = entries[offset + 3] & 0xFF; // unsigned
+                    break;
+                }
+            }
+
+            // combine each component into the result
+            colorMap[firstIndex + i] = (red << 0) | (green << 8) | (blue << 16) | (alpha << 24);
+        }
+
+        return colorMap;
+    }
+
+    /**
+     * <p>Retrieves the minimum number of <code>byte</code>s that must be
+     * available in the input for at least one pixel to be decoded.  For RLE
+     * compressed data this includes the repetition count field.</p>
+     */
+    int getMinimumInput()
+    {
+        return isCompressed ? (sourceBytesPerPixel + 1) : sourceBytesPerPixel;
+    }
+
+    /**
+     * <p>Retrieves if there are pixels remaining in the current RLE packet.
+     * Once the image has been decoded this indicates that the last packet
+     * runs past the end of the image.</p>
+     */
+    boolean hasPendingPacket()
+    {
+        return (packetRemaining > 0);
+    }
+
+    /**
+     * <p>Decodes up to <code>pixelCount</code> pixels from the input into the
+     * destination.  Only whole pixels (and, for RLE, whole repetition count
+     * fields with their run length pixel) that are available in the input 
+     * are decoded.  The position of the input is advanced past the consumed
+     * data.</p>
+     *
+     * <p>For 1 bit monochrome <code>pixelCount</code> must either be a
+     * multiple of 8 or be the remainder of the row since rows are byte
+     * aligned.</p>
+     *
+     * @param  input the pixel data
+     * @param  destination the destination samples
+     * @param  destinationOffset the offset in <code>destination</code> of the
+     *         first decoded sample
+     * @param  pixelCount the maximum number of pixels to decode
+     * @return the number of pixels that were decoded
+     * @throws IOException if decoding is strict and the pixel data is 
+     *         malformed
+     */
+    int decode(final ByteBuffer input, final byte[] destination,
+               final int destinationOffset, final int pixelCount)
+        throws IOException
+    {
+        // uncompressed pixels are simply converted
+        if(!isCompressed)
+            return convert(input, destination, destinationOffset, pixelCount);
+        /* else -- the pixels are RLE compressed */
+
+        int decoded = 0;
+        while(decoded < pixelCount)
+        {
+            // if the current packet is exhausted then read the next one
+            if((packetRemaining == 0) && !readPacketHeader(input))
+                break;
+            /* else -- the current packet continues */
+
+            final int destinationPosition = destinationOffset + (decoded * destinationBytesPerPixel);
+            final int count;
+            if(isRawPacket)
+            {
+                count = convert(input, destination, destinationPosition, 
+                                Math.min(packetRemaining, pixelCount - decoded));
+                if(count == 0)
+                    break;
+                /* else -- at least one raw pixel was converted */
+            } else /* run length packet */
+            {
+                count = Math.min(packetRemaining, pixelCount - decoded);
+                fill(destination, destinationPosition, count);
+            }
+            packetRemaining -= count;
+            decoded += count;
+        }
+
+        return decoded;
+    }
+
+    /**
+     * <p>Skips up to <code>pixelCount</code> RLE compressed pixels in the
+     * input.  This is {@link #decode(ByteBuffer, byte[], int, int)} without
+     * the destination:  the pixels of raw packets are passed over without
+     * being converted.  The packet state is kept as when decoding.</p>
+     *
+     * @param  input the pixel data
+     * @param  pixelCount the maximum number of pixels to skip
+     * @return the number of pixels that were skipped
+     * @throws IOException if decoding is strict and the pixel data is 
+     *         malformed
+     */
+    int skip(final ByteBuffer input, final int pixelCount)
+        throws IOException
+    {
+        int skipped = 0;
+        while(skipped < pixelCount)
+        {
+            // if the current packet is exhausted then read the next one
+            if((packetRemaining == 0) && !readPacketHeader(input))
+                break;
+            /* else -- the current packet continues */
+
+            int count = Math.min(packetRemaining, pixelCount - skipped);
+            if(isRawPacket)
+            {
+                count = Math.min(count, input.remaining() / sourceBytesPerPixel);
+                if(count == 0)
+                    break;
+                /* else -- at least one raw pixel is skipped */
+
+                // cast is workaround for https://jira.mongodb.org/browse/JAVA-2559
+                ((Buffer)input).position(input.position() + (count * sourceBytesPerPixel));
+            } /* else -- the run is simply not filled */
+            packetRemaining -= count;
+            skipped += count;
+        }
+
+        return skipped;
+    }
+
+    /**
+     * <p>Reads the repetition count field of the next RLE packet along with
+     * the pixel of a run length packet and sets up the packet state.  The 
+     * field is only consumed along with the run length pixel so that 
+     * decoding (or skipping) can be resumed once more input is available.
+     * This is shared by {@link #decode(ByteBuffer, byte[], int, int)} and
+     * {@link #skip(ByteBuffer, int)} so that both agree on malformed 
+     * packets.</p>
+     *
+     * @param  input the pixel data
+     * @return <code>false</code> if the packet header is not yet available
+     *         in the input
+     * @throws IOException if decoding is strict and the run length pixel is
+     *         malformed
+     */
+    private boolean readPacketHeader(final ByteBuffer input)
+        throws IOException
+    {
+        if(!input.hasRemaining())
+            return false;
+        /* else -- there is a repetition count field */
+
+        // bit 7 == 0 -> raw; bit 7 == 1 -> runlength.  The low 7 bits are one
+        // less than the number of pixels in the packet.
+        final int repetitionCount = input.get(input.position()) & 0xFF; // unsigned
+        if((repetitionCount & 0x80) == 0)
+        {
+            input.get();
+            isRawPacket = true;
+        } else /* run length packet */
+        {
+            if(input.remaining() < (1 + sourceBytesPerPixel))
+                return false;
+            /* else -- the run length pixel is available */
+            input.get();
+            isRawPacket = false;
+            convert(input, runPixel, 0, 1);
+        }
+        packetRemaining = (repetitionCount & 0x7F) + 1;
+        return true;
+    }
+
+    /**
+     * <p>Retrieves the number of pixels remaining in the current RLE 
+     * packet.  Along with {@link #isRawPacket()} and the run length pixel
+     * this is the state that is needed to resume decoding at the current
+     * position (see {@link #setPacketState(int, boolean, byte[], int)}).</p>
+     */
+    int getPacketRemaining()
+    {
+        return packetRemaining;
+    }
+
+    /**
+     * <p>Retrieves if the current RLE packet is a raw packet.</p>
+     */
+    boolean isRawPacket()
+    {
+        return isRawPacket;
+    }
+
+    /**
+     * <p>Copies the converted pixel of the current run length packet.</p>
+     *
+     * @param  destination the array into which the pixel is copied
+     * @param  offset the offset in <code>destination</code>
+     */
+    void getRunPixel(final byte[] destination, final int offset)
+    {
+        System.arraycopy(runPixel, 0, destination, offset, destinationBytesPerPixel);
+    }
+
+    /**
+     * <p>Sets the RLE packet state so that decoding can be resumed at a
+     * position that was previously reached.</p>
+     *
+     * @param  packetRemaining the number of pixels remaining in the packet
+     * @param  isRawPacket <code>true</code> if the packet is a raw packet
+     * @param  source the array containing the converted run length pixel
+     * @param  offset the offset of the pixel in <code>source</code>
+     */
+    void setPacketState(final int packetRemaining, final boolean isRawPacket,
+                        final byte[] source, final int offset)
+    {
+        this.packetRemaining = packetRemaining;
+        this.isRawPacket = isRawPacket;
+        System.arraycopy(source, offset, runPixel, 0, destinationBytesPerPixel);
+    }
+
+    /**
+     * <p>Fills the destination with <code>pixelCount</code> copies of 
+     * <code>runPixel</code>.  Multi-sample pixels are filled by repeatedly
+     * doubling the filled region with {@link System#arraycopy(Object, int, Object, int, int)}.</p>
+     */
+    private void fill(final byte[] destination, final int destinationOffset,
+                      final int pixelCount)
+    {
+        if(destinationBytesPerPixel == 1)
+        {
+            Arrays.fill(destination, destinationOffset, destinationOffset + pixelCount, runPixel[0]);
+            return;
+        } /* else -- there are multiple samples per pixel */
+
+        final int length = pixelCount * destinationBytesPerPixel;
+        System.arraycopy(runPixel, 0, destination, destinationOffset, destinationBytesPerPixel);
+        int filled = destinationBytesPerPixel;
+        while(filled < length)
+        {
+            final int count = Math.min(filled, length - filled);
+            System.arraycopy(destination, destinationOffset, destination, destinationOffset + filled, count);
+            filled += count;
+        }
+    }
+
+    /**
+     * <p>Converts up to <code>pixelCount</code> uncompressed pixels from the
+     * input into the destination.  Only whole pixels that are available in 
+     * the input are converted.</p>
+     *
+     * @return the number of pixels that were converted
+     * @throws IOException if decoding is strict and a color map index is out
+     *         of range
+     */
+    private int convert(final ByteBuffer input, final byte[] destination,
+                        final int destinationOffset, final int pixelCount)
+        throws IOException
+    {
+        // determine the number of pixels that are available in the input
+        final int available;
+        if(format == FORMAT_MONO_1)
+            available = Math.min(pixelCount, input.remaining() * 8);
+        else /* whole bytes per pixel */
+            available = Math.min(pixelCount, input.remaining() / sourceBytesPerPixel);
+
+        final byte[] source = input.array();
+        final int sourceOffset = input.arrayOffset() + input.position();
+        final int consumed;
+        switch(format)
+        {
+            case FORMAT_COPY:
+                consumed = available * sourceBytesPerPixel;
+                System.arraycopy(source, sourceOffset, destination, destinationOffset, consumed);
+                break;
+
+            case FORMAT_DROP_ALPHA:
+                consumed = available * sourceBytesPerPixel;
+                TGARowKernels.dropAlpha(source, sourceOffset, sourceBytesPerPixel, destination, destinationOffset, 
+                                        destinationBytesPerPixel, available);
+                break;
+
+            case FORMAT_PREMULTIPLY:
+                consumed = available * sourceBytesPerPixel;
+                premultiply(source, sourceOffset, destination, destinationOffset, available);
+                break;
+
+            case FORMAT_MONO_1:
+                consumed = (available + 7) / 8;
+                expandBits(source, sourceOffset, destination, destinationOffset, available);
+                break;
+
+            case FORMAT_RGB_555:
+                consumed = available * 2;
+                TGARowKernels.expandRGB555(source, sourceOffset, destination, destinationOffset, 
+                                           destinationBytesPerPixel, available);
+                break;
+
+            case FORMAT_GREY_TO_BGR:
+                consumed = available;
+                expandGrey(source, sourceOffset, destination, destinationOffset, available);
+                break;
+
+            case FORMAT_COLOR_MAP:
+            default:
+                consumed = available;
+                if(strict && ((colorMapStart > 0) || (colorMapEnd < colorMap.length)))
+                    checkColorMapIndices(source, sourceOffset, available);
+                /* else -- out of range indices are zero or all are in range */
+                lookupColorMap(source, sourceOffset, destination, destinationOffset, available);
+                break;
+        }
+        // cast is workaround for https://jira.mongodb.org/browse/JAVA-2559
+        ((Buffer)input).position(input.position() + consumed);
+
+        return available;
+    }
+
+    // =========================================================================
+    // row kernels
+    /**
+     * <p>Expands 1 bit monochrome (most significant bit first) to grey
+     * samples (<code>0x00</code> or <code>0xFF</code>).  Each whole source
+     * <code>byte</code> is expanded to its 8 samples at once from
+     * {@link #BITS_TO_GREY}.</p>
+     */
+    private void expandBits(final byte[] source, final int sourceOffset,
+                            final byte[] destination, final int destinationOffset,
+                            final int pixelCount)
+    {
+        final byte[] bitsToGrey = BITS_TO_GREY;
+
+        // expand the whole bytes
+        final int wholeBytes = pixelCount >>> 3;
+        for(int i=0, d=destinationOffset; i<wholeBytes; i++, d+=8)
+            System.arraycopy(bitsToGrey, (source[sourceOffset + i] & 0xFF) << 3, destination, d, 8);
+
+        // expand the partial last byte (rows are byte aligned so the 
+        // remaining bits are padding)
+        final int remainingBits = pixelCount & 7;
+        if(remainingBits > 0)
+            System.arraycopy(bitsToGrey, (source[sourceOffset + wholeBytes] & 0xFF) << 3, 
+                             destination, destinationOffset + (wholeBytes << 3), remainingBits);
+        /* else -- there is no partial byte */
+    }
+
+    /**
+     * <p>Copies each pixel with its BGR (grey) samples premultiplied by its
+     * alpha (the last sample) from {@link #PREMULTIPLY}.</p>
+     */
+    private void premultiply(final byte[] source, final int sourceOffset,
+                             final byte[] destination, final int destinationOffset,
+                             final int pixelCount)
+    {
+        final int bytesPerPixel = destinationBytesPerPixel;
+        final int alphaIndex = bytesPerPixel - 1;
+        for(int i=0, s=sourceOffset, d=destinationOffset; i<pixelCount; i++, s+=bytesPerPixel, d+=bytesPerPixel)
+        {
+            final byte alpha = source[s + alphaIndex];
+            final int row = (alpha & 0xFF) << 8;
+            for(int sample=0; sample<alphaIndex; sample++)
+                destination[d + sample] = PREMULTIPLY[row | (source[s + sample] & 0xFF)];
+            destination[d + alphaIndex] = alpha;
+        }
+    }
+
+    /**
+     * <p>Replicates each grey sample to each of B, G and R.</p>
+     */
+    private void expandGrey(final byte[] source, final int sourceOffset,
+                            final byte[] destination, final int destinationOffset,
+                            final int pixelCount)
+    {
+        final int bytesPerPixel = destinationBytesPerPixel;
+        for(int i=0, d=destinationOffset; i<pixelCount; i++, d+=bytesPerPixel)
+        {
+            final byte grey = source[sourceOffset + i];
+            destination[d + 0] = grey;
+            destination[d + 1] = grey;
+            destination[d + 2] = grey;
+        }
+    }
+
+    /**
+     * <p>Ensures that each 8 bit index is in the color map.</p>
+     *
+     * @throws IOException if an index is out of range
+     */
+    private void checkColorMapIndices(final byte[] source, final int sourceOffset,
+                                      final int pixelCount)
+        throws IOException
+    {
+        for(int i=0; i<pixelCount; i++)
+        {
+            final int colorIndex = source[sourceOffset + i] & 0xFF;
+            if((colorIndex < colorMapStart) || (colorIndex >= colorMapEnd))
+                throw new IOException("The color map index " + colorIndex + " is out of range [" + colorMapStart + ", " + colorMapEnd + ")."); // FIXME:  localize
+            /* else -- the index is in range */
+        }
+    }
+
+    /**
+     * <p>Looks up each 8 bit index in the color map and writes its BGR.  
+     * Since the color map has an entry for every 8 bit value no bounds check
+     * is needed.</p>
+     */
+    private void lookupColorMap(final byte[] source, final int sourceOffset,
+                                final byte[] destination, final int destinationOffset,
+                                final int pixelCount)
+    {
+        final int[] colorMap = this.colorMap;
+        final int bytesPerPixel = destinationBytesPerPixel;
+        for(int i=0, d=destinationOffset; i<pixelCount; i++, d+=bytesPerPixel)
+        {
+            final int packedPixel = colorMap[source[sourceOffset + i] & 0xFF];
+            destination[d + 0] = (byte)(packedPixel >>> 16); // blue
+            destination[d + 1] = (byte)(packedPixel >>> 8); // green
+            destination[d + 2] = (byte)packedPixel; // red
+        }
+    }
+}
+// =============================================================================
+/*
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
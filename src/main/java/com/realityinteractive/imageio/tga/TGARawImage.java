@@ -0,0 +1,103 @@
+package com.realityinteractive.imageio.tga;
+
+/*
+ * TGARawImage.java
+ * Copyright (c) 2003 Reality Interactive, Inc.
+ *   See bottom of file for license and warranty information.
+ */
+
+import java.nio.ByteBuffer;
+
+/**
+ * <p>A TGA that has been decoded to raw samples without any AWT classes
+ * (see {@link TGAImageReader#readRaw(int, javax.imageio.ImageReadParam)}).
+ * The samples are interleaved <code>byte</code>s in rows from the top left
+ * of the image:  B, G, R (and A) for true color and color mapped images and
+ * grey (and alpha) for monochrome images.  1 bit monochrome is a grey of 0
+ * or 255.</p>
+ */
+public final class TGARawImage
+{
+    /**
+     * <p>The size of the image in pixels.</p>
+     */
+    private final int width, height;
+
+    /**
+     * <p>The number of samples per pixel.</p>
+     */
+    private final int numberOfBands;
+
+    /**
+     * <p>The samples.</p>
+     */
+    private final byte[] samples;
+
+    // =========================================================================
+    /**
+     * <p>Constructs an image of the specified samples.</p>
+     *
+     * @param  width the width of the image in pixels
+     * @param  height the height of the image in pixels
+     * @param  numberOfBands the number of samples per pixel
+     * @param  samples the samples
+     */
+    TGARawImage(final int width, final int height, final int numberOfBands,
+                final byte[] samples)
+    {
+        this.width = width;
+        this.height = height;
+        this.numberOfBands = numberOfBands;
+        this.samples = samples;
+    }
+
+    /**
+     * <p>Retrieves the width of the image in pixels.</p>
+     */
+    public int getWidth()
+    {
+        return width;
+    }
+
+    /**
+     * <p>Retrieves the height of the image in pixels.</p>
+     */
+    public int getHeight()
+    {
+        return height;
+    }
+
+    /**
+     * <p>Retrieves the number of samples per pixel:  1 (grey), 2 (grey and
+     * alpha), 3 (BGR) or 4 (BGRA).</p>
+     */
+    public int getNumberOfBands()
+    {
+        return numberOfBands;
+    }
+
+    /**
+     * <p>Retrieves the samples in a <code>ByteBuffer</code> that is backed by
+     * the array of the samples.</p>
+     */
+    public ByteBuffer getSamples()
+    {
+        return ByteBuffer.wrap(samples);
+    }
+}
+// =============================================================================
+/*
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
@@ -0,0 +1,253 @@
+package com.realityinteractive.imageio.tga;
+
+/*
+ * TGAReadAheadInputBuffer.java
+ * Copyright (c) 2003 Reality Interactive, Inc.
+ *   See bottom of file for license and warranty information.
+ */
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * <p>A {@link TGAInputBuffer} that reads ahead.  While the current buffer
+ * is being decoded the next buffer is filled from the input on a background
+ * thread so that the reads overlap the decoding.  When the decoding needs
+ * more data the next buffer is (usually) already filled and it is copied
+ * into the current buffer while another read is started.</p>
+ *
+ * <p>Only the background thread uses the input while a read is in
+ * progress.  {@link #close()} waits for any read that is in progress so
+ * the input can be used again once it returns.</p>
+ */
+class TGAReadAheadInputBuffer extends TGAInputBuffer
+{
+    /**
+     * <p>The threads on which the reads are made (see 
+     * {@link TGAExecutors#newReadAheadExecutor()}).</p>
+     */
+    private static final ExecutorService EXECUTOR = TGAExecutors.newReadAheadExecutor();
+
+    /**
+     * <p>The buffer that is filled in the background.</p>
+     */
+    private final byte[] next;
+
+    /**
+     * <p>The position of the first <code>byte</code> in <code>next</code>
+     * that has not been consumed and the number of <code>byte</code>s that
+     * were read into it.</p>
+     */
+    private int nextPosition;
+    private int nextLength;
+
+    /**
+     * <p>The number of <code>byte</code>s that may still be read ahead.</p>
+     */
+    private long bytesAllowed;
+
+    /**
+     * <p>The read that is in progress or <code>null</code> if there is
+     * none.</p>
+     */
+    private Future<Integer> pending;
+
+    /**
+     * <p>If <code>true</code> then the end of the input has been reached.</p>
+     */
+    private boolean endOfFile;
+
+    // =========================================================================
+    /**
+     * <p>Constructs an initially empty buffer of the specified size.  Nothing
+     * is read until the buffer is first filled.</p>
+     *
+     * @see TGAInputBuffer#TGAInputBuffer(ImageInputStream, int, long, boolean)
+     */
+    TGAReadAheadInputBuffer(final ImageInputStream input, final int size,
+                            final long bytesAllowed, final boolean flush)
+    {
+        super(input, size, bytesAllowed, flush);
+
+        this.bytesAllowed = bytesAllowed;
+        next = new byte[size];
+    }
+
+    /**
+     * <p>Copies the data that has been read ahead.  A new read is started
+     * as soon as the data that was read ahead has been consumed.</p>
+     *
+     * @see TGAInputBuffer#read(byte[], int, int)
+     */
+    @Override
+    int read(final byte[] array, final int offset, final int length)
+        throws IOException
+    {
+        int bytesLoaded = 0;
+        while(bytesLoaded < length)
+        {
+            if(nextPosition == nextLength)
+            {
+                // there is nothing left over so wait for the read that is in
+                // progress (starting it first if there is none)
+                if(pending == null)
+                    readAhead();
+                /* else -- a read is in progress */
+                if(pending == null)
+                    break; // the end of the input
+                /* else -- there is a read to wait for */
+
+                nextLength = await();
+                nextPosition = 0;
+                if(nextLength == 0)
+                    break; // the end of the input
+                /* else -- data was read */
+            } /* else -- data was left over */
+
+            final int count = Math.min(nextLength - nextPosition, length - bytesLoaded);
+            System.arraycopy(next, nextPosition, array, offset + bytesLoaded, count);
+            nextPosition += count;
+            bytesLoaded += count;
+
+            // read the next buffer while this one is decoded
+            if(nextPosition == nextLength)
+                readAhead();
+            /* else -- the read buffer is not yet consumed */
+        }
+        return bytesLoaded;
+    }
+
+    /**
+     * <p>Skips the input by reading (and discarding) the data through
+     * {@link #read(byte[], int, int)} since the input may be in use by the
+     * read ahead.  The empty buffer is read into.</p>
+     *
+     * @see TGAInputBuffer#skipInput(long)
+     */
+    @Override
+    long skipInput(final long byteCount)
+        throws IOException
+    {
+        final byte[] array = getBuffer().array();
+        long skipped = 0;
+        while(skipped < byteCount)
+        {
+            final int count = read(array, 0, (int)Math.min(array.length, byteCount - skipped));
+            if(count == 0)
+                break; // the end of the input
+            /* else -- data was skipped */
+            skipped += count;
+        }
+        return skipped;
+    }
+
+    /**
+     * <p>Waits for the read that is in progress (if any).</p>
+     *
+     * @see TGAInputBuffer#close()
+     */
+    @Override
+    void close()
+        throws IOException
+    {
+        if(pending != null)
+            await();
+        /* else -- no read is in progress */
+    }
+
+    /**
+     * <p>Starts a read of the next buffer in the background unless the end
+     * of the input has been reached.</p>
+     */
+    private void readAhead()
+    {
+        final int length = (int)Math.min(next.length, bytesAllowed);
+        if(endOfFile || (length <= 0))
+            return;
+        /* else -- there may be more data */
+
+        pending = EXECUTOR.submit(new Callable<Integer>()
+        {
+            public Integer call()
+                throws IOException
+            {
+                return TGAReadAheadInputBuffer.super.read(next, 0, length);
+            }
+        });
+    }
+
+    /**
+     * <p>Waits for the read that is in progress.</p>
+     *
+     * @return the number of <code>byte</code>s that were read
+     * @throws IOException if the read failed or if the thread was
+     *         interrupted while waiting
+     */
+    private int await()
+        throws IOException
+    {
+        final Future<Integer> read = pending;
+        pending = null;
+
+        boolean interrupted = false;
+        try
+        {
+            while(true)
+            {
+                try
+                {
+                    final int count = read.get();
+                    bytesAllowed -= count;
+                    endOfFile = (count == 0);
+                    if(interrupted)
+                        throw new InterruptedIOException("Interrupted while reading ahead."); // FIXME:  localize
+                    /* else -- not interrupted */
+                    return count;
+                } catch(final InterruptedException ie)
+                {
+                    // the read must complete before the input can be used
+                    // again so the wait continues
+                    interrupted = true;
+                }
+            }
+        } catch(final ExecutionException ee)
+        {
+            final Throwable cause = ee.getCause();
+            if(cause instanceof IOException)
+                throw (IOException)cause;
+            else if(cause instanceof RuntimeException)
+                throw (RuntimeException)cause;
+            else if(cause instanceof Error)
+                throw (Error)cause;
+            else /* unexpected */
+                throw new IOException(cause);
+        } finally
+        {
+            if(interrupted)
+                Thread.currentThread().interrupt();
+            /* else -- not interrupted */
+        }
+    }
+}
+// =============================================================================
+/*
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
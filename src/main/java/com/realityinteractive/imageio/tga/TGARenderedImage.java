@@ -0,0 +1,316 @@
+package com.realityinteractive.imageio.tga;
+
+/*
+ * TGARenderedImage.java
+ * Copyright (c) 2003 Reality Interactive, Inc.
+ *   See bottom of file for license and warranty information.
+ */
+
+import java.awt.Image;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Vector;
+
+import javax.imageio.ImageTypeSpecifier;
+
+/**
+ * <p>A {@link RenderedImage} of a TGA whose tiles are decoded on demand
+ * (see {@link TGAImageReader#readAsRenderedImage(int, javax.imageio.ImageReadParam)}).
+ * Only the tiles that are requested are decoded and the most recently used
+ * tiles are kept in a cache of a bounded number of tiles.</p>
+ *
+ * <p>The tiles are decoded from the input of the reader at the time the
+ * image was created.  That input must remain open while the image is used.
+ * Since the methods of <code>RenderedImage</code> cannot throw an
+ * {@link IOException}, an I/O error while decoding a tile is thrown as an
+ * {@link IllegalStateException}.</p>
+ */
+final class TGARenderedImage implements RenderedImage
+{
+    /**
+     * <p>The decoder of the tiles.</p>
+     */
+    private final TGATileDecoder tileDecoder;
+
+    /**
+     * <p>The size of the image and of the tiles.</p>
+     */
+    private final int width, height;
+    private final int tileWidth, tileHeight;
+
+    /**
+     * <p>The color and sample models of the tiles.</p>
+     */
+    private final ColorModel colorModel;
+    private final SampleModel sampleModel;
+
+    /**
+     * <p>If <code>true</code> then malformed pixel data fails the decoding
+     * of a tile.</p>
+     */
+    private final boolean strict;
+
+    /**
+     * <p>The decoded tiles indexed by <code>tileY * numXTiles + tileX</code>
+     * in least recently used order.</p>
+     */
+    private final Map<Integer, Raster> tileCache;
+
+    // =========================================================================
+    /**
+     * <p>Constructs an image whose tiles are decoded by the specified
+     * decoder.</p>
+     *
+     * @param  tileDecoder the decoder of the tiles
+     * @param  imageType the type of the image
+     * @param  tileWidth the width of a tile
+     * @param  tileHeight the height of a tile
+     * @param  tileCacheSize the maximum number of tiles that are cached
+     * @param  strict if <code>true</code> then malformed pixel data fails
+     *         the decoding of a tile
+     */
+    TGARenderedImage(final TGATileDecoder tileDecoder, final ImageTypeSpecifier imageType,
+                     final int tileWidth, final int tileHeight,
+                     final int tileCacheSize, final boolean strict)
+    {
+        this.tileDecoder = tileDecoder;
+        this.width = tileDecoder.getHeader().getWidth();
+        this.height = tileDecoder.getHeader().getHeight();
+        this.tileWidth = tileWidth;
+        this.tileHeight = tileHeight;
+        this.colorModel = imageType.getColorModel();
+        this.sampleModel = imageType.getSampleModel(tileWidth, tileHeight);
+        this.strict = strict;
+
+        // an access ordered map that drops the eldest entry when full
+        tileCache = new LinkedHashMap<Integer, Raster>(16, 0.75f, true/*access order*/)
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Integer, Raster> eldest)
+            {
+                return size() > tileCacheSize;
+            }
+        };
+    }
+
+    /**
+     * <p>Retrieves the tile at the specified tile indices.  The tile is
+     * decoded if it is not in the cache.</p>
+     *
+     * @throws IllegalStateException if there is an I/O error while decoding
+     *         the tile
+     * @see RenderedImage#getTile(int, int)
+     */
+    public Raster getTile(final int tileX, final int tileY)
+    {
+        if((tileX < 0) || (tileX >= getNumXTiles()) || (tileY < 0) || (tileY >= getNumYTiles()))
+            throw new IllegalArgumentException("The tile indices are out of bounds (" + tileX + ", " + tileY + ")."); // FIXME:  localize
+        /* else -- the tile is in the image */
+
+        final Integer key = Integer.valueOf((tileY * getNumXTiles()) + tileX);
+        synchronized(tileCache)
+        {
+            final Raster cached = tileCache.get(key);
+            if(cached != null)
+                return cached;
+            /* else -- the tile must be decoded */
+
+            // decode the part of the tile that is within the image.  The rest
+            // of an edge tile is zero.
+            final Point location = new Point(tileX * tileWidth, tileY * tileHeight);
+            final WritableRaster tile = Raster.createWritableRaster(sampleModel, location);
+            final Rectangle region = new Rectangle(location.x, location.y,
+                                                   Math.min(tileWidth, width - location.x),
+                                                   Math.min(tileHeight, height - location.y));
+            try
+            {
+                tileDecoder.decode(region, ((DataBufferByte)tile.getDataBuffer()).getData(), 0,
+                                   ((PixelInterleavedSampleModel)sampleModel).getScanlineStride(), strict);
+            } catch(final IOException ioe)
+            {
+                throw new IllegalStateException("The tile (" + tileX + ", " + tileY + ") could not be decoded.", ioe); // FIXME:  localize
+            }
+
+            tileCache.put(key, tile);
+            return tile;
+        }
+    }
+
+    /**
+     * @see RenderedImage#getData()
+     */
+    public Raster getData()
+    {
+        return getData(new Rectangle(0, 0, width, height));
+    }
+
+    /**
+     * @see RenderedImage#getData(Rectangle)
+     */
+    public Raster getData(final Rectangle rectangle)
+    {
+        final WritableRaster raster = Raster.createWritableRaster(sampleModel.createCompatibleSampleModel(rectangle.width, rectangle.height),
+                                                                  rectangle.getLocation());
+        return copyData(raster);
+    }
+
+    /**
+     * @see RenderedImage#copyData(WritableRaster)
+     */
+    public WritableRaster copyData(WritableRaster raster)
+    {
+        if(raster == null)
+            raster = colorModel.createCompatibleWritableRaster(width, height);
+        /* else -- the raster is given */
+
+        final Rectangle bounds = raster.getBounds().intersection(new Rectangle(0, 0, width, height));
+        if(bounds.isEmpty())
+            return raster;
+        /* else -- there is data to copy */
+
+        final int firstTileX = bounds.x / tileWidth;
+        final int lastTileX = (bounds.x + bounds.width - 1) / tileWidth;
+        final int firstTileY = bounds.y / tileHeight;
+        final int lastTileY = (bounds.y + bounds.height - 1) / tileHeight;
+        for(int tileY=firstTileY; tileY<=lastTileY; tileY++)
+        {
+            for(int tileX=firstTileX; tileX<=lastTileX; tileX++)
+            {
+                final Raster tile = getTile(tileX, tileY);
+                final Rectangle region = tile.getBounds().intersection(bounds);
+                raster.setRect(tile.createChild(region.x, region.y, region.width, region.height,
+                                                region.x, region.y, null));
+            }
+        }
+        return raster;
+    }
+
+    // =========================================================================
+    /**
+     * <p>There are no sources.</p>
+     *
+     * @see RenderedImage#getSources()
+     */
+    public Vector<RenderedImage> getSources()
+    {
+        return null;
+    }
+
+    /**
+     * <p>There are no properties.</p>
+     *
+     * @see RenderedImage#getProperty(String)
+     */
+    public Object getProperty(final String name)
+    {
+        return Image.UndefinedProperty;
+    }
+
+    /**
+     * <p>There are no properties.</p>
+     *
+     * @see RenderedImage#getPropertyNames()
+     */
+    public String[] getPropertyNames()
+    {
+        return null;
+    }
+
+    public ColorModel getColorModel()
+    {
+        return colorModel;
+    }
+
+    public SampleModel getSampleModel()
+    {
+        return sampleModel;
+    }
+
+    public int getWidth()
+    {
+        return width;
+    }
+
+    public int getHeight()
+    {
+        return height;
+    }
+
+    public int getMinX()
+    {
+        return 0;
+    }
+
+    public int getMinY()
+    {
+        return 0;
+    }
+
+    public int getNumXTiles()
+    {
+        return (width + tileWidth - 1) / tileWidth;
+    }
+
+    public int getNumYTiles()
+    {
+        return (height + tileHeight - 1) / tileHeight;
+    }
+
+    public int getMinTileX()
+    {
+        return 0;
+    }
+
+    public int getMinTileY()
+    {
+        return 0;
+    }
+
+    public int getTileWidth()
+    {
+        return tileWidth;
+    }
+
+    public int getTileHeight()
+    {
+        return tileHeight;
+    }
+
+    public int getTileGridXOffset()
+    {
+        return 0;
+    }
+
+    public int getTileGridYOffset()
+    {
+        return 0;
+    }
+}
+// =============================================================================
+/*
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
@@ -0,0 +1,704 @@
+package com.realityinteractive.imageio.tga;
+
+/*
+ * TGASequenceReader.java
+ * Copyright (c) 2003 Reality Interactive, Inc.
+ *   See bottom of file for license and warranty information.
+ */
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.stream.FileImageInputStream;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * <p>A reader of a numbered sequence of TGA files (such as 
+ * <code>frame_0001.tga</code> to <code>frame_9999.tga</code>) as the images
+ * of a single input.  Image <code>i</code> is the <code>i</code>th frame in
+ * numeric order.  The input is either one of the frames (see 
+ * {@link #getFrames(File)}) or a <code>List</code> of the frame 
+ * <code>File</code>s.</p>
+ *
+ * <p>When a frame is read the frames that follow it are decoded in the
+ * background (each by its own {@link TGAImageReader}) so that frames that
+ * are played back in order are usually decoded before they are read.  A
+ * frame that is no longer wanted once playback has moved on is discarded.
+ * Only frames that are read without an <code>ImageReadParam</code> are
+ * prefetched.  A frame read with an <code>ImageReadParam</code> is decoded
+ * when it is read.</p>
+ *
+ * <p>A frame that has been displayed may be given back with 
+ * {@link #recycle(BufferedImage)} so that a frame of the same size and type
+ * is decoded into it rather than into a new image.  The reader owns a 
+ * recycled image so it must no longer be used by the caller.</p>
+ *
+ * <p>{@link #abort()} stops the decoding of the frame that is being read
+ * (even if it is being prefetched) between rows.  The rows of an aborted
+ * frame that were not yet decoded are left as they were.</p>
+ *
+ * <p>As any <code>ImageReader</code> this reader is used from one thread at
+ * a time.  {@link #dispose()} must be called when the reader is no longer
+ * needed to release the background threads.</p>
+ */
+public class TGASequenceReader extends ImageReader
+{
+    /**
+     * <p>The default number of frames that are prefetched.</p>
+     */
+    public static final int DEFAULT_PREFETCH_COUNT = 4;
+
+    /**
+     * <p>The name of a numbered frame:  the prefix, the (last) number and
+     * the suffix.</p>
+     */
+    private static final Pattern FRAME_NAME = Pattern.compile("(.*?)(\\d+)(\\D*)");
+
+    // =========================================================================
+    /**
+     * <p>The number of frames after the frame that is read that are 
+     * prefetched.</p>
+     */
+    private final int prefetchCount;
+
+    /**
+     * <p>The threads on which the frames are prefetched.</p>
+     */
+    private final ExecutorService executor;
+
+    /**
+     * <p>The frames or <code>null</code> if the input has not been set.</p>
+     */
+    private List<File> frames;
+
+    /**
+     * <p>The frames that are being (or have been) prefetched keyed by their
+     * index.</p>
+     */
+    private final Map<Integer, Future<BufferedImage>> prefetched = new HashMap<Integer, Future<BufferedImage>>();
+
+    /**
+     * <p>The images that may be decoded into.  No more than 
+     * <code>prefetchCount + 1</code> images are kept.</p>
+     */
+    private final List<BufferedImage> recycled = new ArrayList<BufferedImage>();
+
+    /**
+     * <p>The index of the frame that is being read or <code>-1</code> if no
+     * frame is being read.  The decoding of this frame (whether it is being
+     * prefetched or not) stops between rows once the read is aborted.</p>
+     */
+    private volatile int readIndex = -1;
+
+    // =========================================================================
+    /**
+     * <p>Constructs a reader that prefetches the 
+     * {@link #DEFAULT_PREFETCH_COUNT default number} of frames on up to as
+     * many threads as there are processors.</p>
+     */
+    public TGASequenceReader()
+    {
+        this(DEFAULT_PREFETCH_COUNT, Math.min(DEFAULT_PREFETCH_COUNT, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * <p>Constructs a reader that prefetches the specified number of frames
+     * on the specified number of threads.</p>
+     *
+     * @param  prefetchCount the number of frames after the frame that is 
+     *         read that are prefetched (zero for none)
+     * @param  threadCount the number of threads on which frames are decoded
+     *         in the background
+     * @throws IllegalArgumentException if the prefetch count is negative or
+     *         if the thread count is not positive
+     */
+    public TGASequenceReader(final int prefetchCount, final int threadCount)
+    {
+        super(null/*no originating provider*/);
+
+        if(prefetchCount < 0)
+            throw new IllegalArgumentException("The prefetch count cannot be negative."); // FIXME:  localize
+        /* else -- the prefetch count is valid */
+        if(threadCount < 1)
+            throw new IllegalArgumentException("There must be at least one thread."); // FIXME:  localize
+        /* else -- the thread count is valid */
+
+        this.prefetchCount = prefetchCount;
+        executor = Executors.newFixedThreadPool(threadCount, new ThreadFactory()
+        {
+            public Thread newThread(final Runnable runnable)
+            {
+                final Thread thread = new Thread(runnable, "TGA sequence prefetch");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * <p>Retrieves the frames of the numbered sequence that contains the
+     * specified frame.  The frames are the files in the same directory whose
+     * names differ from the name of the frame only in the number (the last
+     * digits of the name) in numeric order.  A file whose name has no 
+     * number is a sequence of one frame.</p>
+     *
+     * @param  frame any frame of the sequence (it need not exist)
+     * @return the frames of the sequence
+     * @throws IOException if the directory cannot be listed
+     */
+    public static List<File> getFrames(final File frame)
+        throws IOException
+    {
+        final Matcher frameMatcher = FRAME_NAME.matcher(frame.getName());
+        if(!frameMatcher.matches())
+            return Collections.singletonList(frame);
+        /* else -- the frame is numbered */
+        final String prefix = frameMatcher.group(1);
+        final String suffix = frameMatcher.group(3);
+
+        final File directory = frame.getAbsoluteFile().getParentFile();
+        final File[] files = (directory == null) ? null : directory.listFiles();
+        if(files == null)
+            throw new IOException("The directory of \"" + frame + "\" cannot be listed."); // FIXME:  localize
+        /* else -- the directory was listed */
+
+        final Map<File, Long> numbers = new HashMap<File, Long>();
+        for(final File file : files)
+        {
+            final Matcher matcher = FRAME_NAME.matcher(file.getName());
+            if(matcher.matches() && matcher.group(1).equals(prefix) && 
+               matcher.group(3).equals(suffix) && (matcher.group(2).length() < 19/*fits a long*/) &&
+               file.isFile())
+            {
+                numbers.put(new File(frame.getParentFile(), file.getName()), Long.valueOf(matcher.group(2)));
+            } /* else -- not a frame of the sequence */
+        }
+
+        final List<File> frames = new ArrayList<File>(numbers.keySet());
+        Collections.sort(frames, new Comparator<File>()
+        {
+            public int compare(final File file1, final File file2)
+            {
+                return numbers.get(file1).compareTo(numbers.get(file2));
+            }
+        });
+        return Collections.unmodifiableList(frames);
+    }
+
+    /**
+     * <p>Sets the frames of the sequence.  The input is either a 
+     * <code>File</code> (any frame of the sequence) or a <code>List</code>
+     * of the frame <code>File</code>s in order.  Any frames that are being
+     * prefetched are discarded.</p>
+     *
+     * @throws IllegalArgumentException if the input is neither a frame 
+     *         <code>File</code> nor a <code>List</code> of them or if the
+     *         directory of the frame cannot be listed
+     * @see ImageReader#setInput(Object, boolean, boolean)
+     */
+    @Override
+    public void setInput(final Object input, final boolean seekForwardOnly,
+                         final boolean ignoreMetadata)
+    {
+        final List<File> frames;
+        if(input == null)
+            frames = null;
+        else if(input instanceof File)
+        {
+            try
+            {
+                frames = getFrames((File)input);
+            } catch(final IOException ioe)
+            {
+                throw new IllegalArgumentException(ioe.getMessage(), ioe);
+            }
+        } else if(input instanceof List)
+        {
+            final List<File> inputFrames = new ArrayList<File>();
+            for(final Object frame : (List<?>)input)
+            {
+                if(!(frame instanceof File))
+                    throw new IllegalArgumentException("The frames must be Files."); // FIXME:  localize
+                /* else -- the frame is a File */
+                inputFrames.add((File)frame);
+            }
+            frames = Collections.unmodifiableList(inputFrames);
+        } else /* unsupported */
+            throw new IllegalArgumentException("The input must be a File or a List of Files."); // FIXME:  localize
+
+        discardPrefetched();
+
+        // NOTE:  the superclass only accepts the input types of a provider
+        //        so the state is set directly
+        this.frames = frames;
+        this.input = input;
+        this.seekForwardOnly = seekForwardOnly;
+        this.ignoreMetadata = ignoreMetadata;
+        this.minIndex = 0;
+    }
+
+    /**
+     * <p>Retrieves the number of frames.</p>
+     *
+     * @see ImageReader#getNumImages(boolean)
+     */
+    @Override
+    public int getNumImages(final boolean allowSearch)
+    {
+        return getFrames().size();
+    }
+
+    /**
+     * @see ImageReader#getWidth(int)
+     */
+    @Override
+    public int getWidth(final int imageIndex)
+        throws IOException
+    {
+        final ImageInputStream input = createInput(imageIndex);
+        try
+        {
+            return createReader(input, imageIndex).getWidth(0);
+        } finally
+        {
+            input.close();
+        }
+    }
+
+    /**
+     * @see ImageReader#getHeight(int)
+     */
+    @Override
+    public int getHeight(final int imageIndex)
+        throws IOException
+    {
+        final ImageInputStream input = createInput(imageIndex);
+        try
+        {
+            return createReader(input, imageIndex).getHeight(0);
+        } finally
+        {
+            input.close();
+        }
+    }
+
+    /**
+     * @see ImageReader#getImageTypes(int)
+     */
+    @Override
+    public Iterator<ImageTypeSpecifier> getImageTypes(final int imageIndex)
+        throws IOException
+    {
+        final ImageInputStream input = createInput(imageIndex);
+        try
+        {
+            return createReader(input, imageIndex).getImageTypes(0);
+        } finally
+        {
+            input.close();
+        }
+    }
+
+    /**
+     * <p>There is no stream metadata.</p>
+     *
+     * @see ImageReader#getStreamMetadata()
+     */
+    @Override
+    public IIOMetadata getStreamMetadata()
+    {
+        return null;
+    }
+
+    /**
+     * <p>Retrieves the metadata of the frame (<code>null</code> if metadata
+     * is ignored).</p>
+     *
+     * @see ImageReader#getImageMetadata(int)
+     */
+    @Override
+    public IIOMetadata getImageMetadata(final int imageIndex)
+        throws IOException
+    {
+        final ImageInputStream input = createInput(imageIndex);
+        try
+        {
+            if(ignoreMetadata)
+                return null;
+            /* else -- the metadata is wanted */
+            return createReader(input, imageIndex).getImageMetadata(0);
+        } finally
+        {
+            input.close();
+        }
+    }
+
+    /**
+     * <p>Returns the default {@link TGAImageReadParam}.</p>
+     *
+     * @see ImageReader#getDefaultReadParam()
+     */
+    @Override
+    public ImageReadParam getDefaultReadParam()
+    {
+        return new TGAImageReadParam();
+    }
+
+    /**
+     * <p>Reads the frame.  If it is read without an 
+     * <code>ImageReadParam</code> then the prefetched frame is used (if it
+     * was prefetched) and the frames that follow it are prefetched.</p>
+     *
+     * @see ImageReader#read(int, ImageReadParam)
+     */
+    @Override
+    public BufferedImage read(final int imageIndex, final ImageReadParam param)
+        throws IOException
+    {
+        final List<File> frames = getFrames();
+        if((imageIndex < minIndex) || (imageIndex >= frames.size()))
+            throw new IndexOutOfBoundsException("The frame index " + imageIndex + " is out of bounds."); // FIXME:  localize
+        /* else -- the index is valid */
+
+        clearAbortRequest();
+        readIndex = imageIndex;
+        processImageStarted(imageIndex);
+
+        final BufferedImage image;
+        try
+        {
+            image = readFrame(imageIndex, param);
+        } finally
+        {
+            readIndex = -1;
+        }
+
+        if(seekForwardOnly)
+            minIndex = imageIndex;
+        /* else -- any frame may be read */
+
+        if(abortRequested())
+            processReadAborted();
+        else /* not aborted */
+            processImageComplete();
+        return image;
+    }
+
+    /**
+     * <p>Reads the frame from its prefetch (if it is read without an
+     * <code>ImageReadParam</code>) or decodes it.</p>
+     */
+    private BufferedImage readFrame(final int imageIndex, final ImageReadParam param)
+        throws IOException
+    {
+        final BufferedImage image;
+        if(param == null)
+        {
+            final Future<BufferedImage> frame;
+            synchronized(prefetched)
+            {
+                frame = prefetched.remove(imageIndex);
+            }
+            prefetch(imageIndex);
+
+            if(frame == null)
+                image = decode(imageIndex);
+            else /* the frame was prefetched */
+                image = await(frame);
+        } else /* read with the settings of the ImageReadParam */
+        {
+            final ImageInputStream input = createInput(imageIndex);
+            try
+            {
+                image = createReader(input, imageIndex).read(0, param);
+            } finally
+            {
+                input.close();
+            }
+        }
+        return image;
+    }
+
+    /**
+     * <p>Gives an image (that was read from this reader) back to be decoded
+     * into by a later frame of the same size and type.  The image must no 
+     * longer be used by the caller.</p>
+     *
+     * @param  image the image that is no longer used
+     */
+    public void recycle(final BufferedImage image)
+    {
+        synchronized(recycled)
+        {
+            if(recycled.size() <= prefetchCount)
+                recycled.add(image);
+            /* else -- there are enough images for the prefetched frames */
+        }
+    }
+
+    /**
+     * <p>Discards any frames that are being prefetched (see 
+     * {@link ImageReader#reset()}).</p>
+     */
+    @Override
+    public void reset()
+    {
+        super.reset(); // the input is cleared which discards the prefetched frames
+
+        synchronized(recycled)
+        {
+            recycled.clear();
+        }
+    }
+
+    /**
+     * <p>Discards any frames that are being prefetched and releases the
+     * background threads.</p>
+     *
+     * @see ImageReader#dispose()
+     */
+    @Override
+    public void dispose()
+    {
+        reset();
+        executor.shutdownNow();
+    }
+
+    // =========================================================================
+    /**
+     * <p>Retrieves the frames.</p>
+     *
+     * @throws IllegalStateException if the input has not been set
+     */
+    private List<File> getFrames()
+    {
+        if(frames == null)
+            throw new IllegalStateException("The input has not been set."); // FIXME:  localize
+        /* else -- the input is set */
+        return frames;
+    }
+
+    /**
+     * <p>Opens the input of the specified frame.</p>
+     *
+     * @throws IndexOutOfBoundsException if there is no such frame
+     */
+    private ImageInputStream createInput(final int imageIndex)
+        throws IOException
+    {
+        final List<File> frames = getFrames();
+        if((imageIndex < 0) || (imageIndex >= frames.size()))
+            throw new IndexOutOfBoundsException("The frame index " + imageIndex + " is out of bounds."); // FIXME:  localize
+        /* else -- the index is valid */
+        return new FileImageInputStream(frames.get(imageIndex));
+    }
+
+    /**
+     * <p>Creates a reader of the input of a frame.  The reader stops decoding
+     * between rows once the read of the frame is aborted (see
+     * {@link #isReadAborted(int)}).</p>
+     */
+    private TGAImageReader createReader(final ImageInputStream input,
+                                        final int imageIndex)
+    {
+        final TGAImageReader reader = new TGAImageReader(new TGAImageReaderSpi())
+        {
+            @Override
+            protected boolean abortRequested()
+            {
+                return super.abortRequested() || isReadAborted(imageIndex);
+            }
+        };
+        reader.setInput(input, true/*seek forward only*/, ignoreMetadata);
+        return reader;
+    }
+
+    /**
+     * <p>Retrieves if the read of the specified frame has been aborted.  A
+     * frame that is only being prefetched is never aborted.  This may be 
+     * called from any thread.</p>
+     */
+    private boolean isReadAborted(final int imageIndex)
+    {
+        return (readIndex == imageIndex) && abortRequested();
+    }
+
+    /**
+     * <p>Decodes the specified frame into a recycled image of its size and
+     * type (if there is one).  This may be called from any thread.</p>
+     */
+    private BufferedImage decode(final int imageIndex)
+        throws IOException
+    {
+        final ImageInputStream input = createInput(imageIndex);
+        try
+        {
+            final TGAImageReader reader = createReader(input, imageIndex);
+            final int width = reader.getWidth(0);
+            final int height = reader.getHeight(0);
+            final ImageTypeSpecifier imageType = reader.getImageTypes(0).next();
+
+            ImageReadParam param = null;
+            synchronized(recycled)
+            {
+                for(final Iterator<BufferedImage> images=recycled.iterator(); images.hasNext(); )
+                {
+                    final BufferedImage image = images.next();
+                    if(TGAImageReader.isCompatibleDestination(image, imageType, width, height))
+                    {
+                        images.remove();
+                        param = reader.getDefaultReadParam();
+                        param.setDestination(image);
+                        break;
+                    } /* else -- the image does not fit the frame */
+                }
+            }
+            return reader.read(0, param);
+        } finally
+        {
+            input.close();
+        }
+    }
+
+    /**
+     * <p>Prefetches the frames that follow the specified frame and discards
+     * any other prefetched frames.</p>
+     */
+    private void prefetch(final int imageIndex)
+    {
+        final int lastIndex = Math.min(imageIndex + prefetchCount, frames.size() - 1);
+        synchronized(prefetched)
+        {
+            for(final Iterator<Map.Entry<Integer, Future<BufferedImage>>> entries=prefetched.entrySet().iterator(); entries.hasNext(); )
+            {
+                final Map.Entry<Integer, Future<BufferedImage>> entry = entries.next();
+                final int index = entry.getKey();
+                if((index <= imageIndex) || (index > lastIndex))
+                {
+                    entries.remove();
+                    discard(entry.getValue());
+                } /* else -- the frame is still wanted */
+            }
+
+            for(int index=imageIndex+1; index<=lastIndex; index++)
+            {
+                if(prefetched.containsKey(index))
+                    continue;
+                /* else -- the frame is not yet prefetched */
+
+                final int frameIndex = index;
+                prefetched.put(index, executor.submit(new Callable<BufferedImage>()
+                {
+                    public BufferedImage call()
+                        throws IOException
+                    {
+                        return decode(frameIndex);
+                    }
+                }));
+            }
+        }
+    }
+
+    /**
+     * <p>Discards all of the prefetched frames.</p>
+     */
+    private void discardPrefetched()
+    {
+        synchronized(prefetched)
+        {
+            for(final Future<BufferedImage> frame : prefetched.values())
+                discard(frame);
+            prefetched.clear();
+        }
+    }
+
+    /**
+     * <p>Cancels the prefetch of a frame that is no longer wanted.  If it
+     * was already decoded then its image is recycled.</p>
+     */
+    private void discard(final Future<BufferedImage> frame)
+    {
+        if(!frame.cancel(false/*a decode in progress completes*/) && frame.isDone())
+        {
+            try
+            {
+                recycle(frame.get());
+            } catch(final InterruptedException ie)
+            {
+                // the frame is done so this cannot happen
+                Thread.currentThread().interrupt();
+            } catch(final ExecutionException ee)
+            {
+                // the failure is of a frame that is no longer wanted
+            }
+        } /* else -- the frame was cancelled before it was decoded */
+    }
+
+    /**
+     * <p>Waits for the prefetched frame.</p>
+     *
+     * @throws IOException if the frame could not be decoded or if the thread
+     *         was interrupted while waiting
+     */
+    private static BufferedImage await(final Future<BufferedImage> frame)
+        throws IOException
+    {
+        try
+        {
+            return frame.get();
+        } catch(final InterruptedException ie)
+        {
+            frame.cancel(false/*a decode in progress completes*/);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a prefetched frame."); // FIXME:  localize
+        } catch(final ExecutionException ee)
+        {
+            final Throwable cause = ee.getCause();
+            if(cause instanceof IOException)
+                throw (IOException)cause;
+            else if(cause instanceof RuntimeException)
+                throw (RuntimeException)cause;
+            else if(cause instanceof Error)
+                throw (Error)cause;
+            else /* unexpected */
+                throw new IOException(cause);
+        }
+    }
+}
+// =============================================================================
+/*
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
@@ -0,0 +1,42 @@
+package com.realityinteractive.imageio.tga;
+
+/*
+ * TGATensorLayout.java
+ * Copyright (c) 2003 Reality Interactive, Inc.
+ *   See bottom of file for license and warranty information.
+ */
+
+/**
+ * <p>The order of the <code>float</code> samples of an image that is read
+ * as a tensor (see {@link TGAImageReader#readTensor(int, java.nio.FloatBuffer, TGATensorLayout, float[], float[], javax.imageio.ImageReadParam)}).
+ * The channels are R, G, B (and A) for true color and grey (and alpha) for
+ * monochrome.  The rows are from the top of the image.</p>
+ */
+public enum TGATensorLayout
+{
+    /**
+     * <p>Planar:  each channel is a plane of rows of samples.</p>
+     */
+    CHW,
+
+    /**
+     * <p>Interleaved:  each row is of pixels of the samples of each channel.</p>
+     */
+    HWC;
+}
+// =============================================================================
+/*
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
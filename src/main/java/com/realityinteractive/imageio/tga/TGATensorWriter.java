@@ -0,0 +1,166 @@
+package com.realityinteractive.imageio.tga;
+
+/*
+ * TGATensorWriter.java
+ * Copyright (c) 2003 Reality Interactive, Inc.
+ *   See bottom of file for license and warranty information.
+ */
+
+import java.nio.Buffer;
+import java.nio.FloatBuffer;
+
+/**
+ * <p>Writes the rows of an image as they are decoded to normalized 
+ * <code>float</code> samples of a tensor so that the image is never 
+ * allocated.  Each sample is normalized by a lookup of its channel so that
+ * <code>(sample / 255 - mean) / standardDeviation</code> is only computed
+ * 256 times per channel.</p>
+ */
+final class TGATensorWriter implements TGAImageReader.RowConsumer
+{
+    /**
+     * <p>The size of the image and the number of samples per pixel.</p>
+     */
+    private final int width, height;
+    private final int numberOfBands;
+
+    /**
+     * <p>If <code>true</code> then the rows are given bottom-to-top.</p>
+     */
+    private final boolean isBottomToTop;
+
+    /**
+     * <p>The layout of the tensor.</p>
+     */
+    private final TGATensorLayout layout;
+
+    /**
+     * <p>The tensor.  The samples are written at absolute positions from
+     * <code>base</code>.</p>
+     */
+    private final FloatBuffer output;
+    private final int base;
+
+    /**
+     * <p>The offset in a decoded pixel of the sample of each channel (the
+     * decoded pixels are BGR(A) while the channels are RGB(A)).</p>
+     */
+    private final int[] sampleOffsets;
+
+    /**
+     * <p>The normalized value of each sample value indexed by channel.</p>
+     */
+    private final float[][] values;
+
+    /**
+     * <p>The normalized samples of a row (of a channel if planar).</p>
+     */
+    private final float[] samples;
+
+    /**
+     * <p>The number of rows that have been given.</p>
+     */
+    private int rowsAdded;
+
+    // =========================================================================
+    /**
+     * <p>Constructs a writer of an image of the specified size.</p>
+     *
+     * @param  width the width of the image
+     * @param  height the height of the image
+     * @param  numberOfBands the number of samples per pixel:  grey, grey and
+     *         alpha, BGR or BGRA
+     * @param  isBottomToTop if <code>true</code> then the rows are given
+     *         bottom-to-top
+     * @param  layout the layout of the tensor
+     * @param  mean the mean of each channel (may be <code>null</code> for
+     *         zero)
+     * @param  standardDeviation the standard deviation of each channel (may 
+     *         be <code>null</code> for one)
+     * @param  output the tensor which is written from its position
+     */
+    TGATensorWriter(final int width, final int height, final int numberOfBands,
+                    final boolean isBottomToTop, final TGATensorLayout layout,
+                    final float[] mean, final float[] standardDeviation,
+                    final FloatBuffer output)
+    {
+        this.width = width;
+        this.height = height;
+        this.numberOfBands = numberOfBands;
+        this.isBottomToTop = isBottomToTop;
+        this.layout = layout;
+        this.output = output.duplicate();
+        this.base = output.position();
+
+        sampleOffsets = new int[numberOfBands];
+        for(int channel=0; channel<numberOfBands; channel++)
+            sampleOffsets[channel] = channel;
+        if(numberOfBands >= 3)
+        {
+            sampleOffsets[0] = 2;
+            sampleOffsets[2] = 0;
+        } /* else -- grey (and alpha) is in order */
+
+        values = new float[numberOfBands][256];
+        for(int channel=0; channel<numberOfBands; channel++)
+        {
+            final float channelMean = (mean == null) ? 0.0f : mean[channel];
+            final float channelDeviation = (standardDeviation == null) ? 1.0f : standardDeviation[channel];
+            for(int value=0; value<256; value++)
+                values[channel][value] = ((value / 255.0f) - channelMean) / channelDeviation;
+        }
+
+        samples = new float[(layout == TGATensorLayout.HWC) ? (width * numberOfBands) : width];
+    }
+
+    /**
+     * <p>Adds the next row of the image.</p>
+     *
+     * @param  row the decoded row
+     * @return <code>true</code> (every row is wanted)
+     * @see TGAImageReader.RowConsumer#addRow(byte[])
+     */
+    public boolean addRow(final byte[] row)
+    {
+        final int y = rowsAdded++;
+        final int imageY = isBottomToTop ? (height - y - 1) : y;
+        if(layout == TGATensorLayout.HWC)
+        {
+            for(int x=0, index=0; x<width; x++, index+=numberOfBands)
+            {
+                for(int channel=0; channel<numberOfBands; channel++)
+                    samples[index + channel] = values[channel][row[index + sampleOffsets[channel]] & 0xFF];
+            }
+            ((Buffer)output).position(base + (imageY * samples.length)); // cast is workaround for https://jira.mongodb.org/browse/JAVA-2559
+            output.put(samples);
+        } else /* planar */
+        {
+            final int planeSize = width * height;
+            for(int channel=0; channel<numberOfBands; channel++)
+            {
+                final float[] channelValues = values[channel];
+                for(int x=0, index=sampleOffsets[channel]; x<width; x++, index+=numberOfBands)
+                    samples[x] = channelValues[row[index] & 0xFF];
+                ((Buffer)output).position(base + (channel * planeSize) + (imageY * width)); // cast is workaround for https://jira.mongodb.org/browse/JAVA-2559
+                output.put(samples);
+            }
+        }
+        return true;
+    }
+}
+// =============================================================================
+/*
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
@@ -0,0 +1,439 @@
+package com.realityinteractive.imageio.tga;
+
+/*
+ * TGATileDecoder.java
+ * Copyright (c) 2003 Reality Interactive, Inc.
+ *   See bottom of file for license and warranty information.
+ */
+
+import java.awt.Rectangle;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * <p>Decodes rectangular regions of a TGA from a seekable
+ * {@link ImageInputStream} without decoding the rest of the image.</p>
+ *
+ * <p>The rows of uncompressed pixel data are at computed offsets so only
+ * the <code>byte</code>s of the region are read.  RLE packets may span
+ * rows so the start of each row cannot be computed.  Instead the offset and
+ * RLE packet state at the start of each row are recorded in an index that
+ * is built by a single pass over the packets (without converting any
+ * pixels).  The index is only extended as far as the rows that have been
+ * requested.  A region is then decoded by resuming at the start of its
+ * first row and skipping the pixels outside of the region.</p>
+ *
+ * <p>The region is in image coordinates (<code>0, 0</code> is the top left)
+ * and the destination is in the layout of
+ * {@link TGAImageReader#getImageTypeSpecifier(TGAHeader)}.</p>
+ */
+final class TGATileDecoder
+{
+    /**
+     * <p>The seekable input from which the TGA is read.</p>
+     */
+    private final ImageInputStream input;
+
+    /**
+     * <p>The header of the TGA.</p>
+     */
+    private final TGAHeader header;
+
+    /**
+     * <p>The color map or <code>null</code> if there is none.</p>
+     */
+    private final int[] colorMap;
+
+    /**
+     * <p>The number of <code>byte</code>s per destination pixel.</p>
+     */
+    private final int destinationBytesPerPixel;
+
+    /**
+     * <p>The number of <code>byte</code>s per source pixel.  For 1 bit
+     * monochrome this is <code>0</code>.</p>
+     */
+    private final int sourceBytesPerPixel;
+
+    // RLE packet index
+    /**
+     * <p>The offset in the input of the start of each row and the RLE packet
+     * state there.  There is an entry for each row of the pixel data (in
+     * the order in which they are stored) and one for the end of the
+     * data.</p>
+     */
+    private long[] rowOffsets;
+    private int[] rowPacketRemaining;
+    private boolean[] rowRawPacket;
+    private byte[] rowRunPixels;
+
+    /**
+     * <p>The number of entries of the index that are known.</p>
+     */
+    private int indexedRows;
+
+    /**
+     * <p>If <code>true</code> then the end of the input was reached while
+     * building the index.  The rows from <code>indexedRows</code> on are
+     * missing.</p>
+     */
+    private boolean isTruncated;
+
+    // =========================================================================
+    /**
+     * <p>Constructs a decoder for the TGA described by the header.</p>
+     *
+     * @param  input the seekable input from which the TGA is read
+     * @param  header the <code>TGAHeader</code> of the TGA
+     * @param  colorMap the color map (see {@link TGAPixelDecoder#createColorMap(TGAHeader, byte[])})
+     *         or <code>null</code> if there is none
+     * @param  destinationBytesPerPixel the number of <code>byte</code>s per
+     *         destination pixel
+     */
+    TGATileDecoder(final ImageInputStream input, final TGAHeader header,
+                   final int[] colorMap, final int destinationBytesPerPixel)
+    {
+        this.input = input;
+        this.header = header;
+        this.colorMap = colorMap;
+        this.destinationBytesPerPixel = destinationBytesPerPixel;
+        this.sourceBytesPerPixel = (header.getBitsPerPixel() == 1) ? 0 : (header.getBitsPerPixel() + 7) / 8;
+    }
+
+    /**
+     * <p>Retrieves the header of the TGA.</p>
+     */
+    TGAHeader getHeader()
+    {
+        return header;
+    }
+
+    /**
+     * <p>Decodes a region of the image.</p>
+     *
+     * @param  region the region of the image to decode.  It must be within
+     *         the bounds of the image.
+     * @param  destination the destination samples
+     * @param  destinationOffset the offset in <code>destination</code> of
+     *         the top left pixel of the region
+     * @param  scanlineStride the number of <code>byte</code>s between rows
+     *         in <code>destination</code>
+     * @param  strict if <code>true</code> then malformed pixel data fails the
+     *         decoding otherwise the missing pixels are zero
+     * @throws IOException if there is an I/O error while reading the input or
+     *         if decoding is strict and the pixel data is malformed
+     */
+    synchronized void decode(final Rectangle region, final byte[] destination,
+                             final int destinationOffset, final int scanlineStride,
+                             final boolean strict)
+        throws IOException
+    {
+        if(region.isEmpty())
+            return;
+        /* else -- there are pixels to decode */
+
+        // the rows are decoded in the order in which they are stored
+        final int firstRow, lastRow;
+        if(header.isBottomToTop())
+        {
+            firstRow = header.getHeight() - (region.y + region.height);
+            lastRow = header.getHeight() - region.y - 1;
+        } else /* top-to-bottom */
+        {
+            firstRow = region.y;
+            lastRow = region.y + region.height - 1;
+        }
+
+        final TGAPixelDecoder decoder = new TGAPixelDecoder(header, colorMap, destinationBytesPerPixel,
+                                                            false/*not packed*/, strict);
+        if(header.isCompressed())
+            decodeCompressed(decoder, region, firstRow, lastRow, destination, destinationOffset, scanlineStride, strict);
+        else /* uncompressed */
+            decodeUncompressed(decoder, region, firstRow, lastRow, destination, destinationOffset, scanlineStride, strict);
+    }
+
+    /**
+     * <p>Retrieves the offset in <code>destination</code> of the specified
+     * row of the pixel data.</p>
+     */
+    private int getDestinationOffset(final Rectangle region, final int row,
+                                     final int destinationOffset,
+                                     final int scanlineStride)
+    {
+        return destinationOffset +
+               ((TGAImageReader.getDestinationRow(header, row) - region.y) * scanlineStride);
+    }
+
+    /**
+     * <p>Decodes a region of uncompressed pixel data.  Only the
+     * <code>byte</code>s of the region are read from each row.</p>
+     */
+    private void decodeUncompressed(final TGAPixelDecoder decoder, final Rectangle region,
+                                    final int firstRow, final int lastRow,
+                                    final byte[] destination, final int destinationOffset,
+                                    final int scanlineStride, final boolean strict)
+        throws IOException
+    {
+        // 1 bit rows are byte aligned so a region that does not start on a
+        // byte is decoded from the preceding byte and shifted
+        final int bitOffset = (sourceBytesPerPixel == 0) ? (region.x & 7) : 0;
+        final long startOffset;
+        final int length;
+        if(sourceBytesPerPixel == 0)
+        {
+            startOffset = region.x / 8;
+            length = (bitOffset + region.width + 7) / 8;
+        } else /* whole bytes per pixel */
+        {
+            startOffset = (long)region.x * sourceBytesPerPixel;
+            length = region.width * sourceBytesPerPixel;
+        }
+        final int rowLength = region.width * destinationBytesPerPixel;
+        final byte[] shifted = (bitOffset == 0) ? null : new byte[bitOffset + region.width];
+
+        final long rowSize = TGAImageReader.getRowSize(header);
+        final ByteBuffer buffer = ByteBuffer.allocate(length);
+        for(int row=firstRow; row<=lastRow; row++)
+        {
+            final int offset = getDestinationOffset(region, row, destinationOffset, scanlineStride);
+
+            // cast is workaround for https://jira.mongodb.org/browse/JAVA-2559
+            ((Buffer)buffer).clear();
+            input.seek(header.getPixelDataOffset() + (row * rowSize) + startOffset);
+            final int bytesRead = read(buffer.array(), length);
+            if(bytesRead < length)
+            {
+                if(strict)
+                    throw new IOException("The pixel data is truncated."); // FIXME:  localize
+                /* else -- lenient so the missing pixels are zero */
+
+                ((Buffer)buffer).limit(bytesRead);
+                Arrays.fill(destination, offset, offset + rowLength, (byte)0);
+            } /* else -- the row is complete */
+
+            if(bitOffset == 0)
+            {
+                decoder.decode(buffer, destination, offset, region.width);
+            } else /* the row is shifted */
+            {
+                final int decoded = decoder.decode(buffer, shifted, 0, shifted.length);
+                System.arraycopy(shifted, bitOffset, destination, offset,
+                                 Math.max(0, decoded - bitOffset));
+            }
+        }
+    }
+
+    /**
+     * <p>Decodes a region of RLE compressed pixel data.  Decoding resumes at
+     * the first row of the region from the index and the pixels of each row
+     * that are outside of the region are skipped.</p>
+     */
+    private void decodeCompressed(final TGAPixelDecoder decoder, final Rectangle region,
+                                  final int firstRow, final int lastRow,
+                                  final byte[] destination, final int destinationOffset,
+                                  final int scanlineStride, final boolean strict)
+        throws IOException
+    {
+        final int width = header.getWidth();
+        final int rowLength = region.width * destinationBytesPerPixel;
+
+        // resume at the first row
+        buildIndex(lastRow + 1);
+        TGAInputBuffer buffer = null;
+        if(firstRow < indexedRows)
+        {
+            input.seek(rowOffsets[firstRow]);
+            decoder.setPacketState(rowPacketRemaining[firstRow], rowRawPacket[firstRow],
+                                   rowRunPixels, firstRow * destinationBytesPerPixel);
+            final long dataSize = rowOffsets[Math.min(lastRow + 1, indexedRows - 1)] - rowOffsets[firstRow];
+            buffer = new TGAInputBuffer(input, getBufferSize(decoder, dataSize), Long.MAX_VALUE, false);
+        } /* else -- the region is beyond the end of the data */
+
+        for(int row=firstRow; row<=lastRow; row++)
+        {
+            final int offset = getDestinationOffset(region, row, destinationOffset, scanlineStride);
+
+            // skip the pixels before the region, decode the region and skip
+            // the pixels after it
+            final boolean complete = (buffer != null) &&
+                                     skip(decoder, buffer, region.x) &&
+                                     decode(decoder, buffer, destination, offset, region.width) &&
+                                     skip(decoder, buffer, width - (region.x + region.width));
+            if(!complete)
+            {
+                if(strict)
+                    throw new IOException("The pixel data is truncated."); // FIXME:  localize
+                /* else -- lenient so the rest of the region is zero */
+
+                for(int remainingRow=row; remainingRow<=lastRow; remainingRow++)
+                {
+                    final int remainingOffset = getDestinationOffset(region, remainingRow, destinationOffset, scanlineStride);
+                    Arrays.fill(destination, remainingOffset, remainingOffset + rowLength, (byte)0);
+                }
+                return;
+            } /* else -- the row was decoded */
+        }
+    }
+
+    /**
+     * <p>Builds the RLE packet index so that it includes at least the
+     * specified number of rows.  The index is extended from the last row
+     * that is known.</p>
+     *
+     * @param  rows the number of rows whose start is needed
+     * @throws IOException if there is an I/O error while reading the input
+     */
+    private void buildIndex(final int rows)
+        throws IOException
+    {
+        final int height = header.getHeight();
+        if(rowOffsets == null)
+        {
+            rowOffsets = new long[height + 1];
+            rowPacketRemaining = new int[height + 1];
+            rowRawPacket = new boolean[height + 1];
+            rowRunPixels = new byte[(height + 1) * destinationBytesPerPixel];
+            rowOffsets[0] = header.getPixelDataOffset();
+            indexedRows = 1;
+        } /* else -- the index was started */
+
+        // the start of each requested row and of the row that follows it
+        // (the end of the data of the last requested row)
+        final int needed = Math.min(rows + 1, height + 1);
+        if((indexedRows >= needed) || isTruncated)
+            return;
+        /* else -- the index must be extended */
+
+        // resume at the last known row.  Strictness does not matter as no
+        // pixels are converted.
+        final int width = header.getWidth();
+        int row = indexedRows - 1;
+        final TGAPixelDecoder decoder = new TGAPixelDecoder(header, colorMap, destinationBytesPerPixel,
+                                                            false/*not packed*/, false/*lenient*/);
+        decoder.setPacketState(rowPacketRemaining[row], rowRawPacket[row],
+                               rowRunPixels, row * destinationBytesPerPixel);
+        final long startOffset = rowOffsets[row];
+        input.seek(startOffset);
+
+        // in the worst case every pixel is its own packet
+        final long dataSize = (long)(needed - indexedRows) * width * (sourceBytesPerPixel + 1);
+        final TGAInputBuffer buffer = new TGAInputBuffer(input, getBufferSize(decoder, dataSize), Long.MAX_VALUE, false);
+        while(indexedRows < needed)
+        {
+            if(!skip(decoder, buffer, width))
+            {
+                isTruncated = true;
+                return;
+            } /* else -- the row was skipped */
+
+            // record the start of the next row
+            row++;
+            rowOffsets[row] = startOffset + buffer.getBytesConsumed();
+            rowPacketRemaining[row] = decoder.getPacketRemaining();
+            rowRawPacket[row] = decoder.isRawPacket();
+            decoder.getRunPixel(rowRunPixels, row * destinationBytesPerPixel);
+            indexedRows++;
+        }
+    }
+
+    /**
+     * <p>Retrieves the size of the buffer for the specified amount of data.
+     * It is bounded by {@link TGAImageReadParam#MAXIMUM_ADAPTIVE_BUFFER_SIZE}
+     * and is at least large enough for a pixel.</p>
+     */
+    private static int getBufferSize(final TGAPixelDecoder decoder, final long dataSize)
+    {
+        return (int)Math.max(decoder.getMinimumInput(),
+                             Math.min(dataSize, TGAImageReadParam.MAXIMUM_ADAPTIVE_BUFFER_SIZE));
+    }
+
+    /**
+     * <p>Skips the specified number of RLE compressed pixels refilling the
+     * buffer as needed.</p>
+     *
+     * @return <code>false</code> if the end of the input was reached first
+     */
+    private static boolean skip(final TGAPixelDecoder decoder, final TGAInputBuffer buffer,
+                                final int pixelCount)
+        throws IOException
+    {
+        int remaining = pixelCount;
+        while(remaining > 0)
+        {
+            final boolean endOfFile = buffer.fill(decoder.getMinimumInput());
+            final int skipped = decoder.skip(buffer.getBuffer(), remaining);
+            if((skipped == 0) && endOfFile)
+                return false;
+            /* else -- progress was made or more data can be read */
+            remaining -= skipped;
+        }
+        return true;
+    }
+
+    /**
+     * <p>Decodes the specified number of RLE compressed pixels refilling the
+     * buffer as needed.</p>
+     *
+     * @return <code>false</code> if the end of the input was reached first
+     */
+    private boolean decode(final TGAPixelDecoder decoder, final TGAInputBuffer buffer,
+                           final byte[] destination, final int destinationOffset,
+                           final int pixelCount)
+        throws IOException
+    {
+        int index = destinationOffset;
+        int remaining = pixelCount;
+        while(remaining > 0)
+        {
+            final boolean endOfFile = buffer.fill(decoder.getMinimumInput());
+            final int decoded = decoder.decode(buffer.getBuffer(), destination, index, remaining);
+            if((decoded == 0) && endOfFile)
+                return false;
+            /* else -- progress was made or more data can be read */
+            index += decoded * destinationBytesPerPixel;
+            remaining -= decoded;
+        }
+        return true;
+    }
+
+    /**
+     * <p>Reads up to <code>length</code> <code>byte</code>s from the input
+     * into the start of the array.</p>
+     *
+     * @return the number of <code>byte</code>s that were read
+     */
+    private int read(final byte[] array, final int length)
+        throws IOException
+    {
+        int bytesRead = 0;
+        while(bytesRead < length)
+        {
+            final int count = input.read(array, bytesRead, length - bytesRead);
+            if(count == -1)
+                break;
+            /* else -- more data may be available */
+            bytesRead += count;
+        }
+        return bytesRead;
+    }
+}
+// =============================================================================
+/*
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
@@ -0,0 +1,166 @@
+package com.realityinteractive.imageio.tga;
+
+/*
+ * TGARowKernels.java
+ * Copyright (c) 2003 Reality Interactive, Inc.
+ *   See bottom of file for license and warranty information.
+ */
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * <p>The row kernels of {@link TGAPixelDecoder} (and of packed 
+ * <code>int</code> reads) that read multi-byte pixels for Java 17 and 
+ * later (the multi-release version of the baseline class in 
+ * <code>src/main/java</code>).  Each pixel is read as a single
+ * little-endian word through a <code>byte[]</code> view 
+ * <code>VarHandle</code> (which the JIT compiles to an unaligned load)
+ * rather than a <code>byte</code> at a time.</p>
+ */
+final class TGARowKernels
+{
+    /**
+     * <p>Little-endian <code>short</code> and <code>int</code> views of a
+     * <code>byte[]</code>.</p>
+     */
+    private static final VarHandle SHORT = MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    // =========================================================================
+    /**
+     * <p>There are only static methods.</p>
+     */
+    private TGARowKernels() {}
+
+    /**
+     * <p>Expands little-endian 5-5-5 RGB to BGR (the high bit is ignored).</p>
+     *
+     * @param  source the little-endian pixels
+     * @param  sourceOffset the index of the first pixel in the source
+     * @param  destination the samples
+     * @param  destinationOffset the index of the first sample
+     * @param  destinationBytesPerPixel the number of samples per destination
+     *         pixel (of which the first three are written)
+     * @param  pixelCount the number of pixels
+     */
+    static void expandRGB555(final byte[] source, final int sourceOffset,
+                             final byte[] destination, final int destinationOffset,
+                             final int destinationBytesPerPixel, final int pixelCount)
+    {
+        final byte[] fiveToEight = TGAPixelDecoder.FIVE_TO_EIGHT_BITS;
+        for(int i=0, s=sourceOffset, d=destinationOffset; i<pixelCount; i++, s+=2, d+=destinationBytesPerPixel)
+        {
+            final int data = (short)SHORT.get(source, s);
+            destination[d + 0] = fiveToEight[data         & 0x1F]; // blue
+            destination[d + 1] = fiveToEight[(data >>> 5) & 0x1F]; // green
+            destination[d + 2] = fiveToEight[(data >>> 10) & 0x1F]; // red
+        }
+    }
+
+    /**
+     * <p>Copies the BGR (grey) samples of each pixel without its alpha.  A
+     * BGRA pixel is read as a single <code>int</code>.</p>
+     *
+     * @param  source the pixels
+     * @param  sourceOffset the index of the first pixel in the source
+     * @param  sourceBytesPerPixel the number of samples per source pixel
+     * @param  destination the samples
+     * @param  destinationOffset the index of the first sample
+     * @param  destinationBytesPerPixel the number of samples per destination
+     *         pixel (one less than the source)
+     * @param  pixelCount the number of pixels
+     */
+    static void dropAlpha(final byte[] source, final int sourceOffset,
+                          final int sourceBytesPerPixel, final byte[] destination, 
+                          final int destinationOffset, final int destinationBytesPerPixel,
+                          final int pixelCount)
+    {
+        if(sourceBytesPerPixel == 4)
+        {
+            for(int i=0, s=sourceOffset, d=destinationOffset; i<pixelCount; i++, s+=4, d+=3)
+            {
+                final int pixel = (int)INT.get(source, s);
+                destination[d + 0] = (byte)pixel;
+                destination[d + 1] = (byte)(pixel >>> 8);
+                destination[d + 2] = (byte)(pixel >>> 16);
+            }
+        } else /* grey and alpha */
+        {
+            for(int i=0, s=sourceOffset, d=destinationOffset; i<pixelCount; i++, s+=sourceBytesPerPixel, d+=destinationBytesPerPixel)
+                destination[d] = source[s];
+        }
+    }
+
+    /**
+     * <p>Packs a row of interleaved samples into <code>int</code>s of 
+     * <code>0xAARRGGBB</code>.  A BGRA pixel is already a little-endian 
+     * ARGB <code>int</code> and a BGR pixel is the low three 
+     * <code>byte</code>s of one so each (but the last BGR) pixel is read as
+     * a single <code>int</code>.  Monochrome is replicated to R, G and B and
+     * an opaque pixel has an alpha of zero (which a <code>TYPE_INT_RGB</code>
+     * image ignores).</p>
+     *
+     * @param  row the interleaved BGR(A) or grey (alpha) samples
+     * @param  numberOfBands the number of samples per pixel
+     * @param  destination the packed pixels
+     * @param  destinationOffset the index of the first pixel
+     * @param  pixelCount the number of pixels
+     */
+    static void packRow(final byte[] row, final int numberOfBands,
+                        final int[] destination, final int destinationOffset,
+                        final int pixelCount)
+    {
+        switch(numberOfBands)
+        {
+            case 4:
+                for(int i=0, s=0; i<pixelCount; i++, s+=4)
+                    destination[destinationOffset + i] = (int)INT.get(row, s);
+                break;
+
+            case 3:
+            {
+                // the last pixel has no fourth byte to read
+                final int wordCount = pixelCount - 1;
+                for(int i=0, s=0; i<wordCount; i++, s+=3)
+                    destination[destinationOffset + i] = (int)INT.get(row, s) & 0xFFFFFF;
+                if(pixelCount > 0)
+                {
+                    final int s = wordCount * 3;
+                    destination[destinationOffset + wordCount] = (row[s] & 0xFF) | ((row[s + 1] & 0xFF) << 8) | ((row[s + 2] & 0xFF) << 16);
+                } /* else -- there are no pixels */
+                break;
+            }
+
+            case 2:
+                for(int i=0, s=0; i<pixelCount; i++, s+=2)
+                {
+                    final int pixel = (short)SHORT.get(row, s);
+                    destination[destinationOffset + i] = ((pixel & 0xFF) * 0x010101) | ((pixel >> 8) << 24);
+                }
+                break;
+
+            default: // grey
+                for(int i=0; i<pixelCount; i++)
+                    destination[destinationOffset + i] = (row[i] & 0xFF) * 0x010101;
+                break;
+        }
+    }
+}
+// =============================================================================
+/*
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
@@ -0,0 +1,50 @@
+package com.realityinteractive.imageio.tga;
+
+/*
+ * TGAExecutors.java
+ * Copyright (c) 2003 Reality Interactive, Inc.
+ *   See bottom of file for license and warranty information.
+ */
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * <p>The executors of the background reads of {@link TGAReadAheadInputBuffer}
+ * for Java 21 and later (the multi-release version of the baseline class in
+ * <code>src/main/java</code>).  A read ahead spends nearly all of its time 
+ * blocked on the input so each is made on its own virtual thread rather
+ * than holding a platform thread while it waits.</p>
+ */
+final class TGAExecutors
+{
+    /**
+     * <p>There are only static methods.</p>
+     */
+    private TGAExecutors() {}
+
+    /**
+     * <p>Creates the executor on which the reads ahead are made.  Virtual
+     * threads are always daemon threads.</p>
+     */
+    static ExecutorService newReadAheadExecutor()
+    {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("TGA read-ahead").factory());
+    }
+}
+// =============================================================================
+/*
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
@@ -0,0 +1,58 @@
+package com.realityinteractive.imageio.tga;
+
+/*
+ * NativeImageSmoke.java
+ * Copyright (c) 2003 Reality Interactive, Inc.
+ *   See bottom of file for license and warranty information.
+ */
+
+import java.io.File;
+import java.nio.ByteBuffer;
+
+/**
+ * <p>A smoke test of a native image:  each TGA file given as an argument is
+ * decoded by {@link TGADecoder#decodeRaw(java.nio.file.Path)} (which uses no
+ * AWT classes) and its size is printed.  The exit status is non-zero if any
+ * file cannot be decoded.</p>
+ */
+public class NativeImageSmoke
+{
+    public static void main(final String[] args)
+    {
+        int failures = 0;
+        for(final String name : args)
+        {
+            try
+            {
+                final TGARawImage image = TGADecoder.decodeRaw(new File(name).toPath());
+                final ByteBuffer samples = image.getSamples();
+                if(samples.remaining() != (image.getWidth() * image.getHeight() * image.getNumberOfBands()))
+                    throw new IllegalStateException("There are " + samples.remaining() + " samples.");
+                /* else -- there is a sample for each band of each pixel */
+
+                System.out.println(name + ": " + image.getWidth() + " x " + image.getHeight() + " x " + image.getNumberOfBands());
+            } catch(final Exception e)
+            {
+                System.err.println(name + ": " + e);
+                failures++;
+            }
+        }
+        System.exit((failures == 0) ? 0 : 1);
+    }
+}
+// =============================================================================
+/*
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
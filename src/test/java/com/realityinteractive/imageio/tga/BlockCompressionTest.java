@@ -0,0 +1,177 @@
+package com.realityinteractive.imageio.tga;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageInputStream;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Decodes the blocks of {@link TGAImageReader#readCompressed(int, javax.imageio.ImageReadParam)}
+ * and compares them with the image read by {@link TGAImageReader#read(int)}.
+ */
+class BlockCompressionTest
+{
+    private TGAImageReader reader(InputStream input) throws IOException {
+        ImageInputStream stream = ImageIO.createImageInputStream(input);
+        TGAImageReader reader = new TGAImageReader(new TGAImageReaderSpi());
+        reader.setInput(stream);
+        return reader;
+    }
+
+    private InputStream resource(String name) {
+        return getClass().getClassLoader().getResourceAsStream(name);
+    }
+
+    // a 6 x 5 uncompressed 32 bit bottom-to-top image with an alpha gradient
+    private static byte[] translucentImage() {
+        byte[] data = new byte[18 + (6 * 5 * 4)];
+        data[2] = 2;
+        data[12] = 6;
+        data[14] = 5;
+        data[16] = 32;
+        data[17] = 8;
+        for (int i = 0; i < 6 * 5; i++) {
+            int offset = 18 + (i * 4);
+            data[offset] = (byte) (i * 8);
+            data[offset + 1] = (byte) (255 - (i * 8));
+            data[offset + 2] = (byte) 0x80;
+            data[offset + 3] = (byte) (i * 7);
+        }
+        return data;
+    }
+
+    // decodes the texture to RGBA
+    private static int[][][] decode(TGACompressedTexture texture) {
+        ByteBuffer data = texture.getData().duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int blocksWide = (texture.getWidth() + 3) / 4;
+        int blocksHigh = (texture.getHeight() + 3) / 4;
+        int blockSize = texture.getFormat().getBlockSize();
+        assertEquals(blocksWide * blocksHigh * blockSize, data.remaining());
+
+        int[][][] pixels = new int[blocksHigh * 4][blocksWide * 4][4];
+        for (int blockY = 0; blockY < blocksHigh; blockY++) {
+            for (int blockX = 0; blockX < blocksWide; blockX++) {
+                int offset = data.position() + (((blockY * blocksWide) + blockX) * blockSize);
+                int[] alpha = new int[16];
+                if (texture.getFormat() == TGACompressedTexture.Format.BC3) {
+                    int alpha0 = data.get(offset) & 0xFF;
+                    int alpha1 = data.get(offset + 1) & 0xFF;
+                    long indices = 0;
+                    for (int i = 0; i < 6; i++) {
+                        indices |= (long) (data.get(offset + 2 + i) & 0xFF) << (8 * i);
+                    }
+                    int[] palette = new int[8];
+                    palette[0] = alpha0;
+                    palette[1] = alpha1;
+                    for (int i = 1; i < 7; i++) {
+                        palette[i + 1] = (alpha0 > alpha1) ? (((7 - i) * alpha0) + (i * alpha1)) / 7 : 0;
+                    }
+                    for (int i = 0; i < 16; i++) {
+                        alpha[i] = palette[(int) ((indices >>> (3 * i)) & 7)];
+                    }
+                    offset += 8;
+                } else {
+                    Arrays.fill(alpha, 255);
+                }
+
+                int color0 = data.getShort(offset) & 0xFFFF;
+                int color1 = data.getShort(offset + 2) & 0xFFFF;
+                int indices = data.getInt(offset + 4);
+                // the 4 color mode is required (3 color mode has transparency)
+                assertTrue(color0 > color1 || indices == 0);
+                int[][] palette = new int[4][];
+                palette[0] = rgb(color0);
+                palette[1] = rgb(color1);
+                palette[2] = new int[3];
+                palette[3] = new int[3];
+                for (int c = 0; c < 3; c++) {
+                    palette[2][c] = ((2 * palette[0][c]) + palette[1][c]) / 3;
+                    palette[3][c] = (palette[0][c] + (2 * palette[1][c])) / 3;
+                }
+                for (int i = 0; i < 16; i++) {
+                    int[] color = palette[(indices >>> (2 * i)) & 3];
+                    int[] pixel = pixels[(blockY * 4) + (i / 4)][(blockX * 4) + (i % 4)];
+                    pixel[0] = color[0];
+                    pixel[1] = color[1];
+                    pixel[2] = color[2];
+                    pixel[3] = alpha[i];
+                }
+            }
+        }
+        return pixels;
+    }
+
+    private static int[] rgb(int color) {
+        int r = (color >> 11) & 0x1F, g = (color >> 5) & 0x3F, b = color & 0x1F;
+        return new int[] { (r << 3) | (r >> 2), (g << 2) | (g >> 4), (b << 3) | (b >> 2) };
+    }
+
+    // the mean absolute error of the RGB (A) of the decoded texture
+    private static double error(BufferedImage image, int[][][] pixels, boolean alpha) {
+        Raster raster = image.getRaster();
+        boolean grey = raster.getNumBands() < 3;
+        long sum = 0;
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                for (int c = 0; c < 3; c++) {
+                    sum += Math.abs(raster.getSample(x, y, grey ? 0 : c) - pixels[y][x][c]);
+                }
+                if (alpha) {
+                    sum += Math.abs(raster.getSample(x, y, raster.getNumBands() - 1) - pixels[y][x][3]);
+                }
+            }
+        }
+        return (double) sum / (image.getWidth() * image.getHeight() * (alpha ? 4 : 3));
+    }
+
+    @Test
+    void opaqueIsBC1() throws IOException {
+        String[] files = new String[] {
+                "integration/test_24_bit_RLE.tga",         // bottom-to-top
+                "integration/test_mono_8_bit.tga",         // grey
+                "integration/test_small_32_bit_RLE.tga",   // opaque alpha
+                "integration/test_small_mono_16_bit.tga"   // opaque grey alpha
+        };
+        for (String file : files) {
+            BufferedImage image = reader(resource(file)).read(0);
+            TGACompressedTexture texture = reader(resource(file)).readCompressed(0, null);
+            assertEquals(TGACompressedTexture.Format.BC1, texture.getFormat(), file);
+            assertEquals(image.getWidth(), texture.getWidth());
+            assertEquals(image.getHeight(), texture.getHeight());
+            assertTrue(texture.getData().isDirect());
+            double error = error(image, decode(texture), false);
+            assertTrue(error < 8, file + " error " + error);
+        }
+    }
+
+    @Test
+    void translucentIsBC3() throws IOException {
+        byte[] data = translucentImage();
+        BufferedImage image = reader(new ByteArrayInputStream(data)).read(0);
+        TGACompressedTexture texture = reader(new ByteArrayInputStream(data)).readCompressed(0, null);
+        assertEquals(TGACompressedTexture.Format.BC3, texture.getFormat());
+        int[][][] pixels = decode(texture);
+
+        // each alpha is within half a step of the block's interpolated alphas
+        Raster raster = image.getRaster();
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                assertTrue(Math.abs(raster.getSample(x, y, 3) - pixels[y][x][3]) <= 32, "alpha at (" + x + ", " + y + ")");
+            }
+        }
+        double error = error(image, pixels, true);
+        assertTrue(error < 8, "error " + error);
+    }
+}
@@ -0,0 +1,193 @@
+package com.realityinteractive.imageio.tga;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+/**
+ * Checks the strict and lenient decoding of malformed TGAs and the limits on
+ * pixel count and bytes read.
+ */
+class DecodePolicyTest
+{
+    /**
+     * Creates an 18 byte header followed by the specified data.  The
+     * {@link TGAConstants#BOTTOM_TOP_BIT} is set which puts the first row at
+     * the top so the rows are top-to-bottom.
+     */
+    static byte[] tga(int imageType, int colorMapLength, int bitsPerColorMapEntry,
+                      int width, int height, int bitsPerPixel, int... data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(0); // idLength
+        out.write(colorMapLength > 0 ? 1 : 0);
+        out.write(imageType);
+        out.write(0); out.write(0); // first color map entry
+        out.write(colorMapLength & 0xFF); out.write(colorMapLength >>> 8);
+        out.write(bitsPerColorMapEntry);
+        out.write(0); out.write(0); out.write(0); out.write(0); // origin
+        out.write(width & 0xFF); out.write(width >>> 8);
+        out.write(height & 0xFF); out.write(height >>> 8);
+        out.write(bitsPerPixel);
+        out.write(TGAConstants.BOTTOM_TOP_BIT);
+        for (int b : data) {
+            out.write(b);
+        }
+        return out.toByteArray();
+    }
+
+    static BufferedImage read(byte[] tga, boolean strict) throws IOException {
+        TGAImageReadParam param = new TGAImageReadParam();
+        param.setStrict(strict);
+        return read(tga, param);
+    }
+
+    static BufferedImage read(byte[] tga, TGAImageReadParam param) throws IOException {
+        ImageInputStream input = new MemoryCacheImageInputStream(new ByteArrayInputStream(tga));
+        try {
+            TGAImageReader reader = new TGAImageReader(new TGAImageReaderSpi());
+            reader.setInput(input);
+            return reader.read(0, param);
+        } finally {
+            input.close();
+        }
+    }
+
+    private static void assertFails(final byte[] tga, final TGAImageReadParam param) {
+        assertThrows(IOException.class, new Executable() {
+            public void execute() throws Throwable {
+                read(tga, param);
+            }
+        });
+    }
+
+    private static void assertFailsStrict(final byte[] tga) {
+        TGAImageReadParam param = new TGAImageReadParam();
+        param.setStrict(true);
+        assertFails(tga, param);
+    }
+
+    @Test
+    void truncatedPixelData() throws IOException {
+        // 2x2 grey with only 3 of 4 pixels
+        byte[] tga = tga(TGAConstants.MONO, 0, 0, 2, 2, 8, 10, 20, 30);
+
+        assertFailsStrict(tga);
+
+        BufferedImage image = read(tga, false);
+        assertEquals(10, image.getRaster().getSample(0, 0, 0));
+        assertEquals(30, image.getRaster().getSample(0, 1, 0));
+        assertEquals(0, image.getRaster().getSample(1, 1, 0));
+    }
+
+    @Test
+    void truncatedRLEData() throws IOException {
+        // 4x1 grey with a run of 2 and no further packet
+        byte[] tga = tga(TGAConstants.RLE_MONO, 0, 0, 4, 1, 8, 0x81, 99);
+
+        assertFailsStrict(tga);
+
+        BufferedImage image = read(tga, false);
+        assertEquals(99, image.getRaster().getSample(1, 0, 0));
+        assertEquals(0, image.getRaster().getSample(2, 0, 0));
+    }
+
+    @Test
+    void runPastImageEnd() throws IOException {
+        // 2x1 grey with a run of 3
+        byte[] tga = tga(TGAConstants.RLE_MONO, 0, 0, 2, 1, 8, 0x82, 77);
+
+        assertFailsStrict(tga);
+
+        BufferedImage image = read(tga, false);
+        assertEquals(77, image.getRaster().getSample(0, 0, 0));
+        assertEquals(77, image.getRaster().getSample(1, 0, 0));
+    }
+
+    @Test
+    void colorMapIndexOutOfRange() throws IOException {
+        // 2x1 with a two entry grey color map and indices 1 and 5
+        byte[] tga = tga(TGAConstants.COLOR_MAP, 2, 8, 2, 1, 8, 40, 80, 1, 5);
+
+        assertFailsStrict(tga);
+
+        BufferedImage image = read(tga, false);
+        assertEquals(0xFF505050, image.getRGB(0, 0));
+        assertEquals(0xFF000000, image.getRGB(1, 0));
+    }
+
+    @Test
+    void maximumPixelCount() {
+        // a hostile 65535x65535 header with no pixel data must fail before
+        // anything is allocated in either mode
+        byte[] tga = tga(TGAConstants.TRUE_COLOR, 0, 0, 65535, 65535, 32);
+
+        assertFails(tga, new TGAImageReadParam());
+        assertFailsStrict(tga);
+
+        TGAImageReadParam param = new TGAImageReadParam();
+        param.setMaximumPixelCount(3);
+        assertFails(tga(TGAConstants.MONO, 0, 0, 2, 2, 8, 1, 2, 3, 4), param);
+    }
+
+    @Test
+    void headerLargerThanStream() throws IOException {
+        // a header within the limit that claims far more pixels than the few
+        // bytes of pixel data could describe must fail before anything is
+        // allocated when the length of the stream is known, even if lenient
+        assertFailsWithLength(tga(TGAConstants.TRUE_COLOR, 0, 0, 16384, 16384, 32, 1, 2, 3, 4));
+        assertFailsWithLength(tga(TGAConstants.RLE_TRUE_COLOR, 0, 0, 16384, 16384, 32, 0xFF, 1, 2, 3, 4));
+
+        // a plausibly truncated image is still read when lenient
+        byte[] tga = tga(TGAConstants.MONO, 0, 0, 2, 2, 8, 10, 20, 30);
+        assertEquals(20, readWithLength(tga).getRaster().getSample(1, 0, 0));
+    }
+
+    /**
+     * Reads leniently from a stream whose length is known.
+     */
+    private static BufferedImage readWithLength(final byte[] tga) throws IOException {
+        ImageInputStream input = new MemoryCacheImageInputStream(new ByteArrayInputStream(tga)) {
+            @Override
+            public long length() {
+                return tga.length;
+            }
+        };
+        try {
+            TGAImageReader reader = new TGAImageReader(new TGAImageReaderSpi());
+            reader.setInput(input);
+            return reader.read(0, new TGAImageReadParam());
+        } finally {
+            input.close();
+        }
+    }
+
+    private static void assertFailsWithLength(final byte[] tga) {
+        assertThrows(IOException.class, new Executable() {
+            public void execute() throws Throwable {
+                readWithLength(tga);
+            }
+        });
+    }
+
+    @Test
+    void maximumBytesRead() throws IOException {
+        byte[] tga = tga(TGAConstants.MONO, 0, 0, 2, 2, 8, 1, 2, 3, 4);
+
+        TGAImageReadParam param = new TGAImageReadParam();
+        param.setMaximumBytesRead(18 + 3);
+        assertFails(tga, param);
+
+        param.setMaximumBytesRead(18 + 4);
+        assertEquals(4, read(tga, param).getRaster().getSample(1, 1, 0));
+    }
+}
@@ -0,0 +1,82 @@
+package com.realityinteractive.imageio.tga;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static com.realityinteractive.imageio.tga.TestResources.read;
+import static com.realityinteractive.imageio.tga.TestResources.samples;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+/**
+ * Compares the images and raw samples of {@link TGADecoder} with those read by
+ * {@link TGAImageReader#read(int)}.
+ */
+class DecoderTest
+{
+    private File resource(String name) throws URISyntaxException {
+        return new File(getClass().getClassLoader().getResource(name).toURI());
+    }
+
+    @Test
+    void decode() throws IOException, URISyntaxException {
+        File[] files = resource("integration").listFiles();
+        for (File file : files) {
+            if (!file.getName().endsWith(".tga")) {
+                continue;
+            }
+            BufferedImage expected = read(file);
+            BufferedImage image = TGADecoder.decode(file.toPath());
+            assertEquals(expected.getType(), image.getType(), file.getName());
+            assertArrayEquals(samples(expected), samples(image), file.getName());
+
+            // from the position of a direct buffer which is left alone
+            byte[] data = Files.readAllBytes(file.toPath());
+            ByteBuffer buffer = ByteBuffer.allocateDirect(data.length + 5);
+            buffer.position(5);
+            buffer.put(data);
+            buffer.position(5);
+            assertArrayEquals(samples(expected), samples(TGADecoder.decode(buffer)), file.getName());
+            assertEquals(5, buffer.position());
+
+            // raw samples are those of the image
+            TGARawImage raw = TGADecoder.decodeRaw(file.toPath());
+            assertEquals(expected.getWidth(), raw.getWidth());
+            assertEquals(expected.getRaster().getNumBands(), raw.getNumberOfBands(), file.getName());
+            assertArrayEquals(samples(expected), raw.getSamples().array(), file.getName());
+
+            // into the image of the first decode
+            assertSame(image, TGADecoder.decodeInto(ByteBuffer.wrap(data), image));
+            assertArrayEquals(samples(expected), samples(image), file.getName());
+        }
+
+        // a file that is large enough to be mapped
+        File large = resource("PlyonTexture.tga");
+        assertArrayEquals(samples(read(large)), samples(TGADecoder.decode(large.toPath())));
+    }
+
+    @Test
+    void incompatibleDestination() throws URISyntaxException {
+        final Path path = resource("integration/test_small_24_bit.tga").toPath();
+        assertThrows(IllegalArgumentException.class, new Executable() {
+            public void execute() throws Throwable {
+                TGADecoder.decodeInto(path, new BufferedImage(64, 64, BufferedImage.TYPE_4BYTE_ABGR));
+            }
+        });
+        assertThrows(IllegalArgumentException.class, new Executable() {
+            public void execute() throws Throwable {
+                TGADecoder.decodeInto(path, new BufferedImage(63, 64, BufferedImage.TYPE_3BYTE_BGR));
+            }
+        });
+    }
+}
@@ -1,16 +1,28 @@
 package com.realityinteractive.imageio.tga;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
 import javax.imageio.spi.IIORegistry;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
 
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
 import org.opentest4j.AssertionFailedError;
 
 /**
@@ -108,6 +120,268 @@ class DecodingIntegrationTest
         }
     }
     
+    @Test
+    void testPackedMonochrome() throws IOException {
+        String[] comparedFiles = new String[] {
+                "test_mono_1_bit",
+                "test_small_mono_1_bit"
+        };
+        String basePath = "integration/";
+        
+        for (String image : comparedFiles) {
+            BufferedImage png = read(basePath + image + ".png");
+            
+            ImageInputStream input = ImageIO.createImageInputStream(getClass().getClassLoader().getResourceAsStream(basePath + image + ".tga"));
+            try {
+                TGAImageReader reader = new TGAImageReader(spi);
+                reader.setInput(input);
+                TGAImageReadParam param = (TGAImageReadParam) reader.getDefaultReadParam();
+                param.setPackedMonochrome(true);
+                BufferedImage tga = reader.read(0, param);
+                
+                assertEquals(BufferedImage.TYPE_BYTE_BINARY, tga.getType());
+                assertImageEquals(png, tga, image + ".tga (packed)");
+            } finally {
+                input.close();
+            }
+        }
+    }
+    
+    @Test
+    void testReadAhead() throws IOException {
+        String[] comparedFiles = new String[] {
+                "test_mono_8_bit_RLE",
+                "test_16_bit",
+                "test_24_bit_RLE",
+                "test_small_32_bit"
+        };
+        String basePath = "integration/";
+        
+        for (String image : comparedFiles) {
+            BufferedImage png = read(basePath + image.replace("_RLE", "") + ".png");
+            
+            ImageInputStream input = ImageIO.createImageInputStream(getClass().getClassLoader().getResourceAsStream(basePath + image + ".tga"));
+            try {
+                TGAImageReader reader = new TGAImageReader(spi);
+                reader.setInput(input);
+                TGAImageReadParam param = (TGAImageReadParam) reader.getDefaultReadParam();
+                param.setReadAhead(true);
+                param.setInputBufferSize(1000); // many buffers are read ahead
+                assertImageEquals(png, reader.read(0, param), image + ".tga (read ahead)");
+            } finally {
+                input.close();
+            }
+        }
+    }
+    
+    @Test
+    void testInputStream() throws IOException {
+        String[] comparedFiles = new String[] {
+                "test_small_mono_8_bit",
+                "test_small_24_bit_RLE",
+                "test_small_32_bit"
+        };
+        String basePath = "integration/";
+        
+        for (String image : comparedFiles) {
+            BufferedImage png = read(basePath + image.replace("_RLE", "") + ".png");
+            
+            // a plain InputStream that can neither mark nor be cached
+            InputStream input = new FilterInputStream(getClass().getClassLoader().getResourceAsStream(basePath + image + ".tga")) {
+                @Override
+                public boolean markSupported() {
+                    return false;
+                }
+            };
+            try {
+                final TGAImageReader reader = new TGAImageReader(spi);
+                reader.setInput(input, true);
+                assertImageEquals(png, reader.read(0), image + ".tga (InputStream)");
+
+                // the pixel data has been passed so it cannot be read again
+                assertThrows(IllegalStateException.class, new Executable() {
+                    public void execute() throws Throwable {
+                        reader.read(0);
+                    }
+                });
+            } finally {
+                input.close();
+            }
+        }
+    }
+    
+    @Test
+    void testDropOpaqueAlpha() throws IOException {
+        String[] comparedFiles = new String[] {
+                "test_32_bit_RLE",
+                "test_small_32_bit",
+                "test_small_mono_16_bit_RLE"
+        };
+        String basePath = "integration/";
+        
+        for (String image : comparedFiles) {
+            BufferedImage png = read(basePath + image.replace("_RLE", "") + ".png");
+            int opaqueBands = image.contains("mono") ? 1 : 3;
+            
+            // the alpha of a seekable input is checked before decoding and
+            // that of an InputStream after
+            for (boolean seekable : new boolean[] { true, false }) {
+                InputStream stream = getClass().getClassLoader().getResourceAsStream(basePath + image + ".tga");
+                try {
+                    TGAImageReader reader = new TGAImageReader(spi);
+                    reader.setInput(seekable ? ImageIO.createImageInputStream(stream) : stream);
+                    TGAImageReadParam param = (TGAImageReadParam) reader.getDefaultReadParam();
+                    param.setDropOpaqueAlpha(true);
+                    BufferedImage tga = reader.read(0, param);
+                    
+                    assertEquals(opaqueBands, tga.getSampleModel().getNumBands(), image);
+                    assertEquals(false, tga.getColorModel().hasAlpha(), image);
+                    assertImageEquals(png, tga, image + ".tga (opaque alpha dropped)");
+                } finally {
+                    stream.close();
+                }
+            }
+        }
+    }
+    
+    @Test
+    void testPremultipliedAlpha() throws IOException {
+        // BGRA pixels with alpha 0, 128 (twice, including a run) and 255
+        byte[] trueColor = translucentTrueColor();
+        int[][] expectedTrueColor = new int[][] { // RGBA
+                { 0, 0, 0, 0 },
+                { 25, 50, 100, 128 },  // round(50 * 128 / 255), ...
+                { 128, 128, 128, 128 },
+                { 128, 128, 128, 128 },
+                { 30, 20, 10, 255 }
+        };
+        // grey and alpha pixels with alpha 0, 128 and 255
+        byte[] grey = DecodePolicyTest.tga(TGAConstants.MONO, 0, 0, 4, 1, 16,
+                200, 0,  200, 128,  255, 128,  77, 255);
+        int[][] expectedGrey = new int[][] {
+                { 0, 0 },
+                { 100, 128 },  // round(200 * 128 / 255)
+                { 128, 128 },
+                { 77, 255 }
+        };
+
+        assertPremultiplied(trueColor, expectedTrueColor);
+        assertPremultiplied(grey, expectedGrey);
+    }
+
+    /**
+     * A 5x1 RLE 32 bit image whose pixels have alpha 0, 128 and 255.
+     */
+    static byte[] translucentTrueColor() {
+        return DecodePolicyTest.tga(TGAConstants.RLE_TRUE_COLOR, 0, 0, 5, 1, 32,
+                0x01, 200, 100, 50, 0,  200, 100, 50, 128, // raw packet of 2
+                0x81, 255, 255, 255, 128,                  // run of 2
+                0x00, 10, 20, 30, 255);                    // raw packet of 1
+    }
+
+    // reads the image premultiplied by the param and by the destination type
+    private void assertPremultiplied(byte[] tga, int[][] expected) throws IOException {
+        for (boolean byDestinationType : new boolean[] { false, true }) {
+            TGAImageReadParam param = new TGAImageReadParam();
+            if (byDestinationType) {
+                TGAImageReader reader = new TGAImageReader(spi);
+                reader.setInput(new MemoryCacheImageInputStream(new ByteArrayInputStream(tga)));
+                Iterator<ImageTypeSpecifier> types = reader.getImageTypes(0);
+                types.next();
+                param.setDestinationType(types.next()); // premultiplied
+                reader.dispose();
+            } else {
+                param.setPremultipliedAlpha(true);
+            }
+            BufferedImage premultiplied = DecodePolicyTest.read(tga, param);
+            assertEquals(true, premultiplied.getColorModel().isAlphaPremultiplied());
+            for (int x = 0; x < expected.length; x++) {
+                assertArrayEquals(expected[x], premultiplied.getRaster().getPixel(x, 0, (int[]) null), "pixel " + x);
+            }
+        }
+    }
+    
+    @Test
+    void testIntPacked() throws IOException {
+        String[] comparedFiles = new String[] {
+                "test_16_bit",
+                "test_small_24_bit_RLE",
+                "test_32_bit_RLE",
+                "test_small_32_bit",
+                "test_small_mono_8_bit_RLE",
+                "test_small_mono_16_bit",
+                "test_small_mono_1_bit"
+        };
+        String basePath = "integration/";
+        
+        for (String image : comparedFiles) {
+            BufferedImage png = read(basePath + image.replace("_RLE", "") + ".png");
+            TGAImageReadParam param = new TGAImageReadParam();
+            param.setIntPacked(true);
+            BufferedImage tga = readTga(basePath + image + ".tga", param);
+            
+            boolean hasAlpha = image.contains("32") || image.contains("mono_16");
+            assertEquals(hasAlpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB, tga.getType(), image);
+            if (image.contains("mono")) {
+                // grey is replicated (as Java2D draws grey) rather than
+                // converted from the linear grey color space as getRGB() does
+                Raster grey = readTga(basePath + image + ".tga", null).getRaster();
+                for (int y = 0; y < grey.getHeight(); y++) {
+                    for (int x = 0; x < grey.getWidth(); x++) {
+                        int expected = grey.getSample(x, y, 0) * 0x010101;
+                        if (hasAlpha) {
+                            expected |= grey.getSample(x, y, 1) << 24;
+                        }
+                        assertEquals(expected, tga.getRaster().getDataBuffer().getElem((y * grey.getWidth()) + x),
+                                image + " at (" + x + ", " + y + ")");
+                    }
+                }
+            } else {
+                assertImageEquals(png, tga, image + ".tga (int packed)");
+            }
+            
+            // premultiplied and into a destination
+            param.setPremultipliedAlpha(true);
+            BufferedImage premultiplied = readTga(basePath + image + ".tga", param);
+            assertEquals(hasAlpha ? BufferedImage.TYPE_INT_ARGB_PRE : BufferedImage.TYPE_INT_RGB, premultiplied.getType(), image);
+            param.setDestination(premultiplied);
+            assertEquals(premultiplied, readTga(basePath + image + ".tga", param));
+        }
+
+        // the packed values of translucent pixels (see testPremultipliedAlpha)
+        byte[] grey = DecodePolicyTest.tga(TGAConstants.MONO, 0, 0, 4, 1, 16,
+                200, 0,  200, 128,  255, 128,  77, 255);
+        assertIntPacked(translucentTrueColor(), false, BufferedImage.TYPE_INT_ARGB,
+                0x003264C8, 0x803264C8, 0x80FFFFFF, 0x80FFFFFF, 0xFF1E140A);
+        assertIntPacked(translucentTrueColor(), true, BufferedImage.TYPE_INT_ARGB_PRE,
+                0x00000000, 0x80193264, 0x80808080, 0x80808080, 0xFF1E140A);
+        assertIntPacked(grey, false, BufferedImage.TYPE_INT_ARGB,
+                0x00C8C8C8, 0x80C8C8C8, 0x80FFFFFF, 0xFF4D4D4D);
+        assertIntPacked(grey, true, BufferedImage.TYPE_INT_ARGB_PRE,
+                0x00000000, 0x80646464, 0x80808080, 0xFF4D4D4D);
+    }
+
+    private void assertIntPacked(byte[] tga, boolean premultiplied, int type, int... expected) throws IOException {
+        TGAImageReadParam param = new TGAImageReadParam();
+        param.setIntPacked(true);
+        param.setPremultipliedAlpha(premultiplied);
+        BufferedImage image = DecodePolicyTest.read(tga, param);
+        assertEquals(type, image.getType());
+        assertArrayEquals(expected, ((DataBufferInt) image.getRaster().getDataBuffer()).getData(),
+                premultiplied ? "premultiplied" : "not premultiplied");
+    }
+    
+    private BufferedImage readTga(String resourcePath, TGAImageReadParam param) throws IOException {
+        ImageInputStream input = ImageIO.createImageInputStream(getClass().getClassLoader().getResourceAsStream(resourcePath));
+        try {
+            TGAImageReader reader = new TGAImageReader(spi);
+            reader.setInput(input);
+            return reader.read(0, param);
+        } finally {
+            input.close();
+        }
+    }
+    
     private BufferedImage read(String resourcePath) throws IOException {
         return ImageIO.read(getClass().getClassLoader().getResource(resourcePath));
     }
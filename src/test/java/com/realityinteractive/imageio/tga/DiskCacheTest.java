@@ -0,0 +1,68 @@
+package com.realityinteractive.imageio.tga;
+
+import static com.realityinteractive.imageio.tga.TestResources.file;
+import static com.realityinteractive.imageio.tga.TestResources.read;
+import static com.realityinteractive.imageio.tga.TestResources.resource;
+import static com.realityinteractive.imageio.tga.TestResources.samples;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that {@link TGADiskCache} serves unchanged files from the raw file
+ * and decodes changed files again.
+ */
+class DiskCacheTest
+{
+    private File directory() throws IOException {
+        File directory = Files.createTempDirectory("tgacache").toFile();
+        directory.deleteOnExit();
+        return directory;
+    }
+
+    @Test
+    void hitAndInvalidation() throws IOException {
+        File directory = directory();
+        File tga = File.createTempFile("cache", ".tga");
+        tga.deleteOnExit();
+        file(tga, resource("integration/test_small_32_bit_RLE.tga"));
+        BufferedImage expected = read(tga);
+
+        // the first cache decodes and writes the raw file
+        BufferedImage first = new TGADiskCache(directory).get(tga);
+        assertArrayEquals(samples(expected), samples(first));
+        File[] rawFiles = directory.listFiles();
+        assertEquals(1, rawFiles.length);
+        rawFiles[0].deleteOnExit();
+
+        // a second cache maps the raw file
+        TGADiskCache cache = new TGADiskCache(directory);
+        TGADiskCache.Mapping mapping = cache.getMapping(tga);
+        assertEquals(expected.getWidth(), mapping.getWidth());
+        assertEquals(expected.getHeight(), mapping.getHeight());
+        ByteBuffer mapped = mapping.getSamples();
+        assertTrue(mapped.isDirect());
+        byte[] data = new byte[mapped.remaining()];
+        mapped.get(data);
+        assertArrayEquals(samples(expected), data);
+        assertArrayEquals(samples(expected), samples(cache.get(tga)));
+
+        // a changed file is decoded again
+        file(tga, resource("integration/test_small_24_bit.tga"));
+        tga.setLastModified(tga.lastModified() + 2000L);
+        BufferedImage changed = cache.get(tga);
+        assertArrayEquals(samples(read(tga)), samples(changed));
+        assertEquals(3, cache.getMapping(tga).getImageTypeSpecifier().getNumBands());
+
+        cache.invalidate(tga);
+        assertEquals(0, directory.list().length);
+    }
+}
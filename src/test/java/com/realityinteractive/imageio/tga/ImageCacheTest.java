@@ -0,0 +1,119 @@
+package com.realityinteractive.imageio.tga;
+
+import static com.realityinteractive.imageio.tga.TestResources.file;
+import static com.realityinteractive.imageio.tga.TestResources.resource;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the hits, misses, evictions and coalescing of {@link TGAImageCache}.
+ */
+class ImageCacheTest
+{
+    @Test
+    void hitsAndEvictions() throws IOException {
+        // each 64x64 24 bit image is 12288 bytes of samples
+        TGAImageCache cache = new TGAImageCache(2 * 12288);
+        File a = file(resource("integration/test_small_24_bit.tga"));
+        File b = file(resource("integration/test_small_24_bit_RLE.tga"));
+        byte[] c = resource("integration/test_small_16_bit.tga");
+
+        BufferedImage image = cache.get(a);
+        assertSame(image, cache.get(a));
+        cache.get(b);
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(2 * 12288, cache.getSize());
+
+        // the least recently used (b) is evicted
+        cache.get(a);
+        cache.get(c);
+        assertEquals(1, cache.getEvictionCount());
+        assertSame(image, cache.get(a));
+        cache.get(b);
+        assertEquals(4, cache.getMissCount());
+
+        // the same content is a hit regardless of the array
+        cache.get(resource("integration/test_small_16_bit.tga"));
+        assertEquals(3, cache.getHitCount());
+    }
+
+    @Test
+    void changedFileIsDecodedAgain() throws IOException {
+        TGAImageCache cache = new TGAImageCache(1 << 20);
+        File file = file(resource("integration/test_small_24_bit.tga"));
+        cache.get(file);
+
+        file(file, resource("integration/test_small_mono_8_bit.tga"));
+        file.setLastModified(file.lastModified() + 2000);
+        assertEquals(BufferedImage.TYPE_BYTE_GRAY, cache.get(file).getType());
+        assertEquals(2, cache.getMissCount());
+
+        // the earlier version is removed rather than waiting to be evicted
+        assertEquals(64 * 64, cache.getSize());
+        assertEquals(0, cache.getEvictionCount());
+    }
+
+    @Test
+    void tooLargeIsNotCached() throws IOException {
+        TGAImageCache cache = new TGAImageCache(1000);
+        byte[] tga = resource("integration/test_small_24_bit.tga");
+        cache.get(tga);
+        cache.get(tga);
+        assertEquals(2, cache.getMissCount());
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    void offHeap() throws IOException {
+        TGAImageCache cache = new TGAImageCache(1 << 20, TGAImageCache.Storage.OFF_HEAP, null);
+        byte[] tga = resource("integration/test_small_32_bit_RLE.tga");
+        BufferedImage first = cache.get(tga);
+        BufferedImage second = cache.get(tga);
+        assertNotSame(first, second);
+        assertEquals(1, cache.getHitCount());
+        for (int y = 0; y < first.getHeight(); y++) {
+            for (int x = 0; x < first.getWidth(); x++) {
+                assertEquals(first.getRGB(x, y), second.getRGB(x, y));
+            }
+        }
+    }
+
+    @Test
+    void concurrentLoadsAreCoalesced() throws Exception {
+        final TGAImageCache cache = new TGAImageCache(16 << 20);
+        final File file = file(resource("integration/test_24_bit_RLE.tga"));
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<BufferedImage>> results = new ArrayList<Future<BufferedImage>>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(new Callable<BufferedImage>() {
+                    public BufferedImage call() throws IOException {
+                        return cache.get(file);
+                    }
+                }));
+            }
+            BufferedImage image = results.get(0).get();
+            for (Future<BufferedImage> result : results) {
+                assertSame(image, result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1, cache.getMissCount());
+        assertEquals(7, cache.getHitCount());
+    }
+}
@@ -0,0 +1,195 @@
+package com.realityinteractive.imageio.tga;
+
+import static com.realityinteractive.imageio.tga.TestResources.resource;
+import static com.realityinteractive.imageio.tga.TestResources.samples;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageInputStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+/**
+ * Feeds TGAs to {@link TGAIncrementalDecoder} in chunks of various sizes and
+ * compares the rows with the image read by {@link TGAImageReader}.
+ */
+class IncrementalDecoderTest
+{
+    /**
+     * Stores the decoded rows into an image of the decoder's type.
+     */
+    static class ImageListener implements TGAIncrementalDecoder.Listener {
+        BufferedImage image;
+        int rows;
+
+        public void headerDecoded(TGAIncrementalDecoder decoder) {
+            image = decoder.getImageTypeSpecifier().createBufferedImage(decoder.getWidth(), decoder.getHeight());
+        }
+
+        public void rowDecoded(TGAIncrementalDecoder decoder, int y, byte[] row) {
+            byte[] data = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+            System.arraycopy(row, 0, data, y * row.length, row.length);
+            rows++;
+        }
+    }
+
+    static ImageListener decode(byte[] tga, int chunkSize, TGAImageReadParam param) throws IOException {
+        ImageListener listener = new ImageListener();
+        TGAIncrementalDecoder decoder = new TGAIncrementalDecoder(listener, param);
+        for (int offset = 0; offset < tga.length; offset += chunkSize) {
+            decoder.feed(ByteBuffer.wrap(tga, offset, Math.min(chunkSize, tga.length - offset)));
+        }
+        decoder.finish();
+        assertTrue(decoder.isComplete());
+        return listener;
+    }
+
+    // feeds direct or read-only buffers (which have no accessible array)
+    static ImageListener decode(byte[] tga, int chunkSize, boolean direct) throws IOException {
+        ImageListener listener = new ImageListener();
+        TGAIncrementalDecoder decoder = new TGAIncrementalDecoder(listener);
+        for (int offset = 0; offset < tga.length; offset += chunkSize) {
+            int length = Math.min(chunkSize, tga.length - offset);
+            ByteBuffer data;
+            if (direct) {
+                data = ByteBuffer.allocateDirect(length);
+                data.put(tga, offset, length);
+                data.flip();
+            } else {
+                data = ByteBuffer.wrap(tga, offset, length).asReadOnlyBuffer();
+            }
+            decoder.feed(data);
+        }
+        decoder.finish();
+        assertTrue(decoder.isComplete());
+        return listener;
+    }
+
+    private BufferedImage read(String name) throws IOException {
+        ImageInputStream input = ImageIO.createImageInputStream(getClass().getClassLoader().getResourceAsStream(name));
+        try {
+            TGAImageReader reader = new TGAImageReader(new TGAImageReaderSpi());
+            reader.setInput(input);
+            return reader.read(0);
+        } finally {
+            input.close();
+        }
+    }
+
+    @Test
+    void chunks() throws IOException {
+        String[] files = new String[] {
+                "PlyonTexture.tga",
+                "integration/test_small_mono_1_bit.tga",
+                "integration/test_small_mono_8_bit_RLE.tga",
+                "integration/test_small_mono_16_bit.tga",
+                "integration/test_small_16_bit_RLE.tga",
+                "integration/test_small_24_bit.tga",
+                "integration/test_small_24_bit_RLE.tga",
+                "integration/test_small_32_bit_RLE.tga"
+        };
+        int[] chunkSizes = new int[] { 1, 2, 3, 5, 7, 64, 4096, Integer.MAX_VALUE };
+
+        for (String file : files) {
+            byte[] tga = resource(file);
+            BufferedImage expected = read(file);
+            for (int chunkSize : chunkSizes) {
+                BufferedImage actual = decode(tga, chunkSize, null).image;
+                for (int y = 0; y < expected.getHeight(); y++) {
+                    for (int x = 0; x < expected.getWidth(); x++) {
+                        assertEquals(expected.getRGB(x, y), actual.getRGB(x, y),
+                                file + " in chunks of " + chunkSize + " at (" + x + ", " + y + ")");
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void directAndReadOnlyBuffers() throws IOException {
+        String[] files = new String[] {
+                "PlyonTexture.tga",
+                "integration/test_small_mono_1_bit.tga",
+                "integration/test_small_16_bit.tga",
+                "integration/test_small_24_bit.tga",
+                "integration/test_small_24_bit_RLE.tga",
+                "integration/test_small_32_bit_RLE.tga"
+        };
+        int[] chunkSizes = new int[] { 1, 3, 7, 64, 4096, Integer.MAX_VALUE };
+
+        for (String file : files) {
+            byte[] tga = resource(file);
+            byte[] expected = samples(read(file));
+            for (int chunkSize : chunkSizes) {
+                for (boolean direct : new boolean[] { true, false }) {
+                    assertArrayEquals(expected, samples(decode(tga, chunkSize, direct).image),
+                            file + (direct ? " direct" : " read-only") + " in chunks of " + chunkSize);
+                }
+            }
+        }
+    }
+
+    @Test
+    void trailingDataIsNotConsumed() throws IOException {
+        // 2x1 grey RLE with a run of 2 followed by unrelated data
+        byte[] tga = DecodePolicyTest.tga(TGAConstants.RLE_MONO, 0, 0, 2, 1, 8, 0x81, 42, 1, 2, 3);
+        ImageListener listener = new ImageListener();
+        TGAIncrementalDecoder decoder = new TGAIncrementalDecoder(listener);
+
+        ByteBuffer data = ByteBuffer.wrap(tga);
+        decoder.feed(data);
+
+        assertTrue(decoder.isComplete());
+        assertEquals(3, data.remaining());
+        assertEquals(tga.length - 3, decoder.getBytesRead());
+        assertEquals(42, listener.image.getRaster().getSample(1, 0, 0));
+
+        // nor from a buffer without an accessible array
+        decoder = new TGAIncrementalDecoder(new ImageListener());
+        data = ByteBuffer.allocateDirect(tga.length);
+        data.put(tga);
+        data.flip();
+        decoder.feed(data);
+        assertTrue(decoder.isComplete());
+        assertEquals(3, data.remaining());
+    }
+
+    @Test
+    void truncated() throws IOException {
+        // 2x2 grey with only 3 of 4 pixels
+        final byte[] tga = DecodePolicyTest.tga(TGAConstants.MONO, 0, 0, 2, 2, 8, 10, 20, 30);
+
+        ImageListener listener = decode(tga, 2, null);
+        assertEquals(2, listener.rows);
+        assertEquals(30, listener.image.getRaster().getSample(0, 1, 0));
+        assertEquals(0, listener.image.getRaster().getSample(1, 1, 0));
+
+        final TGAImageReadParam param = new TGAImageReadParam();
+        param.setStrict(true);
+        assertThrows(IOException.class, new Executable() {
+            public void execute() throws Throwable {
+                decode(tga, 2, param);
+            }
+        });
+
+        // the header itself is incomplete
+        final TGAIncrementalDecoder decoder = new TGAIncrementalDecoder(new ImageListener());
+        decoder.feed(ByteBuffer.wrap(tga, 0, 10));
+        assertFalse(decoder.isComplete());
+        assertThrows(IOException.class, new Executable() {
+            public void execute() throws Throwable {
+                decoder.finish();
+            }
+        });
+    }
+}
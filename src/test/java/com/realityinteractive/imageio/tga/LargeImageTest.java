@@ -0,0 +1,116 @@
+package com.realityinteractive.imageio.tga;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.io.IOException;
+
+import javax.imageio.stream.ImageInputStreamImpl;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+/**
+ * Reads tiles of a 65535 x 65535 32 bit TGA (17 GB of pixel data) that is
+ * generated as it is read.
+ */
+class LargeImageTest
+{
+    private static final int SIZE = 65535;
+
+    /**
+     * A seekable stream of an uncompressed top-to-bottom 32 bit TGA whose
+     * pixel at (x, y) is B = x, G = y, R = x >> 8, A = y >> 8.
+     */
+    static class GeneratedTGA extends ImageInputStreamImpl {
+        private final byte[] header = DecodePolicyTest.tga(TGAConstants.TRUE_COLOR, 0, 0, SIZE, SIZE, 32);
+
+        @Override
+        public long length() {
+            return header.length + ((long) SIZE * SIZE * 4);
+        }
+
+        @Override
+        public int read() {
+            if (streamPos >= length()) {
+                return -1;
+            }
+            long position = streamPos++;
+            if (position < header.length) {
+                return header[(int) position] & 0xFF;
+            }
+            long pixel = (position - header.length) / 4;
+            int x = (int) (pixel % SIZE);
+            int y = (int) (pixel / SIZE);
+            switch ((int) ((position - header.length) % 4)) {
+                case 0: return x & 0xFF;
+                case 1: return y & 0xFF;
+                case 2: return (x >>> 8) & 0xFF;
+                default: return (y >>> 8) & 0xFF;
+            }
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            int count = 0;
+            while (count < length) {
+                int data = read();
+                if (data == -1) {
+                    break;
+                }
+                buffer[offset + count++] = (byte) data;
+            }
+            return (count == 0 && length > 0) ? -1 : count;
+        }
+    }
+
+    private static void assertPixel(int x, int y, Raster raster, int rasterX, int rasterY) {
+        // bands are R, G, B, A
+        assertEquals((x >>> 8) & 0xFF, raster.getSample(rasterX, rasterY, 0));
+        assertEquals(y & 0xFF, raster.getSample(rasterX, rasterY, 1));
+        assertEquals(x & 0xFF, raster.getSample(rasterX, rasterY, 2));
+        assertEquals((y >>> 8) & 0xFF, raster.getSample(rasterX, rasterY, 3));
+    }
+
+    @Test
+    void tiles() throws IOException {
+        TGAImageReader reader = new TGAImageReader(new TGAImageReaderSpi());
+        reader.setInput(new GeneratedTGA());
+
+        assertTrue(reader.isImageTiled(0));
+        RenderedImage image = reader.readAsRenderedImage(0, null);
+        assertEquals(SIZE, image.getWidth());
+        assertEquals(SIZE, image.getHeight());
+
+        // the last tile is beyond 4 GB into the pixel data and is partial
+        int tileX = image.getNumXTiles() - 1;
+        int tileY = image.getNumYTiles() - 1;
+        Raster tile = image.getTile(tileX, tileY);
+        assertPixel(SIZE - 1, SIZE - 1, tile, SIZE - 1, SIZE - 1);
+        assertPixel(tileX * 512, tileY * 512, tile, tileX * 512, tileY * 512);
+
+        BufferedImage readTile = reader.readTile(0, tileX, tileY);
+        assertEquals(SIZE - (tileX * 512), readTile.getWidth());
+        assertPixel(SIZE - 2, SIZE - 3, readTile.getRaster(), readTile.getWidth() - 2, readTile.getHeight() - 3);
+    }
+
+    @Test
+    void readFailsClearly() {
+        final TGAImageReader reader = new TGAImageReader(new TGAImageReaderSpi());
+        reader.setInput(new GeneratedTGA());
+        final TGAImageReadParam param = new TGAImageReadParam();
+        param.setMaximumPixelCount((long) SIZE * SIZE);
+        param.setMaximumBytesRead(Long.MAX_VALUE);
+
+        // the 17 GB image cannot be a single array
+        assertThrows(IOException.class, new Executable() {
+            public void execute() throws Throwable {
+                reader.read(0, param);
+            }
+        });
+    }
+}
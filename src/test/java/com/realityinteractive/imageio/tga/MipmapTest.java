@@ -0,0 +1,137 @@
+package com.realityinteractive.imageio.tga;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.Raster;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageInputStream;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compares the levels of {@link TGAImageReader#readMipmaps(int, int, javax.imageio.ImageReadParam)}
+ * with levels averaged from the image read by {@link TGAImageReader#read(int)}.
+ */
+class MipmapTest
+{
+    private static final String[] FILES = new String[] {
+            "integration/test_mono_1_bit.tga",         // uncompressed, top-to-bottom
+            "integration/test_24_bit_RLE.tga",         // RLE, bottom-to-top
+            "integration/test_small_32_bit_RLE.tga"    // RLE, with alpha
+    };
+
+    private TGAImageReader reader(InputStream input) throws IOException {
+        ImageInputStream stream = ImageIO.createImageInputStream(input);
+        TGAImageReader reader = new TGAImageReader(new TGAImageReaderSpi());
+        reader.setInput(stream);
+        return reader;
+    }
+
+    private InputStream resource(String name) {
+        return getClass().getClassLoader().getResourceAsStream(name);
+    }
+
+    // a 5 x 3 uncompressed 24 bit top-to-bottom image whose samples are their index
+    private static byte[] oddSizedImage() {
+        byte[] data = new byte[18 + (5 * 3 * 3)];
+        data[2] = 2;
+        data[12] = 5;
+        data[14] = 3;
+        data[16] = 24;
+        data[17] = 0x20;
+        for (int i = 18; i < data.length; i++) {
+            data[i] = (byte) ((i - 18) * 5);
+        }
+        return data;
+    }
+
+    // the level below the specified level.  An odd last column (row) is
+    // averaged into the last column (row).
+    private static int[][][] average(Raster level, int width, int height) {
+        int bands = level.getNumBands();
+        int[][][] sums = new int[height][width][bands + 1];
+        for (int y = 0; y < level.getHeight(); y++) {
+            for (int x = 0; x < level.getWidth(); x++) {
+                int[] sum = sums[Math.min(y / 2, height - 1)][Math.min(x / 2, width - 1)];
+                for (int b = 0; b < bands; b++) {
+                    sum[b] += level.getSample(x, y, b);
+                }
+                sum[bands]++;
+            }
+        }
+        return sums;
+    }
+
+    private static void assertLevels(List<BufferedImage> levels, BufferedImage image, String message) {
+        Raster expected = image.getRaster();
+        for (int i = 0; i < levels.size(); i++) {
+            Raster actual = levels.get(i).getRaster();
+            assertEquals(Math.max(1, image.getWidth() >> i), actual.getWidth(), message);
+            assertEquals(Math.max(1, image.getHeight() >> i), actual.getHeight(), message);
+            if (i == 0) {
+                for (int y = 0; y < actual.getHeight(); y++) {
+                    for (int x = 0; x < actual.getWidth(); x++) {
+                        for (int b = 0; b < actual.getNumBands(); b++) {
+                            assertEquals(expected.getSample(x, y, b), actual.getSample(x, y, b), message);
+                        }
+                    }
+                }
+            } else {
+                // each level is averaged from the level above it
+                int[][][] sums = average(levels.get(i - 1).getRaster(), actual.getWidth(), actual.getHeight());
+                for (int y = 0; y < actual.getHeight(); y++) {
+                    for (int x = 0; x < actual.getWidth(); x++) {
+                        int[] sum = sums[y][x];
+                        int count = sum[actual.getNumBands()];
+                        for (int b = 0; b < actual.getNumBands(); b++) {
+                            assertEquals((sum[b] + (count / 2)) / count, actual.getSample(x, y, b),
+                                    message + " level " + i + " at (" + x + ", " + y + ")");
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void fullChain() throws IOException {
+        for (String file : FILES) {
+            BufferedImage image = reader(resource(file)).read(0);
+            List<BufferedImage> levels = reader(resource(file)).readMipmaps(0, Integer.MAX_VALUE, null);
+            int size = Math.max(image.getWidth(), image.getHeight());
+            assertEquals(Integer.numberOfTrailingZeros(Integer.highestOneBit(size)) + 1, levels.size(), file);
+            assertLevels(levels, image, file);
+
+            // the packed levels are the same samples
+            ByteBuffer packed = reader(resource(file)).readMipmapsPacked(0, Integer.MAX_VALUE, null);
+            for (BufferedImage level : levels) {
+                byte[] samples = ((DataBufferByte) level.getRaster().getDataBuffer()).getData();
+                for (byte sample : samples) {
+                    assertEquals(sample, packed.get(), file);
+                }
+            }
+            assertEquals(0, packed.remaining(), file);
+        }
+    }
+
+    @Test
+    void oddSizeAndLevelCount() throws IOException {
+        byte[] data = oddSizedImage();
+        BufferedImage image = reader(new ByteArrayInputStream(data)).read(0);
+        List<BufferedImage> levels = reader(new ByteArrayInputStream(data)).readMipmaps(0, Integer.MAX_VALUE, null);
+        assertEquals(3, levels.size()); // 5 x 3, 2 x 1, 1 x 1
+        assertLevels(levels, image, "5 x 3");
+
+        levels = reader(new ByteArrayInputStream(data)).readMipmaps(0, 2, null);
+        assertEquals(2, levels.size());
+        assertLevels(levels, image, "5 x 3");
+    }
+}
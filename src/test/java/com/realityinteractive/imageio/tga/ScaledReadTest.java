@@ -0,0 +1,95 @@
+package com.realityinteractive.imageio.tga;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageInputStream;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compares {@link TGAImageReader#readScaled(int, int, int, javax.imageio.ImageReadParam)}
+ * with an area average of the image read by {@link TGAImageReader#read(int)}.
+ */
+class ScaledReadTest
+{
+    private static final String[] FILES = new String[] {
+            "integration/test_mono_1_bit.tga",         // uncompressed, top-to-bottom
+            "integration/test_16_bit.tga",             // uncompressed, bottom-to-top
+            "integration/test_24_bit_RLE.tga",         // RLE, bottom-to-top
+            "integration/test_small_32_bit_RLE.tga"    // RLE, with alpha
+    };
+
+    private BufferedImage read(String name) throws IOException {
+        ImageInputStream input = ImageIO.createImageInputStream(getClass().getClassLoader().getResourceAsStream(name));
+        TGAImageReader reader = new TGAImageReader(new TGAImageReaderSpi());
+        reader.setInput(input);
+        return reader.read(0);
+    }
+
+    private BufferedImage readScaled(String name, int width, int height) throws IOException {
+        // the scaled image is read from a forward only input
+        TGAImageReader reader = new TGAImageReader(new TGAImageReaderSpi());
+        reader.setInput(getClass().getClassLoader().getResourceAsStream(name));
+        return reader.readScaled(0, width, height, null);
+    }
+
+    // the sample of the area average of the source over the destination pixel
+    private static double average(Raster source, int width, int height, int x, int y, int band) {
+        double scaleX = (double) source.getWidth() / width;
+        double scaleY = (double) source.getHeight() / height;
+        double left = x * scaleX, right = (x + 1) * scaleX;
+        double top = y * scaleY, bottom = (y + 1) * scaleY;
+        double sum = 0;
+        for (int sy = (int) Math.floor(top); sy < Math.ceil(bottom); sy++) {
+            double weightY = Math.min(bottom, sy + 1) - Math.max(top, sy);
+            for (int sx = (int) Math.floor(left); sx < Math.ceil(right); sx++) {
+                double weightX = Math.min(right, sx + 1) - Math.max(left, sx);
+                sum += weightX * weightY * source.getSample(sx, sy, band);
+            }
+        }
+        return sum / (scaleX * scaleY);
+    }
+
+    @Test
+    void areaAverage() throws IOException {
+        int[][] sizes = new int[][] { { 17, 23 }, { 1, 1 }, { 50, 3 } };
+        for (String file : FILES) {
+            Raster expected = read(file).getRaster();
+            for (int[] size : sizes) {
+                Raster actual = readScaled(file, size[0], size[1]).getRaster();
+                assertEquals(size[0], actual.getWidth());
+                assertEquals(size[1], actual.getHeight());
+                for (int y = 0; y < size[1]; y++) {
+                    for (int x = 0; x < size[0]; x++) {
+                        for (int b = 0; b < actual.getNumBands(); b++) {
+                            double average = average(expected, size[0], size[1], x, y, b);
+                            assertTrue(Math.abs(average - actual.getSample(x, y, b)) <= 0.5 + 1e-6,
+                                    file + " " + size[0] + "x" + size[1] + " at (" + x + ", " + y + ") band " + b);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void fullSizeIsExact() throws IOException {
+        for (String file : FILES) {
+            Raster expected = read(file).getRaster();
+            Raster actual = readScaled(file, expected.getWidth(), expected.getHeight()).getRaster();
+            for (int y = 0; y < expected.getHeight(); y++) {
+                for (int x = 0; x < expected.getWidth(); x++) {
+                    for (int b = 0; b < expected.getNumBands(); b++) {
+                        assertEquals(expected.getSample(x, y, b), actual.getSample(x, y, b), file);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.realityinteractive.imageio.tga;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static com.realityinteractive.imageio.tga.TestResources.file;
+import static com.realityinteractive.imageio.tga.TestResources.read;
+import static com.realityinteractive.imageio.tga.TestResources.resource;
+import static com.realityinteractive.imageio.tga.TestResources.samples;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+
+import javax.imageio.ImageReader;
+import javax.imageio.event.IIOReadProgressListener;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compares the frames of {@link TGASequenceReader} with the files read by
+ * {@link TGAImageReader#read(int)}.
+ */
+class SequenceReaderTest
+{
+    private static final String[] FRAMES = new String[] {
+            "integration/test_small_24_bit.tga",
+            "integration/test_small_24_bit_RLE.tga",
+            "integration/test_small_32_bit_RLE.tga",
+            "integration/test_small_24_bit.tga",
+            "integration/test_small_mono_8_bit_RLE.tga",
+            "integration/test_small_24_bit_RLE.tga",
+            "integration/test_small_32_bit.tga",
+            "integration/test_small_24_bit.tga"
+    };
+
+    private static File copy(String name, File file) throws IOException {
+        file.deleteOnExit();
+        return file(file, resource(name));
+    }
+
+    // frame_0001.tga to frame_0008.tga (created out of order) and files
+    // that are not of the sequence
+    private File sequence() throws IOException {
+        File directory = Files.createTempDirectory("tgasequence").toFile();
+        directory.deleteOnExit();
+        for (int i = FRAMES.length - 1; i >= 0; i--) {
+            copy(FRAMES[i], new File(directory, String.format("frame_%04d.tga", i + 1)));
+        }
+        copy(FRAMES[0], new File(directory, "frame_0001.png"));
+        copy(FRAMES[0], new File(directory, "other_0001.tga"));
+        copy(FRAMES[0], new File(directory, "frame.tga"));
+        return new File(directory, "frame_0003.tga");
+    }
+
+    @Test
+    void frames() throws IOException {
+        File frame = sequence();
+        List<File> frames = TGASequenceReader.getFrames(frame);
+        assertEquals(FRAMES.length, frames.size());
+        for (int i = 0; i < frames.size(); i++) {
+            assertEquals(String.format("frame_%04d.tga", i + 1), frames.get(i).getName());
+        }
+        assertEquals(1, TGASequenceReader.getFrames(new File(frame.getParentFile(), "frame.tga")).size());
+    }
+
+    @Test
+    void playback() throws IOException {
+        File frame = sequence();
+        List<File> frames = TGASequenceReader.getFrames(frame);
+        TGASequenceReader reader = new TGASequenceReader(3, 2);
+        try {
+            reader.setInput(frame);
+            assertEquals(FRAMES.length, reader.getNumImages(true));
+
+            // played twice with the displayed frames recycled
+            BufferedImage previous = null;
+            for (int pass = 0; pass < 2; pass++) {
+                for (int i = 0; i < frames.size(); i++) {
+                    BufferedImage expected = read(frames.get(i));
+                    assertEquals(expected.getWidth(), reader.getWidth(i));
+                    BufferedImage image = reader.read(i);
+                    assertEquals(expected.getType(), image.getType(), "frame " + i);
+                    assertArrayEquals(samples(expected), samples(image), "frame " + i);
+                    if (previous != null) {
+                        reader.recycle(previous);
+                    }
+                    previous = image;
+                }
+            }
+
+            // out of order and with a param
+            for (int i : new int[] { 5, 1, 6, 6, 2 }) {
+                assertArrayEquals(samples(read(frames.get(i))), samples(reader.read(i)), "frame " + i);
+            }
+            TGAImageReadParam param = new TGAImageReadParam();
+            BufferedImage destination = read(frames.get(0));
+            param.setDestination(destination);
+            assertSame(destination, reader.read(3, param));
+        } finally {
+            reader.dispose();
+        }
+    }
+
+    @Test
+    void recycledImageIsDecodedInto() throws IOException {
+        File frame = sequence();
+        List<File> frames = TGASequenceReader.getFrames(frame);
+        TGASequenceReader reader = new TGASequenceReader(0, 1);
+        try {
+            reader.setInput(frame);
+
+            // frames 0 and 3 are the same file
+            BufferedImage image = reader.read(0);
+            reader.recycle(image);
+            assertSame(image, reader.read(3));
+            assertArrayEquals(samples(read(frames.get(3))), samples(image));
+        } finally {
+            reader.dispose();
+        }
+    }
+
+    @Test
+    void abortStopsTheFrame() throws IOException {
+        File frame = file(resource("integration/test_24_bit_RLE.tga"));
+        final TGASequenceReader reader = new TGASequenceReader(0, 1);
+        final boolean[] aborted = new boolean[1];
+        try {
+            reader.setInput(Collections.singletonList(frame));
+            reader.addIIOReadProgressListener(new IIOReadProgressListener() {
+                public void imageStarted(ImageReader source, int imageIndex) {
+                    reader.abort();
+                }
+
+                public void readAborted(ImageReader source) {
+                    aborted[0] = true;
+                }
+
+                public void sequenceStarted(ImageReader source, int minIndex) {}
+                public void sequenceComplete(ImageReader source) {}
+                public void imageProgress(ImageReader source, float percentageDone) {}
+                public void imageComplete(ImageReader source) {}
+                public void thumbnailStarted(ImageReader source, int imageIndex, int thumbnailIndex) {}
+                public void thumbnailProgress(ImageReader source, float percentageDone) {}
+                public void thumbnailComplete(ImageReader source) {}
+            });
+
+            // no row is decoded once the read is aborted
+            BufferedImage image = reader.read(0);
+            assertTrue(aborted[0]);
+            for (byte sample : samples(image)) {
+                assertEquals(0, sample);
+            }
+
+            // and the next read is not aborted
+            reader.removeAllIIOReadProgressListeners();
+            assertArrayEquals(samples(read(frame)), samples(reader.read(0)));
+        } finally {
+            reader.dispose();
+        }
+    }
+}
@@ -5,14 +5,24 @@ import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.awt.image.BufferedImage;
 import java.awt.image.ComponentColorModel;
+import java.io.BufferedInputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 
 import javax.imageio.ImageIO;
 import javax.imageio.spi.IIORegistry;
+import javax.imageio.stream.FileImageInputStream;
+import javax.imageio.stream.ImageInputStream;
 
 import org.junit.jupiter.api.Test;
 
@@ -52,4 +62,52 @@ class TGAImageReaderSpiTest {
 
         assertEquals(0.5, image.getAccelerationPriority());
     }
-}
\ No newline at end of file
+
+    private boolean canDecode(File file) throws IOException {
+        ImageInputStream input = new FileImageInputStream(file);
+        try {
+            boolean canDecode = new TGAImageReaderSpi().canDecodeInput(input);
+            assertEquals(0, input.getStreamPosition()); // reset
+            return canDecode;
+        } finally {
+            input.close();
+        }
+    }
+
+    private boolean canDecodeStream(File file) throws IOException {
+        InputStream input = new BufferedInputStream(Files.newInputStream(file.toPath()));
+        try {
+            boolean canDecode = new TGAImageReaderSpi().canDecodeInput(input);
+            assertEquals(Files.readAllBytes(file.toPath())[0] & 0xFF, input.read()); // reset
+            return canDecode;
+        } finally {
+            input.close();
+        }
+    }
+
+    @Test
+    void testCanDecodeInput() throws IOException, URISyntaxException {
+        File directory = new File(getClass().getClassLoader().getResource("integration").toURI());
+        for (File file : directory.listFiles()) {
+            boolean isTga = file.getName().endsWith(".tga");
+            assertEquals(isTga, canDecode(file), file.getName());
+            assertEquals(isTga, canDecodeStream(file), file.getName());
+        }
+
+        // a truncated TGA is too short for its pixel data once the length is
+        // known (with and without the footer)
+        for (String name : new String[] { "test_small_24_bit.tga", "test_small_mono_1_bit.tga" }) {
+            File truncated = File.createTempFile("truncated", ".tga");
+            truncated.deleteOnExit();
+            Files.copy(new File(directory, name).toPath(), truncated.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            RandomAccessFile file = new RandomAccessFile(truncated, "rw");
+            try {
+                file.setLength(file.length() / 2);
+            } finally {
+                file.close();
+            }
+            assertFalse(canDecode(truncated), name);
+            assertTrue(canDecodeStream(truncated), name);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.realityinteractive.imageio.tga;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageInputStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+/**
+ * Compares the tensors of {@link TGAImageReader#readTensor(int, FloatBuffer, TGATensorLayout, float[], float[], javax.imageio.ImageReadParam)}
+ * with the image read by {@link TGAImageReader#read(int)}.
+ */
+class TensorTest
+{
+    private static final String[] FILES = new String[] {
+            "integration/test_small_mono_1_bit.tga",   // top-to-bottom
+            "integration/test_small_24_bit_RLE.tga",   // bottom-to-top
+            "integration/test_small_32_bit_RLE.tga",
+            "integration/test_small_mono_16_bit_RLE.tga"
+    };
+
+    private ImageInputStream input(String name) throws IOException {
+        return ImageIO.createImageInputStream(getClass().getClassLoader().getResourceAsStream(name));
+    }
+
+    private BufferedImage read(String name) throws IOException {
+        ImageInputStream input = input(name);
+        TGAImageReader reader = new TGAImageReader(new TGAImageReaderSpi());
+        try {
+            reader.setInput(input);
+            return reader.read(0);
+        } finally {
+            reader.dispose();
+            input.close();
+        }
+    }
+
+    private void readTensor(String name, float[] tensor, int offset, TGATensorLayout layout, float[] mean, float[] std) throws IOException {
+        ImageInputStream input = input(name);
+        TGAImageReader reader = new TGAImageReader(new TGAImageReaderSpi());
+        try {
+            reader.setInput(input);
+            reader.readTensor(0, tensor, offset, layout, mean, std, null);
+        } finally {
+            reader.dispose();
+            input.close();
+        }
+    }
+
+    private void readTensor(String name, FloatBuffer tensor, TGATensorLayout layout, float[] mean, float[] std) throws IOException {
+        ImageInputStream input = input(name);
+        TGAImageReader reader = new TGAImageReader(new TGAImageReaderSpi());
+        try {
+            reader.setInput(input);
+            reader.readTensor(0, tensor, layout, mean, std, null);
+        } finally {
+            reader.dispose();
+            input.close();
+        }
+    }
+
+    private static void assertTensorEquals(Raster expected, float[] tensor, int offset, boolean planar, float[] mean, float[] std, String message) {
+        int width = expected.getWidth();
+        int height = expected.getHeight();
+        int channels = mean.length;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                for (int c = 0; c < channels; c++) {
+                    int sample = expected.getSample(x, y, c);
+                    int index = planar ? (((c * height) + y) * width) + x : (((y * width) + x) * channels) + c;
+                    float value = ((sample / 255f) - mean[c]) / std[c];
+                    assertTrue(Math.abs(value - tensor[offset + index]) < 1e-5f,
+                            message + " at (" + x + ", " + y + ") channel " + c + ": " + tensor[offset + index] + " != " + value);
+                }
+            }
+        }
+    }
+
+    @Test
+    void batch() throws IOException {
+        for (String file : FILES) {
+            BufferedImage expected = read(file);
+            int channels = expected.getRaster().getNumBands();
+            int size = expected.getWidth() * expected.getHeight() * channels;
+            float[] mean = new float[channels];
+            float[] std = new float[channels];
+            for (int c = 0; c < channels; c++) {
+                mean[c] = 0.25f + (c * 0.125f);
+                std[c] = 0.5f - (c * 0.0625f);
+            }
+
+            // slot 1 of a batch of 3 in each layout
+            for (TGATensorLayout layout : TGATensorLayout.values()) {
+                float[] batch = new float[size * 3];
+                readTensor(file, batch, size, layout, mean, std);
+                assertTensorEquals(expected.getRaster(), batch, size, layout == TGATensorLayout.CHW, mean, std, file + " " + layout);
+                assertEquals(0f, batch[size - 1]);
+                assertEquals(0f, batch[size * 2]);
+            }
+
+            // successive images fill successive slots of a direct buffer
+            FloatBuffer tensor = ByteBuffer.allocateDirect(size * 2 * 4).asFloatBuffer();
+            readTensor(file, tensor, TGATensorLayout.CHW, mean, std);
+            assertEquals(size, tensor.position());
+            readTensor(file, tensor, TGATensorLayout.CHW, mean, std);
+            assertEquals(size * 2, tensor.position());
+            float[] samples = new float[size * 2];
+            tensor.flip();
+            tensor.get(samples);
+            assertTensorEquals(expected.getRaster(), samples, 0, true, mean, std, file + " buffer");
+            assertTensorEquals(expected.getRaster(), samples, size, true, mean, std, file + " buffer");
+        }
+    }
+
+    @Test
+    void tooSmall() throws IOException {
+        assertThrows(IllegalArgumentException.class, new Executable() {
+            public void execute() throws Throwable {
+                readTensor("integration/test_small_24_bit.tga", new float[16], 0, TGATensorLayout.HWC, null, null);
+            }
+        });
+        assertThrows(IllegalArgumentException.class, new Executable() {
+            public void execute() throws Throwable {
+                readTensor("integration/test_small_24_bit.tga", new float[64 * 64 * 3], 0, TGATensorLayout.HWC, new float[] { 0.5f }, null);
+            }
+        });
+    }
+}
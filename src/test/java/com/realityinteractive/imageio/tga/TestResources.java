@@ -0,0 +1,82 @@
+package com.realityinteractive.imageio.tga;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.imageio.stream.FileImageInputStream;
+
+/**
+ * The resources, files and reads that are shared by the tests.
+ */
+final class TestResources
+{
+    private TestResources() {
+    }
+
+    /**
+     * Reads the whole resource.
+     */
+    static byte[] resource(String name) throws IOException {
+        InputStream input = TestResources.class.getClassLoader().getResourceAsStream(name);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = input.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Writes the data to a temporary file that is deleted on exit.
+     */
+    static File file(byte[] data) throws IOException {
+        File file = File.createTempFile("tga", ".tga");
+        file.deleteOnExit();
+        return file(file, data);
+    }
+
+    /**
+     * Writes (or overwrites) the file with the data.
+     */
+    static File file(File file, byte[] data) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    /**
+     * Reads the TGA file with {@link TGAImageReader#read(int)}.
+     */
+    static BufferedImage read(File file) throws IOException {
+        FileImageInputStream input = new FileImageInputStream(file);
+        TGAImageReader reader = new TGAImageReader(new TGAImageReaderSpi());
+        try {
+            reader.setInput(input);
+            return reader.read(0);
+        } finally {
+            reader.dispose();
+            input.close();
+        }
+    }
+
+    /**
+     * Retrieves the samples of an image that was read into a byte raster.
+     */
+    static byte[] samples(BufferedImage image) {
+        return ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+    }
+}
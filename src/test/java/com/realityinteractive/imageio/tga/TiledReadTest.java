@@ -0,0 +1,214 @@
+package com.realityinteractive.imageio.tga;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static com.realityinteractive.imageio.tga.TestResources.file;
+import static com.realityinteractive.imageio.tga.TestResources.resource;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+import javax.imageio.stream.FileImageInputStream;
+import javax.imageio.stream.ImageInputStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+/**
+ * Compares the tiles of {@link TGAImageReader#readTile(int, int, int)} and
+ * {@link TGAImageReader#readAsRenderedImage(int, javax.imageio.ImageReadParam)}
+ * and the regions of {@link TGAImageReader#readRegions(int, List, javax.imageio.ImageReadParam)}
+ * with the image read by {@link TGAImageReader#read(int)}.
+ */
+class TiledReadTest
+{
+    private static final String[] FILES = new String[] {
+            "integration/test_mono_1_bit.tga",         // uncompressed, top-to-bottom
+            "integration/test_16_bit.tga",             // uncompressed, bottom-to-top
+            "integration/test_24_bit_RLE.tga",         // RLE, bottom-to-top
+            "integration/test_mono_16_bit_RLE.tga",    // RLE, bottom-to-top
+            "integration/test_small_32_bit_RLE.tga"    // a single tile
+    };
+
+    private TGAImageReader reader(String name) throws IOException {
+        ImageInputStream input = ImageIO.createImageInputStream(getClass().getClassLoader().getResourceAsStream(name));
+        TGAImageReader reader = new TGAImageReader(new TGAImageReaderSpi());
+        reader.setInput(input);
+        return reader;
+    }
+
+    private static void assertPixelsEqual(Raster expected, Raster actual, Rectangle region, String message) {
+        int bands = expected.getNumBands();
+        for (int y = region.y; y < region.y + region.height; y++) {
+            for (int x = region.x; x < region.x + region.width; x++) {
+                for (int b = 0; b < bands; b++) {
+                    assertEquals(expected.getSample(x, y, b), actual.getSample(x, y, b),
+                            message + " at (" + x + ", " + y + ") band " + b);
+                }
+            }
+        }
+    }
+
+    @Test
+    void renderedImage() throws IOException {
+        for (String file : FILES) {
+            TGAImageReader reader = reader(file);
+            BufferedImage expected = reader.read(0);
+
+            TGAImageReadParam param = new TGAImageReadParam();
+            param.setTileCacheSize(1); // tiles are decoded again
+            RenderedImage image = reader.readAsRenderedImage(0, param);
+            assertEquals(expected.getWidth(), image.getWidth());
+            assertEquals(expected.getHeight(), image.getHeight());
+
+            // the tiles are requested bottom up to exercise the RLE index
+            for (int tileY = image.getNumYTiles() - 1; tileY >= 0; tileY--) {
+                for (int tileX = image.getNumXTiles() - 1; tileX >= 0; tileX--) {
+                    Raster tile = image.getTile(tileX, tileY);
+                    Rectangle region = tile.getBounds().intersection(expected.getRaster().getBounds());
+                    assertPixelsEqual(expected.getRaster(), tile, region, file + " tile " + tileX + ", " + tileY);
+                }
+            }
+
+            Rectangle region = new Rectangle(3, 5, expected.getWidth() - 7, expected.getHeight() - 11);
+            assertPixelsEqual(expected.getRaster(), image.getData(region), region, file + " data");
+            reader.dispose();
+        }
+    }
+
+    @Test
+    void readTile() throws IOException {
+        for (String file : FILES) {
+            TGAImageReader reader = reader(file);
+            BufferedImage expected = reader.read(0);
+            // only images larger than a single tile are reported as tiled
+            assertEquals((expected.getWidth() > 512) || (expected.getHeight() > 512), reader.isImageTiled(0), file);
+
+            int tileWidth = reader.getTileWidth(0);
+            int tileHeight = reader.getTileHeight(0);
+            int tileX = (expected.getWidth() - 1) / tileWidth;
+            int tileY = (expected.getHeight() - 1) / tileHeight;
+            BufferedImage tile = reader.readTile(0, tileX, tileY);
+            Rectangle region = new Rectangle(tileX * tileWidth, tileY * tileHeight, tile.getWidth(), tile.getHeight());
+            assertPixelsEqual(expected.getRaster(), tile.getRaster().createTranslatedChild(region.x, region.y), region, file);
+            reader.dispose();
+        }
+    }
+
+    @Test
+    void readRegions() throws IOException {
+        for (String file : FILES) {
+            TGAImageReader reader = reader(file);
+            BufferedImage expected = reader.read(0);
+            reader.dispose();
+
+            // the regions are read in a single pass from a forward only input
+            int width = expected.getWidth();
+            int height = expected.getHeight();
+            List<Rectangle> regions = Arrays.asList(
+                    new Rectangle(0, 0, width, height),
+                    new Rectangle(3, 5, width / 3, height / 4),
+                    new Rectangle(width / 2, height / 2, width - (width / 2), 1),
+                    new Rectangle(1, height - 2, 1, 2),
+                    new Rectangle(3, 5, width / 3, height / 4)); // overlapping
+            reader = new TGAImageReader(new TGAImageReaderSpi());
+            reader.setInput(getClass().getClassLoader().getResourceAsStream(file));
+            List<BufferedImage> images = reader.readRegions(0, regions, null);
+            assertEquals(regions.size(), images.size());
+            for (int i = 0; i < regions.size(); i++) {
+                Rectangle region = regions.get(i);
+                BufferedImage image = images.get(i);
+                assertEquals(region.width, image.getWidth());
+                assertEquals(region.height, image.getHeight());
+                assertPixelsEqual(expected.getRaster(), image.getRaster().createTranslatedChild(region.x, region.y), region, file + " region " + i);
+            }
+            reader.dispose();
+        }
+    }
+
+    /**
+     * Counts the bytes that are read (rather than sought past).
+     */
+    private static class CountingInputStream extends FileImageInputStream {
+        long bytesRead;
+
+        CountingInputStream(File file) throws IOException {
+            super(file);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int data = super.read();
+            if (data != -1) {
+                bytesRead++;
+            }
+            return data;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int count = super.read(b, off, len);
+            if (count > 0) {
+                bytesRead += count;
+            }
+            return count;
+        }
+    }
+
+    @Test
+    void uncompressedRowsInNoRegionAreNotRead() throws IOException {
+        // the top row is the last row of the bottom-to-top pixel data
+        String name = "integration/test_16_bit.tga";
+        TGAImageReader reader = reader(name);
+        BufferedImage expected = reader.read(0);
+        reader.dispose();
+        File file = file(resource(name));
+        Rectangle region = new Rectangle(5, 0, 16, 1);
+
+        for (boolean seekForwardOnly : new boolean[] { false, true }) {
+            CountingInputStream input = new CountingInputStream(file);
+            reader = new TGAImageReader(new TGAImageReaderSpi());
+            try {
+                reader.setInput(input, seekForwardOnly);
+                TGAImageReadParam param = new TGAImageReadParam();
+                param.setInputBufferSize(4096);
+                BufferedImage image = reader.readRegions(0, Arrays.asList(region), param).get(0);
+                assertPixelsEqual(expected.getRaster(), image.getRaster().createTranslatedChild(region.x, region.y),
+                        region, name);
+                assertTrue(input.bytesRead < 16384, input.bytesRead + " bytes were read");
+            } finally {
+                reader.dispose();
+                input.close();
+            }
+        }
+    }
+
+    @Test
+    void regionOutsideImage() throws IOException {
+        final TGAImageReader reader = reader("integration/test_small_24_bit.tga");
+        assertThrows(IllegalArgumentException.class, new Executable() {
+            public void execute() throws Throwable {
+                reader.readRegions(0, Arrays.asList(new Rectangle(60, 60, 5, 5)), null);
+            }
+        });
+    }
+
+    @Test
+    void forwardOnlyInput() throws IOException {
+        final TGAImageReader reader = new TGAImageReader(new TGAImageReaderSpi());
+        reader.setInput(getClass().getClassLoader().getResourceAsStream("integration/test_small_24_bit.tga"));
+        assertThrows(IOException.class, new Executable() {
+            public void execute() throws Throwable {
+                reader.readTile(0, 0, 0);
+            }
+        });
+    }
+}